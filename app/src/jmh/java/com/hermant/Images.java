@@ -0,0 +1,21 @@
+package com.hermant;
+
+import com.hermant.graphics.Texture;
+
+import java.io.File;
+import java.io.IOException;
+
+public class Images {
+
+    public static File resource(String name) {
+        return new File(System.getProperty("colors.res", "res"), name);
+    }
+
+    /**
+     * Loads an image from res/ and rescales it to the given width, keeping its aspect ratio.
+     */
+    public static Texture load(String name, int width) throws IOException {
+        Texture texture = new Texture(resource(name).getPath());
+        return texture.rescale(width, Math.max(1, width * texture.getHeight() / texture.getWidth()));
+    }
+}
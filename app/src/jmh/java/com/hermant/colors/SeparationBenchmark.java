@@ -0,0 +1,64 @@
+package com.hermant.colors;
+
+import com.hermant.Images;
+import com.hermant.Pixels;
+import com.hermant.graphics.Texture;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SeparationBenchmark {
+
+    @Param({"RGB", "YCbCr", "HSV", "Lab sRGB", "Lab sRGB exact", "Lab Apple RGB", "Lab Wide Gamut"})
+    public String separation;
+
+    @Param({"cat.png", "colors.png"})
+    public String image;
+
+    @Param({"256", "1024"})
+    public int size;
+
+    private Separation function;
+    private int[] src, dst0, dst1, dst2;
+
+    @Setup
+    public void setup() throws IOException {
+        function = create(separation);
+        Texture texture = Images.load(image, size);
+        int width = texture.getWidth(), height = texture.getHeight();
+        src = new int[width * height];
+        for (int j = 0; j < height; j++) texture.getRow(j, src, j * width);
+        dst0 = new int[src.length];
+        dst1 = new int[src.length];
+        dst2 = new int[src.length];
+    }
+
+    private static Separation create(String name) {
+        if (name.startsWith("Lab ")) {
+            boolean exact = name.endsWith(" exact");
+            String profile = name.substring("Lab ".length(), exact ? name.length() - " exact".length() : name.length());
+            return Profiles.getSeparation("Lab", profile, null, !exact);
+        }
+        return Profiles.getSeparation(name);
+    }
+
+    @Benchmark
+    public void bulk(Pixels pixels) {
+        function.separate(src, 0, dst0, 0, dst1, 0, dst2, 0, src.length);
+        pixels.pixels += src.length;
+    }
+
+    @Benchmark
+    public void perPixel(Pixels pixels, Blackhole blackhole) {
+        for (int rgb : src) blackhole.consume(function.separate(new Color3f(rgb)));
+        pixels.pixels += src.length;
+    }
+}
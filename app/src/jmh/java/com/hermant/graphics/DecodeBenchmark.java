@@ -0,0 +1,58 @@
+package com.hermant.graphics;
+
+import com.hermant.Images;
+import com.hermant.Pixels;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the PNGDecoder and ImageIO branches of the Texture constructor on the same image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({"png", "bmp", "jpg"})
+    public String format;
+
+    @Param({"512", "2048"})
+    public int size;
+
+    private File file;
+    private long area;
+
+    @Setup
+    public void setup() throws IOException {
+        Texture texture = Images.load("tygryski.jpg", size);
+        BufferedImage image = new BufferedImage(texture.getWidth(), texture.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int j = 0; j < texture.getHeight(); j++) {
+            for (int i = 0; i < texture.getWidth(); i++) {
+                image.setRGB(i, j, texture.get(i, j));
+            }
+        }
+        file = Files.createTempFile("decode", "." + format).toFile();
+        ImageIO.write(image, format, file);
+        area = (long) texture.getWidth() * texture.getHeight();
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public Texture decode(Pixels pixels) throws IOException {
+        pixels.pixels += area;
+        return new Texture(file.getPath());
+    }
+}
@@ -0,0 +1,53 @@
+package com.hermant.graphics;
+
+import com.hermant.Images;
+import com.hermant.Pixels;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextureBenchmark {
+
+    @Param({"tygryski.jpg", "spiral.png"})
+    public String image;
+
+    @Param({"256", "1024"})
+    public int size;
+
+    private Texture texture;
+
+    @Setup
+    public void setup() throws IOException {
+        texture = new Texture(Images.resource(image).getPath());
+    }
+
+    @Benchmark
+    public void bilinear(Pixels pixels, Blackhole blackhole) {
+        for (int j = 0; j < size; j++) {
+            for (int i = 0; i < size; i++) {
+                blackhole.consume(texture.getSampleBilinearInterpolation((i + 0.5f) / size, (j + 0.5f) / size));
+            }
+        }
+        pixels.pixels += (long) size * size;
+    }
+
+    @Benchmark
+    public Texture rescale(Pixels pixels) {
+        pixels.pixels += (long) size * size;
+        return texture.rescale(size, size);
+    }
+
+    @Benchmark
+    public MipMap mipMap(Pixels pixels) {
+        pixels.pixels += (long) texture.getWidth() * texture.getHeight();
+        return new MipMap(texture);
+    }
+}
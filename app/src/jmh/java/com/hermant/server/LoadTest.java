@@ -0,0 +1,113 @@
+package com.hermant.server;
+
+import com.hermant.Images;
+import com.hermant.graphics.SeparationEngine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Posts an image to a separation server from several clients for a while and reports latency percentiles.
+ * Starts a server in process unless the url of one is given.
+ * <pre>
+ * ./gradlew loadTest --args="--clients 16 --seconds 20 --query separation=Lab&amp;level=1"
+ * </pre>
+ */
+public class LoadTest {
+
+    private static final long BACKOFF = 50;
+
+    public static void main(String[] args) throws Exception {
+        int clients = 8, seconds = 10, concurrency = 2, queue = SeparationServer.DEFAULT_QUEUE;
+        String image = "tygryski.jpg", query = "separation=Lab&level=1", url = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--clients": clients = Integer.parseInt(args[++i]); break;
+                case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+                case "--concurrency": concurrency = Integer.parseInt(args[++i]); break;
+                case "--queue": queue = Integer.parseInt(args[++i]); break;
+                case "--image": image = args[++i]; break;
+                case "--query": query = args[++i]; break;
+                case "--url": url = args[++i]; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        SeparationServer server = null;
+        if (url == null) {
+            server = new SeparationServer(new InetSocketAddress("127.0.0.1", 0), concurrency, queue, new SeparationEngine());
+            server.start();
+            url = "http://127.0.0.1:" + server.getPort();
+        }
+        byte[] body = Files.readAllBytes(Images.resource(image).toPath());
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/separate?" + query))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+        // a few requests to warm up, the first one fails fast on bad parameters
+        for (int i = 0; i < 5; i++) {
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() != 200) throw new IOException("Server replied " + response.statusCode() + ": " + new String(response.body()));
+        }
+
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicInteger rejected = new AtomicInteger(), failed = new AtomicInteger();
+        List<long[]> latencies = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            long[][] own = {new long[1024]};
+            int[] count = {0};
+            Thread thread = new Thread(() -> {
+                while (System.nanoTime() < deadline) {
+                    long start = System.nanoTime();
+                    try {
+                        int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        if (status == 503) {
+                            rejected.incrementAndGet();
+                            Thread.sleep(BACKOFF);
+                            continue;
+                        }
+                        if (status != 200) {
+                            failed.incrementAndGet();
+                            continue;
+                        }
+                    } catch (IOException e) {
+                        failed.incrementAndGet();
+                        continue;
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (count[0] == own[0].length) own[0] = Arrays.copyOf(own[0], 2 * own[0].length);
+                    own[0][count[0]++] = System.nanoTime() - start;
+                }
+                synchronized (latencies) {
+                    latencies.add(Arrays.copyOf(own[0], count[0]));
+                }
+            }, "client-" + c);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+        if (server != null) server.stop(0);
+
+        long[] all = latencies.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf(Locale.ROOT, "%d clients, %d s: %d ok, %d rejected, %d failed, %.1f requests/s%n",
+                clients, seconds, all.length, rejected.get(), failed.get(), all.length / (double) seconds);
+        if (all.length > 0)
+            System.out.printf(Locale.ROOT, "latency p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    percentile(all, 0.5), percentile(all, 0.9), percentile(all, 0.99), all[all.length - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))] / 1e6;
+    }
+}
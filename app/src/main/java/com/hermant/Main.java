@@ -1,10 +1,22 @@
 package com.hermant;
 
+import com.hermant.cli.Batch;
 import com.hermant.gui.Window;
+import com.hermant.server.SeparationServer;
+
+import java.util.Arrays;
 
 public class Main {
 
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("serve")) {
+            int code = SeparationServer.run(Arrays.copyOfRange(args, 1, args.length));
+            if (code != 0) System.exit(code);
+            return;
+        }
+        if (args.length > 0) {
+            System.exit(Batch.run(args));
+        }
         new Window("Colors", 1600, 1050);
     }
 }
@@ -0,0 +1,501 @@
+package com.hermant.cli;
+
+import com.hermant.colors.ChannelSeparation;
+import com.hermant.colors.FusedSeparation;
+import com.hermant.colors.Profiles;
+import com.hermant.colors.Separation;
+import com.hermant.colors.SeparationTableCache;
+import com.hermant.graphics.SeparationEngine;
+import com.hermant.graphics.Texture;
+import com.hermant.io.PlanarSample;
+import com.hermant.io.PngEncoder;
+import com.hermant.io.PngFilter;
+import com.hermant.io.StripProcessor;
+import com.hermant.metrics.Metrics;
+import com.hermant.metrics.Stage;
+import com.hermant.util.Pipeline;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * Headless batch separation of many images, several of them processed at once.
+ */
+public class Batch {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "usage: colors [options] <file|directory|glob>...",
+            "  -s, --separation <names>  one of RGB, YCbCr, HSV, Lab (default RGB), or several separated by commas,",
+            "                            computed in a single pass and written as stacked composites or channel files",
+            "  -p, --profile <name>      Lab color profile, one of " + Profiles.COLOR_SPACES.keySet() + " (default sRGB)",
+            "  -i, --illuminant <name>   Lab white point, one of " + Profiles.ILLUMINANTS.keySet() + " (default of the profile)",
+            "  -o, --output <pattern>    output path with {dir}, {name}, {ext}, {separation} and {channel} placeholders",
+            "                            (default {dir}/{name}-{separation}.png, or {dir}/{name}-{channel}.png with --channels,",
+            "                            {dir}/{name}-{separation}-{channel}.png with several separations)",
+            "  -c, --channels            write every channel to its own file instead of a composite",
+            "  -j, --jobs <n>            images decoded and processed at once (default 2)",
+            "  -t, --threads <n>         separation threads (default all processors)",
+            "      --exact               compute Lab without lookup tables",
+            "      --table               read separations from persistent 2^24 entry tables",
+            "  -l, --level <0-9>         png compression level (default 6)",
+            "      --filter <name>       png row filter, one of " + Arrays.toString(PngFilter.values()) + " (default ADAPTIVE)",
+            "      --stream              process images in strips of rows, memory depends on width only (png output)",
+            "      --raw                 write the coefficients of the channels as numbers to a planar file per separation",
+            "                            (default {dir}/{name}-{separation}.cpl), a strip of rows at a time",
+            "      --sample <type>       planar sample type, one of " + Arrays.toString(PlanarSample.values()) + " (default FLOAT32)",
+            "      --lz4                 compress every strip of a planar file",
+            "      --strip <rows>        rows per strip with --stream and --raw (default " + StripProcessor.DEFAULT_STRIP_ROWS + ")",
+            "      --pipeline <d,s,e>    decode, separate and encode on their own threads, d, s and e of them,",
+            "                            connected by bounded queues, files are written in order",
+            "      --queue <n>           images waiting between two pipeline stages (default 2)",
+            "      --metrics <file|->    write per stage timings, throughput and allocations as json",
+            "  -h, --help                print this message");
+
+    private final List<String> arguments = new ArrayList<>();
+    private String[] separationNames = {"RGB"};
+    private String profile = "sRGB";
+    private String illuminant;
+    private String output;
+    private boolean channels;
+    private int jobs = 2;
+    private int threads;
+    private boolean exact;
+    private boolean table;
+    private boolean stream;
+    private boolean raw;
+    // null unless given, the default is FLOAT32
+    private PlanarSample sample;
+    private boolean lz4;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private PngFilter filter = PngFilter.ADAPTIVE;
+    private int strip = StripProcessor.DEFAULT_STRIP_ROWS;
+    private String metrics;
+    private int[] pipeline;
+    private int queue = 2;
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the batch with command line arguments.
+     *
+     * @return process exit code
+     */
+    public static int run(String[] args) {
+        Batch batch = new Batch();
+        try {
+            if (!batch.parse(args)) {
+                System.out.println(USAGE);
+                return 0;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        return batch.execute();
+    }
+
+    private boolean parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "-h": case "--help": return false;
+                case "-s": case "--separation": separationNames = separations(value(args, ++i, arg), arg); break;
+                case "-p": case "--profile": profile = value(args, ++i, arg); break;
+                case "-i": case "--illuminant": illuminant = value(args, ++i, arg); break;
+                case "-o": case "--output": output = value(args, ++i, arg); break;
+                case "-c": case "--channels": channels = true; break;
+                case "-j": case "--jobs": jobs = positive(value(args, ++i, arg), arg); break;
+                case "-t": case "--threads": threads = positive(value(args, ++i, arg), arg); break;
+                case "--exact": exact = true; break;
+                case "--table": table = true; break;
+                case "-l": case "--level": level = level(value(args, ++i, arg), arg); break;
+                case "--filter": filter = filter(value(args, ++i, arg), arg); break;
+                case "--stream": stream = true; break;
+                case "--raw": raw = true; break;
+                case "--sample": sample = sample(value(args, ++i, arg), arg); break;
+                case "--lz4": lz4 = true; break;
+                case "--strip": strip = positive(value(args, ++i, arg), arg); break;
+                case "--metrics": metrics = value(args, ++i, arg); break;
+                case "--pipeline": pipeline = threads(value(args, ++i, arg), arg); break;
+                case "--queue": queue = positive(value(args, ++i, arg), arg); break;
+                default:
+                    if (arg.startsWith("-") && arg.length() > 1) throw new IllegalArgumentException("Unknown option " + arg);
+                    arguments.add(arg);
+            }
+        }
+        if (arguments.isEmpty()) throw new IllegalArgumentException("No input files given");
+        boolean fused = separationNames.length > 1;
+        if (raw && (channels || table || pipeline != null))
+            throw new IllegalArgumentException("--raw cannot be combined with --channels, --table or --pipeline");
+        if (!raw && (sample != null || lz4)) throw new IllegalArgumentException("--sample and --lz4 apply only to --raw");
+        if (sample == null) sample = PlanarSample.FLOAT32;
+        if (output == null) output = raw ? "{dir}/{name}-{separation}.cpl" : !channels ? "{dir}/{name}-{separation}.png" : fused ? "{dir}/{name}-{separation}-{channel}.png" : "{dir}/{name}-{channel}.png";
+        if (channels && !output.contains("{channel}")) throw new IllegalArgumentException("Output pattern must contain {channel} with --channels");
+        if (!channels && output.contains("{channel}"))
+            throw new IllegalArgumentException("Output pattern may contain {channel} only with --channels, a single file holds every channel otherwise");
+        if (channels && fused && !output.contains("{separation}"))
+            throw new IllegalArgumentException("Output pattern must contain {separation} with --channels and several separations");
+        if (raw && fused && !output.contains("{separation}"))
+            throw new IllegalArgumentException("Output pattern must contain {separation} with --raw and several separations");
+        if (stream && pipeline != null) throw new IllegalArgumentException("--stream and --pipeline cannot be combined");
+        if (stream && fused) throw new IllegalArgumentException("--stream takes a single separation");
+        for (String name : separationNames) Profiles.getSeparation(name, profile, illuminant, !exact);
+        return true;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value of " + option);
+        return args[i];
+    }
+
+    private static int positive(String value, String option) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0) return result;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException(option + " expects a positive number, got " + value);
+    }
+
+    private static String[] separations(String value, String option) {
+        String[] names = value.split(",");
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim();
+            if (names[i].isEmpty()) throw new IllegalArgumentException(option + " expects separation names separated by commas, got " + value);
+            for (int j = 0; j < i; j++)
+                if (names[j].equals(names[i])) throw new IllegalArgumentException(option + " lists " + names[i] + " twice");
+        }
+        return names;
+    }
+
+    private static int[] threads(String value, String option) {
+        String[] counts = value.split(",");
+        if (counts.length != 3) throw new IllegalArgumentException(option + " expects three thread counts like 2,1,2, got " + value);
+        int[] result = new int[3];
+        for (int i = 0; i < 3; i++) result[i] = positive(counts[i], option);
+        return result;
+    }
+
+    private static int level(String value, String option) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= Deflater.NO_COMPRESSION && result <= Deflater.BEST_COMPRESSION) return result;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException(option + " expects a level from 0 to 9, got " + value);
+    }
+
+    private static PngFilter filter(String value, String option) {
+        try {
+            return PngFilter.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(option + " expects one of " + Arrays.toString(PngFilter.values()) + ", got " + value);
+        }
+    }
+
+    private static PlanarSample sample(String value, String option) {
+        try {
+            return PlanarSample.valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(option + " expects one of " + Arrays.toString(PlanarSample.values()) + ", got " + value);
+        }
+    }
+
+    private int execute() {
+        List<Path> inputs = new ArrayList<>();
+        for (String argument : arguments) {
+            try {
+                List<Path> expanded = expand(argument);
+                if (expanded.isEmpty()) System.err.println("No images match " + argument);
+                inputs.addAll(expanded);
+            } catch (IOException e) {
+                System.err.println("Cannot read " + argument + ": " + e.getMessage());
+            }
+        }
+        Separation[] separations = new Separation[separationNames.length];
+        for (int k = 0; k < separations.length; k++) {
+            separations[k] = Profiles.getSeparation(separationNames[k], profile, illuminant, !exact);
+            if (table && separations[k] instanceof ChannelSeparation)
+                separations[k] = SeparationTableCache.getDefault().get((ChannelSeparation) separations[k]);
+        }
+        FusedSeparation separation = new FusedSeparation(separations);
+        long start = System.nanoTime();
+        long pixels = 0;
+        int failed = 0;
+        try (SeparationEngine engine = threads > 0 ? new SeparationEngine(threads) : new SeparationEngine()) {
+            if (pipeline != null) {
+                long[] totals = pipeline(inputs, separation, engine);
+                pixels = totals[0];
+                failed = (int) totals[1];
+            } else {
+                ExecutorService executor = Executors.newFixedThreadPool(jobs);
+                List<Future<Long>> results = new ArrayList<>();
+                for (Path input : inputs) {
+                    results.add(executor.submit(() -> process(input, separation, engine)));
+                }
+                for (int i = 0; i < results.size(); i++) {
+                    try {
+                        pixels += results.get(i).get();
+                    } catch (Exception e) {
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        System.err.println(inputs.get(i) + ": " + cause.getMessage());
+                        failed++;
+                    }
+                }
+                executor.shutdown();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "%d files, %d failed, %.1f MP in %.2f s, %.1f MP/s%n",
+                inputs.size(), failed, pixels / 1e6, seconds, pixels / 1e6 / seconds);
+        if (metrics != null) {
+            try {
+                if (metrics.equals("-")) System.out.print(Metrics.toJson());
+                else Files.writeString(Path.of(metrics), Metrics.toJson());
+            } catch (IOException e) {
+                System.err.println("Cannot write metrics to " + metrics + ": " + e.getMessage());
+                return 1;
+            }
+        }
+        return failed == 0 ? 0 : 1;
+    }
+
+    private long process(Path input, FusedSeparation separation, SeparationEngine engine) throws IOException {
+        if (raw) return planar(input, separation, engine);
+        if (stream) return stream(input, separation, engine);
+        long start = System.nanoTime();
+        Texture texture = new Texture(input.toString());
+        int width = texture.getWidth(), height = texture.getHeight();
+        long decoded = System.nanoTime();
+        BufferedImage[] images = separate(texture, separation, engine);
+        long separated = System.nanoTime();
+        Path[] outputs = outputs(input);
+        for (int i = 0; i < images.length; i++) write(images[i], outputs[i]);
+        long written = System.nanoTime();
+        long pixels = (long) width * height;
+        System.out.printf(Locale.ROOT, "%s %dx%d decode %.0f ms, separate %.0f ms, encode %.0f ms, %.1f MP/s%n",
+                input, width, height, (decoded - start) / 1e6, (separated - decoded) / 1e6, (written - separated) / 1e6,
+                pixels / 1e6 / ((written - start) / 1e9));
+        return pixels;
+    }
+
+    /**
+     * Runs images through decode, separate and encode stages on their own threads, writing the files in input order.
+     *
+     * @return pixels processed and number of failed images
+     */
+    private long[] pipeline(List<Path> inputs, FusedSeparation separation, SeparationEngine engine) {
+        List<Frame> frames = new ArrayList<>();
+        for (Path input : inputs) frames.add(new Frame(input));
+        Pipeline<Frame> stages = new Pipeline<Frame>(queue)
+                .stage("decode", pipeline[0], frame -> frame.texture = new Texture(frame.input.toString()))
+                .stage("separate", pipeline[1], frame -> {
+                    frame.width = frame.texture.getWidth();
+                    frame.height = frame.texture.getHeight();
+                    frame.images = separate(frame.texture, separation, engine);
+                    frame.texture = null;
+                })
+                .stage("encode", pipeline[2], frame -> {
+                    frame.outputs = outputs(frame.input);
+                    frame.encoded = new byte[frame.images.length][];
+                    for (int i = 0; i < frame.images.length; i++) frame.encoded[i] = encode(frame.images[i], frame.outputs[i]);
+                    frame.images = null;
+                });
+        long[] totals = new long[2];
+        try {
+            stages.run(frames, "write", (frame, error) -> {
+                if (error == null) {
+                    try {
+                        for (int i = 0; i < frame.encoded.length; i++) write(frame.encoded[i], frame.outputs[i]);
+                    } catch (IOException e) {
+                        error = e;
+                    }
+                }
+                frame.encoded = null;
+                if (error != null) {
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    System.err.println(frame.input + ": " + cause.getMessage());
+                    totals[1]++;
+                    return;
+                }
+                totals[0] += (long) frame.width * frame.height;
+                System.out.printf(Locale.ROOT, "%s %dx%d%n", frame.input, frame.width, frame.height);
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+        System.out.print(stages.report());
+        return totals;
+    }
+
+    /**
+     * Separates texture into three channel images per separation, or a composite of every separation.
+     * A single separation runs on its own, several ones are fused.
+     */
+    private BufferedImage[] separate(Texture texture, FusedSeparation separation, SeparationEngine engine) {
+        int width = texture.getWidth(), height = texture.getHeight(), count = separation.size();
+        if (channels) {
+            BufferedImage[] images = new BufferedImage[3 * count];
+            int[][] planes = new int[3 * count][];
+            for (int c = 0; c < planes.length; c++) {
+                images[c] = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                planes[c] = ((DataBufferInt) images[c].getRaster().getDataBuffer()).getData();
+            }
+            if (count == 1) engine.separate(texture, separation.getSeparation(0), planes[0], planes[1], planes[2]);
+            else engine.separate(texture, separation, planes);
+            return images;
+        }
+        BufferedImage image = new BufferedImage(2 * width, 2 * height * count, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        if (count == 1) engine.composite(texture, separation.getSeparation(0), pixels);
+        else engine.composite(texture, separation, pixels);
+        return new BufferedImage[]{image};
+    }
+
+    private Path[] outputs(Path input) {
+        if (!channels) return new Path[]{path(input, String.join("+", separationNames), null)};
+        Path[] paths = new Path[3 * separationNames.length];
+        for (int k = 0; k < separationNames.length; k++) {
+            String[] names = Profiles.CHANNELS.get(separationNames[k]);
+            for (int c = 0; c < 3; c++) paths[3 * k + c] = path(input, separationNames[k], names[c]);
+        }
+        return paths;
+    }
+
+    private long stream(Path input, FusedSeparation fused, SeparationEngine engine) throws IOException {
+        Separation separation = fused.getSeparation(0);
+        String separationName = separationNames[0];
+        long start = System.nanoTime();
+        StripProcessor processor = new StripProcessor(engine, strip, level, filter);
+        long pixels;
+        if (channels) {
+            String[] names = Profiles.CHANNELS.get(separationName);
+            pixels = processor.channels(input, separation, path(input, separationName, names[0]), path(input, separationName, names[1]),
+                    path(input, separationName, names[2]));
+        } else {
+            pixels = processor.composite(input, separation, path(input, separationName, null));
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "%s streamed in %.0f ms, %.1f MP/s%n", input, seconds * 1e3, pixels / 1e6 / seconds);
+        return pixels;
+    }
+
+    private long planar(Path input, FusedSeparation fused, SeparationEngine engine) throws IOException {
+        long start = System.nanoTime();
+        ChannelSeparation[] separations = new ChannelSeparation[fused.size()];
+        Path[] outputs = new Path[fused.size()];
+        for (int k = 0; k < separations.length; k++) {
+            separations[k] = (ChannelSeparation) fused.getSeparation(k);
+            outputs[k] = path(input, separationNames[k], null);
+        }
+        long pixels = new StripProcessor(engine, strip).planar(input, separations, outputs, sample, lz4);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ROOT, "%s written in %.0f ms, %.1f MP/s%n", input, seconds * 1e3, pixels / 1e6 / seconds);
+        return pixels;
+    }
+
+    private Path path(Path input, String separation, String channel) {
+        String file = input.getFileName().toString();
+        int dot = file.lastIndexOf('.');
+        Path parent = input.toAbsolutePath().getParent();
+        String result = output
+                .replace("{dir}", parent == null ? "." : parent.toString())
+                .replace("{name}", dot < 0 ? file : file.substring(0, dot))
+                .replace("{ext}", dot < 0 ? "" : file.substring(dot + 1))
+                .replace("{separation}", separation);
+        if (channel != null) result = result.replace("{channel}", channel);
+        return Path.of(result);
+    }
+
+    private void write(BufferedImage image, Path path) throws IOException {
+        write(encode(image, path), path);
+    }
+
+    private static void write(byte[] data, Path path) throws IOException {
+        if (path.getParent() != null) Files.createDirectories(path.getParent());
+        Files.write(path, data);
+    }
+
+    private byte[] encode(BufferedImage image, Path path) throws IOException {
+        String file = path.getFileName().toString();
+        int dot = file.lastIndexOf('.');
+        if (dot < 0) throw new IOException("No format specified for " + path);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        if (file.substring(dot + 1).equalsIgnoreCase("png")) {
+            new PngEncoder(level, filter).encode(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), image.getWidth(), image.getHeight(), stream);
+            return stream.toByteArray();
+        }
+        try (Metrics.Sample sample = Metrics.start(Stage.ENCODE)) {
+            if (!ImageIO.write(image, file.substring(dot + 1), stream))
+                throw new IOException("Unsupported format " + file.substring(dot + 1));
+            sample.setPixels((long) image.getWidth() * image.getHeight());
+        }
+        return stream.toByteArray();
+    }
+
+    static List<Path> expand(String argument) throws IOException {
+        if (!isGlob(argument)) {
+            Path path = Path.of(argument);
+            if (!Files.isDirectory(path)) return List.of(path);
+            try (Stream<Path> files = Files.list(path)) {
+                return files.filter(Batch::isImage).sorted().collect(Collectors.toList());
+            }
+        }
+        String separator = FileSystems.getDefault().getSeparator();
+        String[] segments = argument.split(Pattern.quote(separator), -1);
+        int glob = 0;
+        while (glob < segments.length && !isGlob(segments[glob])) glob++;
+        Path root = Path.of(String.join(separator, Arrays.copyOf(segments, glob)));
+        int depth = argument.contains("**") ? Integer.MAX_VALUE : segments.length - glob;
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + argument);
+        try (Stream<Path> files = Files.walk(root, depth)) {
+            return files.filter(path -> matcher.matches(path) && isImage(path)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static boolean isGlob(String argument) {
+        return argument.matches(".*[*?\\[{].*");
+    }
+
+    private static boolean isImage(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return Files.isRegularFile(path) && (name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".bmp"));
+    }
+
+    /**
+     * An image on its way through the pipeline, each stage drops what the next ones no longer need.
+     */
+    private static final class Frame {
+        private final Path input;
+        private Texture texture;
+        private int width, height;
+        private BufferedImage[] images;
+        private Path[] outputs;
+        private byte[][] encoded;
+
+        private Frame(Path input) {
+            this.input = input;
+        }
+    }
+}
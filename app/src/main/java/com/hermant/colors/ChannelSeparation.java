@@ -0,0 +1,114 @@
+package com.hermant.colors;
+
+/**
+ * Separation computing three coefficients per pixel, each one displayed as a gradient between two colors.
+ * Subclasses implement the planar kernel, bulk calls on packed pixels run it over fixed size blocks
+ * of per thread scratch buffers, so they do not allocate.
+ */
+public abstract class ChannelSeparation implements Separation {
+
+    static final int BLOCK = 1024;
+    private static final ThreadLocal<float[][]> SCRATCH = ThreadLocal.withInitial(() -> new float[6][BLOCK]);
+    private static final Kernels.Gradient GRADIENT = Kernels.gradient();
+
+    private final Color3f from0, to0, from1, to1, from2, to2;
+
+    protected ChannelSeparation(Color3f from0, Color3f to0, Color3f from1, Color3f to1, Color3f from2, Color3f to2) {
+        this.from0 = from0;
+        this.to0 = to0;
+        this.from1 = from1;
+        this.to1 = to1;
+        this.from2 = from2;
+        this.to2 = to2;
+    }
+
+    /**
+     * Returns a string identifying this separation together with all of its parameters.
+     */
+    public String getKey() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Computes coefficients of pixels offset to offset + length - 1 given as normalized color planes.
+     */
+    public abstract void separate(float[] r, float[] g, float[] b, float[] c0, float[] c1, float[] c2, int offset, int length);
+
+    @Override
+    public Color3f[] separate(Color3f input) {
+        float[] c0 = new float[1], c1 = new float[1], c2 = new float[1];
+        separate(new float[]{input.red}, new float[]{input.green}, new float[]{input.blue}, c0, c1, c2, 0, 1);
+        return new Color3f[]{Color3f.interpolate(from0, to0, c0[0]), Color3f.interpolate(from1, to1, c1[0]), Color3f.interpolate(from2, to2, c2[0])};
+    }
+
+    @Override
+    public void separate(int[] src, int srcOffset, int[] dst0, int offset0, int[] dst1, int offset1, int[] dst2, int offset2, int length) {
+        float[][] scratch = SCRATCH.get();
+        float[] c0 = scratch[3], c1 = scratch[4], c2 = scratch[5];
+        for (int done = 0; done < length; done += BLOCK) {
+            int n = Math.min(BLOCK, length - done);
+            separate(src, srcOffset + done, c0, c1, c2, n);
+            gradient(c0, c1, c2, dst0, offset0 + done, dst1, offset1 + done, dst2, offset2 + done, n);
+        }
+    }
+
+    /**
+     * Computes coefficients of length packed rgb pixels of src starting at srcOffset,
+     * writing them to c0, c1, c2 starting at offset, the numbers the gradients of the channels are drawn from.
+     */
+    public void coefficients(int[] src, int srcOffset, float[] c0, float[] c1, float[] c2, int offset, int length) {
+        float[][] scratch = SCRATCH.get();
+        float[] block0 = scratch[3], block1 = scratch[4], block2 = scratch[5];
+        for (int done = 0; done < length; done += BLOCK) {
+            int n = Math.min(BLOCK, length - done);
+            separate(src, srcOffset + done, block0, block1, block2, n);
+            System.arraycopy(block0, 0, c0, offset + done, n);
+            System.arraycopy(block1, 0, c1, offset + done, n);
+            System.arraycopy(block2, 0, c2, offset + done, n);
+        }
+    }
+
+    /**
+     * Whether the packed kernel beats unpacking pixels to normalized planes for the planar one,
+     * so that a {@link FusedSeparation} hands it packed pixels rather than the planes it shares.
+     */
+    protected boolean hasPackedKernel() {
+        return false;
+    }
+
+    /**
+     * Writes the gradient colors of length coefficients of each channel.
+     */
+    void gradient(float[] c0, float[] c1, float[] c2, int[] dst0, int offset0, int[] dst1, int offset1, int[] dst2, int offset2, int length) {
+        gradient(c0, from0, to0, dst0, offset0, length);
+        gradient(c1, from1, to1, dst1, offset1, length);
+        gradient(c2, from2, to2, dst2, offset2, length);
+    }
+
+    /**
+     * Computes coefficients of length packed rgb pixels into the first length elements of c0, c1, c2,
+     * length never exceeds the bulk block size. Subclasses may override it to work on 8 bit channels directly.
+     */
+    protected void separate(int[] src, int srcOffset, float[] c0, float[] c1, float[] c2, int length) {
+        float[][] scratch = SCRATCH.get();
+        float[] r = scratch[0], g = scratch[1], b = scratch[2];
+        for (int i = 0; i < length; i++) {
+            int rgb = src[srcOffset + i];
+            r[i] = ((rgb >> 16) & 0xff) / 255.0f;
+            g[i] = ((rgb >> 8) & 0xff) / 255.0f;
+            b[i] = (rgb & 0xff) / 255.0f;
+        }
+        separate(r, g, b, c0, c1, c2, 0, length);
+    }
+
+    private static void gradient(float[] coefficients, Color3f from, Color3f to, int[] dst, int offset, int length) {
+        if (GRADIENT != null) {
+            GRADIENT.gradient(coefficients, from, to, dst, offset, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            float factor = coefficients[i], _factor = 1.0f - factor;
+            dst[offset + i] = Color3f.getRGB(from.red * _factor + to.red * factor, from.green * _factor + to.green * factor, from.blue * _factor + to.blue * factor);
+        }
+    }
+}
@@ -88,6 +88,10 @@ public class Color3f {
         return ((int) (red * 255.0f + 0.5f) << 16) | ((int) (green * 255.0f + 0.5f) << 8) | (int) (blue * 255.0f + 0.5f);
     }
 
+    public static int getRGB(float red, float green, float blue) {
+        return ((int) (clamp(red) * 255.0f + 0.5f) << 16) | ((int) (clamp(green) * 255.0f + 0.5f) << 8) | (int) (clamp(blue) * 255.0f + 0.5f);
+    }
+
     public static Color3f mul(Color3f a, Color3f b) {
         return new Color3f(a.red * b.red, a.green * b.green, a.blue * b.blue);
     }
@@ -0,0 +1,101 @@
+package com.hermant.colors;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Several separations computed in a single pass over the pixels, a block of them at a time, so that every pixel
+ * is read once and stays in cache while each separation takes its turn. Intermediates are shared: the normalized
+ * rgb planes among separations without a packed kernel, and the linear rgb and xyz planes among Lab separations
+ * of the same gamma, primaries and white.
+ * <p>
+ * Results are identical to running each separation on its own. Separations other than {@link ChannelSeparation},
+ * such as {@link SeparationTable}, take part with their own bulk kernel.
+ */
+public class FusedSeparation {
+
+    private static final int BLOCK = ChannelSeparation.BLOCK;
+    private static final ThreadLocal<float[][]> SCRATCH = ThreadLocal.withInitial(() -> new float[12][BLOCK]);
+
+    private final Separation[] separations;
+    // Lab separations sharing stages follow each other
+    private final int[] order;
+
+    public FusedSeparation(Separation... separations) {
+        if (separations.length == 0) throw new IllegalArgumentException("No separations given");
+        this.separations = separations.clone();
+        List<Integer> order = new ArrayList<>(), staged = new ArrayList<>();
+        for (int k = 0; k < separations.length; k++) (isStaged(separations[k]) ? staged : order).add(k);
+        staged.sort((a, b) -> LabSeparation.STAGES.compare((LabSeparation) separations[a], (LabSeparation) separations[b]));
+        order.addAll(staged);
+        this.order = order.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public int size() {
+        return separations.length;
+    }
+
+    public Separation getSeparation(int index) {
+        return separations[index];
+    }
+
+    /**
+     * Separates length packed rgb pixels of src starting at srcOffset with every separation,
+     * writing channel c of separation k to dst[3 * k + c] starting at offsets[3 * k + c].
+     */
+    public void separate(int[] src, int srcOffset, int[][] dst, int[] offsets, int length) {
+        if (dst.length != 3 * separations.length || offsets.length != dst.length)
+            throw new IllegalArgumentException("Expected " + 3 * separations.length + " planes, got " + dst.length);
+        float[][] scratch = SCRATCH.get();
+        float[] r = scratch[0], g = scratch[1], b = scratch[2];
+        float[] red = scratch[3], green = scratch[4], blue = scratch[5];
+        float[] x = scratch[6], y = scratch[7], z = scratch[8];
+        float[] c0 = scratch[9], c1 = scratch[10], c2 = scratch[11];
+        for (int done = 0; done < length; done += BLOCK) {
+            int n = Math.min(BLOCK, length - done), at = srcOffset + done;
+            boolean unpacked = false;
+            LabSeparation linear = null, xyz = null;
+            for (int k : order) {
+                Separation separation = separations[k];
+                int[] dst0 = dst[3 * k], dst1 = dst[3 * k + 1], dst2 = dst[3 * k + 2];
+                int offset0 = offsets[3 * k] + done, offset1 = offsets[3 * k + 1] + done, offset2 = offsets[3 * k + 2] + done;
+                if (!(separation instanceof ChannelSeparation)) {
+                    separation.separate(src, at, dst0, offset0, dst1, offset1, dst2, offset2, n);
+                    continue;
+                }
+                ChannelSeparation channels = (ChannelSeparation) separation;
+                if (isStaged(separation)) {
+                    LabSeparation lab = (LabSeparation) separation;
+                    if (linear == null || !lab.sameLinear(linear)) {
+                        lab.linearize(src, at, red, green, blue, 0, n);
+                        linear = lab;
+                        xyz = null;
+                    }
+                    if (xyz == null || !lab.sameXyz(xyz)) {
+                        lab.xyz(red, green, blue, x, y, z, 0, n);
+                        xyz = lab;
+                    }
+                    lab.lab(x, y, z, 0, c0, c1, c2, 0, n);
+                } else if (channels.hasPackedKernel()) {
+                    channels.separate(src, at, c0, c1, c2, n);
+                } else {
+                    if (!unpacked) {
+                        for (int i = 0; i < n; i++) {
+                            int rgb = src[at + i];
+                            r[i] = ((rgb >> 16) & 0xff) / 255.0f;
+                            g[i] = ((rgb >> 8) & 0xff) / 255.0f;
+                            b[i] = (rgb & 0xff) / 255.0f;
+                        }
+                        unpacked = true;
+                    }
+                    channels.separate(r, g, b, c0, c1, c2, 0, n);
+                }
+                channels.gradient(c0, c1, c2, dst0, offset0, dst1, offset1, dst2, offset2, n);
+            }
+        }
+    }
+
+    private static boolean isStaged(Separation separation) {
+        return separation instanceof LabSeparation && !((LabSeparation) separation).hasPackedKernel();
+    }
+}
@@ -0,0 +1,60 @@
+package com.hermant.colors;
+
+public class HSVSeparation extends ChannelSeparation {
+
+    private final Kernels.Packed vector = Kernels.hsv();
+
+    public HSVSeparation() {
+        super(new Color3f(0, 0, 0), new Color3f(255, 255, 255),
+                new Color3f(0, 0, 0), new Color3f(255, 255, 255),
+                new Color3f(0, 0, 0), new Color3f(255, 255, 255));
+    }
+
+    @Override
+    public void separate(float[] r, float[] g, float[] b, float[] c0, float[] c1, float[] c2, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            float red = r[i], green = g[i], blue = b[i];
+            float min, max, delta;
+            float h, s;
+            min = Math.min(blue, Math.min(red, green));
+            max = Math.max(blue, Math.max(red, green));
+            delta = max - min;
+            c2[i] = max;
+            if (delta < 0.0000001f) {
+                c0[i] = 0;
+                c1[i] = 0;
+                continue;
+            }
+            if (max > 0.0f) {
+                s = (delta / max);
+            } else {
+                c0[i] = Float.NaN;
+                c1[i] = 0.0f;
+                continue;
+            }
+            if (red == max) {
+                h = 6.0f + (green - blue) / delta;
+            } else if (green == max) {
+                h = 2.0f + (blue - red) / delta;
+            } else {
+                h = 4.0f + (red - green) / delta;
+            }
+            h = h / 6.0f;
+            if (h < 0.0f) h += 1.0f;
+            if (h > 1.0f) h -= 1.0f;
+            c0[i] = h;
+            c1[i] = s;
+        }
+    }
+
+    @Override
+    protected boolean hasPackedKernel() {
+        return vector != null;
+    }
+
+    @Override
+    protected void separate(int[] src, int srcOffset, float[] c0, float[] c1, float[] c2, int length) {
+        if (vector != null) vector.separate(src, srcOffset, c0, c1, c2, 0, length);
+        else super.separate(src, srcOffset, c0, c1, c2, length);
+    }
+}
@@ -0,0 +1,103 @@
+package com.hermant.colors;
+
+/**
+ * Optional SIMD kernels of the separations, built from app/src/vector against the incubating
+ * jdk.incubator.vector module. They are used only when the module is present at runtime
+ * ({@code --add-modules jdk.incubator.vector}) and {@code -Dcolors.vector=false} is not given,
+ * otherwise every factory returns null and separations run their scalar kernels.
+ * <p>
+ * Vector kernels perform the same float operations in the same order as the scalar ones,
+ * so their coefficients are identical, the exact Lab mode relies on Math.pow and always stays scalar.
+ */
+final class Kernels {
+
+    private static final Factory FACTORY = load();
+
+    private Kernels() {
+    }
+
+    /**
+     * Computes coefficients of length packed rgb pixels into c0, c1, c2 starting at offset.
+     */
+    interface Packed {
+        void separate(int[] src, int srcOffset, float[] c0, float[] c1, float[] c2, int offset, int length);
+    }
+
+    /**
+     * Computes coefficients of length pixels given as planes x, y, z starting at srcOffset into c0, c1, c2 starting at offset.
+     */
+    interface Planar {
+        void separate(float[] x, float[] y, float[] z, int srcOffset, float[] c0, float[] c1, float[] c2, int offset, int length);
+    }
+
+    /**
+     * Writes length packed colors interpolated between from and to by coefficients, see {@link Color3f#getRGB(float, float, float)}.
+     */
+    interface Gradient {
+        void gradient(float[] coefficients, Color3f from, Color3f to, int[] dst, int offset, int length);
+    }
+
+    interface Factory {
+        Gradient gradient();
+
+        Packed rgb();
+
+        Packed ycbcr();
+
+        Packed hsv();
+
+        /**
+         * @param linear   256 entry gamma table
+         * @param matrix   row major rgb to xyz matrix
+         * @param white    reference white
+         * @param cbrt     cube root table of {@link LabSeparation#CBRT_TABLE_SIZE} intervals
+         * @param fallback scalar kernel for pixels whose xyz fall outside of the table
+         */
+        Packed lab(float[] linear, float[] matrix, float[] white, float[] cbrt, Packed fallback);
+
+        /**
+         * Last step of Lab, from xyz relative to the reference white.
+         *
+         * @param cbrt     cube root table of {@link LabSeparation#CBRT_TABLE_SIZE} intervals
+         * @param fallback scalar kernel for pixels outside of the table
+         */
+        Planar lab(float[] cbrt, Planar fallback);
+    }
+
+    static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    static Gradient gradient() {
+        return FACTORY == null ? null : FACTORY.gradient();
+    }
+
+    static Packed rgb() {
+        return FACTORY == null ? null : FACTORY.rgb();
+    }
+
+    static Packed ycbcr() {
+        return FACTORY == null ? null : FACTORY.ycbcr();
+    }
+
+    static Packed hsv() {
+        return FACTORY == null ? null : FACTORY.hsv();
+    }
+
+    static Packed lab(float[] linear, float[] matrix, float[] white, float[] cbrt, Packed fallback) {
+        return FACTORY == null ? null : FACTORY.lab(linear, matrix, white, cbrt, fallback);
+    }
+
+    static Planar lab(float[] cbrt, Planar fallback) {
+        return FACTORY == null ? null : FACTORY.lab(cbrt, fallback);
+    }
+
+    private static Factory load() {
+        if (!Boolean.parseBoolean(System.getProperty("colors.vector", "true"))) return null;
+        try {
+            return (Factory) Class.forName("com.hermant.colors.VectorKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
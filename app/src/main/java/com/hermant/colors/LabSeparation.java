@@ -0,0 +1,260 @@
+package com.hermant.colors;
+
+import com.hermant.util.LruCache;
+import org.joml.Matrix3f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * RGB to L*ab separation, see {@link Separation#getRGBtoLabSeparation}.
+ * <p>
+ * In lut mode gamma of 8 bit input is read from a 256 entry table and the L*ab cube root
+ * is linearly interpolated from a table of {@value #CBRT_TABLE_SIZE} intervals over [0, 1].
+ * Lut mode coefficients stay within {@value #LUT_ERROR} of the exact ones,
+ * so packed results differ from the exact path by at most a single 8 bit step.
+ */
+public class LabSeparation extends ChannelSeparation {
+
+    public static final int CBRT_TABLE_SIZE = 4096;
+    public static final float LUT_ERROR = 0.0001f;
+
+    private static final float e = 0.008856f;
+    private static final float k = 903.3f;
+    private static final float[] CBRT = new float[CBRT_TABLE_SIZE + 2];
+    private static final int BLOCK = ChannelSeparation.BLOCK;
+    private static final ThreadLocal<float[][]> SCRATCH = ThreadLocal.withInitial(() -> new float[3][BLOCK]);
+    private static final int CACHE_SIZE = 256;
+    // least recently used separations are dropped one at a time, the default profiles stay
+    private static final LruCache<Key, LabSeparation> CACHE = new LruCache<>(CACHE_SIZE, separation -> 1);
+
+    /**
+     * Orders separations sharing linear planes next to each other, and among them those sharing xyz planes.
+     */
+    static final Comparator<LabSeparation> STAGES = Comparator.<LabSeparation>comparingDouble(lab -> lab.gamma)
+            .thenComparing(lab -> lab.transform, Arrays::compare);
+
+    static {
+        for (int i = 0; i <= CBRT_TABLE_SIZE; i++) CBRT[i] = f((float) i / CBRT_TABLE_SIZE);
+        CBRT[CBRT_TABLE_SIZE + 1] = CBRT[CBRT_TABLE_SIZE];
+    }
+
+    private final String key;
+    private final boolean lut;
+    private final float gamma;
+    private final float X_w, Y_w, Z_w;
+    private final float m00, m01, m02, m10, m11, m12, m20, m21, m22;
+    private final float[] transform;
+    private final float[] linear;
+    private final Kernels.Packed vector;
+    private final Kernels.Planar planar;
+
+    public LabSeparation(float x_r, float y_r, float x_g, float y_g, float x_b, float y_b, float x_w, float y_w, float gamma, boolean lut) {
+        super(new Color3f(0, 0, 0), new Color3f(255, 255, 255),
+                new Color3f(0, 255, 127), new Color3f(255, 0, 127),
+                new Color3f(0, 127, 255), new Color3f(255, 127, 0));
+        this.key = String.format("%s(%s, %s, %s, %s, %s, %s, %s, %s, %s, %s)", getClass().getSimpleName(), x_r, y_r, x_g, y_g, x_b, y_b, x_w, y_w, gamma, lut);
+        this.lut = lut;
+        this.gamma = gamma;
+        final float X_r = x_r / y_r;
+        final float Y_r = 1.0f;
+        final float Z_r = (1.0f - x_r - y_r) / y_r;
+        final float X_g = x_g / y_g;
+        final float Y_g = 1.0f;
+        final float Z_g = (1.0f - x_g - y_g) / y_g;
+        final float X_b = x_b / y_b;
+        final float Y_b = 1.0f;
+        final float Z_b = (1.0f - x_b - y_b) / y_b;
+        X_w = x_w / y_w;
+        Y_w = 1.0f;
+        Z_w = (1.0f - x_w - y_w) / y_w;
+        final Vector3f S = new Matrix3f(X_r, X_g, X_b, Y_r, Y_g, Y_b, Z_r, Z_g, Z_b).invert().transformTranspose(new Vector3f(X_w, Y_w, Z_w));
+        final Matrix3f M = new Matrix3f(
+                S.x * X_r, S.y * X_g, S.z * X_b,
+                S.x * Y_r, S.y * Y_g, S.z * Y_b,
+                S.x * Z_r, S.y * Z_g, S.z * Z_b
+        );
+        m00 = M.m00();
+        m01 = M.m01();
+        m02 = M.m02();
+        m10 = M.m10();
+        m11 = M.m11();
+        m12 = M.m12();
+        m20 = M.m20();
+        m21 = M.m21();
+        m22 = M.m22();
+        linear = new float[256];
+        for (int i = 0; i < linear.length; i++) linear[i] = (float) Math.pow(i / 255.0f, gamma);
+        transform = new float[]{m00, m01, m02, m10, m11, m12, m20, m21, m22, X_w, Y_w, Z_w};
+        vector = lut ? Kernels.lab(linear, Arrays.copyOf(transform, 9), new float[]{X_w, Y_w, Z_w}, CBRT, this::separateLut) : null;
+        planar = lut ? Kernels.lab(CBRT, this::labScalar) : null;
+    }
+
+    /**
+     * Returns a shared separation for the given parameters, tables and matrices are computed once per parameter set.
+     */
+    public static LabSeparation of(float x_r, float y_r, float x_g, float y_g, float x_b, float y_b, float x_w, float y_w, float gamma, boolean lut) {
+        Key key = new Key(new float[]{x_r, y_r, x_g, y_g, x_b, y_b, x_w, y_w, gamma}, lut);
+        // held across the lookup and the put, so that concurrent callers share a single instance
+        synchronized (CACHE) {
+            LabSeparation separation = CACHE.get(key);
+            if (separation == null) CACHE.put(key, separation = new LabSeparation(x_r, y_r, x_g, y_g, x_b, y_b, x_w, y_w, gamma, lut));
+            return separation;
+        }
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    public boolean isLut() {
+        return lut;
+    }
+
+    private static float f(float x) {
+        return (x > e) ? (float) Math.pow(x, 0.33333333f) : (k * x + 16f) / 116f;
+    }
+
+    private static float lookup(float x) {
+        if (!(x >= 0.0f && x <= 1.0f)) return f(x);
+        x *= CBRT_TABLE_SIZE;
+        int i = (int) x;
+        float t = x - i;
+        return CBRT[i] + (CBRT[i + 1] - CBRT[i]) * t;
+    }
+
+    @Override
+    public void separate(float[] r, float[] g, float[] b, float[] c0, float[] c1, float[] c2, int offset, int length) {
+        float[][] scratch = SCRATCH.get();
+        float[] x = scratch[0], y = scratch[1], z = scratch[2];
+        for (int done = 0; done < length; done += BLOCK) {
+            int n = Math.min(BLOCK, length - done), at = offset + done;
+            for (int i = 0; i < n; i++) {
+                x[i] = (float) Math.pow(r[at + i], gamma);
+                y[i] = (float) Math.pow(g[at + i], gamma);
+                z[i] = (float) Math.pow(b[at + i], gamma);
+            }
+            xyz(x, y, z, x, y, z, 0, n);
+            labScalar(x, y, z, 0, c0, c1, c2, at, n);
+        }
+    }
+
+    @Override
+    protected void separate(int[] src, int srcOffset, float[] c0, float[] c1, float[] c2, int length) {
+        if (!lut) super.separate(src, srcOffset, c0, c1, c2, length);
+        else if (vector != null) vector.separate(src, srcOffset, c0, c1, c2, 0, length);
+        else separateLut(src, srcOffset, c0, c1, c2, 0, length);
+    }
+
+    @Override
+    protected boolean hasPackedKernel() {
+        return vector != null;
+    }
+
+    float getGamma() {
+        return gamma;
+    }
+
+    /**
+     * Row major rgb to xyz matrix followed by the reference white, all that xyz depends on besides linear rgb.
+     * Not to be modified.
+     */
+    float[] getTransform() {
+        return transform;
+    }
+
+    /**
+     * Whether linearize gives the same planes for other.
+     */
+    boolean sameLinear(LabSeparation other) {
+        return Float.compare(gamma, other.gamma) == 0;
+    }
+
+    /**
+     * Whether xyz gives the same planes for other given the same linear planes.
+     */
+    boolean sameXyz(LabSeparation other) {
+        return Arrays.equals(transform, other.transform);
+    }
+
+    /**
+     * First of the three steps the bulk kernel is split into for {@link FusedSeparation} and {@link LabStageCache}
+     * to share: linear rgb of length packed pixels, written from offset on.
+     * The gamma table holds exactly what the exact mode computes for 8 bit channels.
+     */
+    void linearize(int[] src, int srcOffset, float[] red, float[] green, float[] blue, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            int rgb = src[srcOffset + i];
+            red[offset + i] = linear[(rgb >> 16) & 0xff];
+            green[offset + i] = linear[(rgb >> 8) & 0xff];
+            blue[offset + i] = linear[rgb & 0xff];
+        }
+    }
+
+    /**
+     * Second step, xyz relative to the reference white of linear rgb, which it may overwrite.
+     */
+    void xyz(float[] red, float[] green, float[] blue, float[] x, float[] y, float[] z, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            float r = red[i], g = green[i], b = blue[i];
+            x[i] = (m00 * r + (m01 * g + m02 * b)) / X_w;
+            y[i] = (m10 * r + (m11 * g + m12 * b)) / Y_w;
+            z[i] = (m20 * r + (m21 * g + m22 * b)) / Z_w;
+        }
+    }
+
+    /**
+     * Last step, coefficients of relative xyz starting at srcOffset, written from offset on.
+     */
+    void lab(float[] x, float[] y, float[] z, int srcOffset, float[] c0, float[] c1, float[] c2, int offset, int length) {
+        if (planar != null) planar.separate(x, y, z, srcOffset, c0, c1, c2, offset, length);
+        else labScalar(x, y, z, srcOffset, c0, c1, c2, offset, length);
+    }
+
+    private void labScalar(float[] x, float[] y, float[] z, int srcOffset, float[] c0, float[] c1, float[] c2, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            float f_x = lut ? lookup(x[srcOffset + i]) : f(x[srcOffset + i]);
+            float f_y = lut ? lookup(y[srcOffset + i]) : f(y[srcOffset + i]);
+            float f_z = lut ? lookup(z[srcOffset + i]) : f(z[srcOffset + i]);
+            c0[offset + i] = (116f * f_y - 16f) / 256f;
+            c1[offset + i] = (500f * (f_x - f_y) + 128f) / 256f;
+            c2[offset + i] = (200f * (f_y - f_z) + 128f) / 256f;
+        }
+    }
+
+    private void separateLut(int[] src, int srcOffset, float[] c0, float[] c1, float[] c2, int offset, int length) {
+        float[][] scratch = SCRATCH.get();
+        float[] x = scratch[0], y = scratch[1], z = scratch[2];
+        for (int done = 0; done < length; done += BLOCK) {
+            int n = Math.min(BLOCK, length - done);
+            linearize(src, srcOffset + done, x, y, z, 0, n);
+            xyz(x, y, z, x, y, z, 0, n);
+            labScalar(x, y, z, 0, c0, c1, c2, offset + done, n);
+        }
+    }
+
+    private static final class Key {
+        private final float[] parameters;
+        private final boolean lut;
+
+        private Key(float[] parameters, boolean lut) {
+            this.parameters = parameters;
+            this.lut = lut;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return lut == key.lut && Arrays.equals(parameters, key.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(parameters) + Boolean.hashCode(lut);
+        }
+    }
+}
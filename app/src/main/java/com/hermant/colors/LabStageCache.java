@@ -0,0 +1,152 @@
+package com.hermant.colors;
+
+import com.hermant.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the intermediate planes of Lab separations of an image, each keyed by the parameters it depends on:
+ * linear rgb by gamma, xyz relative to the white by gamma, primaries and white. Tuning one parameter at a time
+ * then redoes only the stages after it, a new white point or primary skips linearization, and switching between
+ * tables and exact cube roots skips the color transform altogether. Planes are evicted least recently used
+ * once they exceed the byte budget. Every stage is split into ranges of pixels by the given {@link Ranges},
+ * which may process them in parallel.
+ * <p>
+ * The default cache is configured with the colors.lab.budget system property, 0 disables it.
+ */
+public class LabStageCache {
+
+    public static final long DEFAULT_BUDGET = 64L << 20;
+
+    /**
+     * All pixels as a single range on the calling thread.
+     */
+    public static final Ranges SERIAL = (length, range) -> range.process(0, length);
+
+    private static final int BLOCK = ChannelSeparation.BLOCK;
+    private static final ThreadLocal<float[][]> SCRATCH = ThreadLocal.withInitial(() -> new float[3][BLOCK]);
+
+    private static LabStageCache instance;
+
+    private final LruCache<Key, float[][]> planes;
+
+    /**
+     * @param budget bytes of planes kept
+     */
+    public LabStageCache(long budget) {
+        this.planes = new LruCache<>(budget, planes -> 3L * Float.BYTES * planes[0].length);
+    }
+
+    public static synchronized LabStageCache getDefault() {
+        if (instance == null) instance = new LabStageCache(Long.getLong("colors.lab.budget", DEFAULT_BUDGET));
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return planes.getBudget() > 0;
+    }
+
+    /**
+     * Separates length pixels of an image with separation on the calling thread.
+     */
+    public void separate(Object image, int length, Supplier<int[]> pixels, LabSeparation separation, int[] dst0, int[] dst1, int[] dst2) {
+        separate(image, length, pixels, separation, dst0, dst1, dst2, SERIAL);
+    }
+
+    /**
+     * Separates length pixels of an image with separation, computing only the stages not cached for it.
+     *
+     * @param image  key of the image, equal keys must always stand for the same pixels
+     * @param pixels packed rgb pixels of the image, only asked for when its linear planes are missing
+     * @param ranges splits the pixels of every stage
+     */
+    public void separate(Object image, int length, Supplier<int[]> pixels, LabSeparation separation, int[] dst0, int[] dst1, int[] dst2, Ranges ranges) {
+        Key xyzKey = new Key(image, separation.getGamma(), separation.getTransform());
+        float[][] xyz = planes.get(xyzKey);
+        if (xyz == null) {
+            Key linearKey = new Key(image, separation.getGamma(), null);
+            float[][] linear = planes.get(linearKey);
+            if (linear == null) {
+                linear = linearize(pixels.get(), length, separation, ranges);
+                planes.put(linearKey, linear);
+            }
+            xyz = xyz(linear, length, separation, ranges);
+            planes.put(xyzKey, xyz);
+        }
+        float[] x = xyz[0], y = xyz[1], z = xyz[2];
+        ranges.forEach(length, (from, to) -> {
+            float[][] scratch = SCRATCH.get();
+            float[] c0 = scratch[0], c1 = scratch[1], c2 = scratch[2];
+            for (int done = from; done < to; done += BLOCK) {
+                int n = Math.min(BLOCK, to - done);
+                separation.lab(x, y, z, done, c0, c1, c2, 0, n);
+                separation.gradient(c0, c1, c2, dst0, done, dst1, done, dst2, done, n);
+            }
+        });
+    }
+
+    private static float[][] linearize(int[] src, int length, LabSeparation separation, Ranges ranges) {
+        float[][] linear = new float[3][length];
+        ranges.forEach(length, (from, to) -> separation.linearize(src, from, linear[0], linear[1], linear[2], from, to - from));
+        return linear;
+    }
+
+    private static float[][] xyz(float[][] linear, int length, LabSeparation separation, Ranges ranges) {
+        float[][] xyz = new float[3][length];
+        ranges.forEach(length, (from, to) -> separation.xyz(linear[0], linear[1], linear[2], xyz[0], xyz[1], xyz[2], from, to - from));
+        return xyz;
+    }
+
+    public void clear() {
+        planes.clear();
+    }
+
+    public void setBudget(long budget) {
+        planes.setBudget(budget);
+    }
+
+    public long getWeight() {
+        return planes.getWeight();
+    }
+
+    /**
+     * Splits [0, length) into ranges, processed in any order and on any threads, and returns once all are done.
+     */
+    @FunctionalInterface
+    public interface Ranges {
+        void forEach(int length, Range range);
+    }
+
+    @FunctionalInterface
+    public interface Range {
+        void process(int from, int to);
+    }
+
+    private static final class Key {
+        private final Object image;
+        private final float gamma;
+        // null for linear planes
+        private final float[] transform;
+
+        private Key(Object image, float gamma, float[] transform) {
+            this.image = image;
+            this.gamma = gamma;
+            this.transform = transform;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return Float.compare(gamma, key.gamma) == 0 && Arrays.equals(transform, key.transform) && image.equals(key.image);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Objects.hash(image, gamma) + Arrays.hashCode(transform);
+        }
+    }
+}
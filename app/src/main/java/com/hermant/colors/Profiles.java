@@ -0,0 +1,65 @@
+package com.hermant.colors;
+
+import java.util.Map;
+
+/**
+ * Predefined separations, color profiles and illuminants shared by the user interface and the command line.
+ */
+public final class Profiles {
+
+    public static final Map<String, String[]> CHANNELS = Map.of(
+            "YCbCr", new String[]{"Y", "Cb", "Cr"},
+            "HSV", new String[]{"H", "S", "V"},
+            "RGB", new String[]{"R", "G", "B"},
+            "Lab", new String[]{"L", "a", "b"}
+    );
+
+    public static final Map<String, double[]> ILLUMINANTS = Map.ofEntries(Map.entry("A", new double[]{0.44757f, 0.40744f}), Map.entry("B", new double[]{0.34840f, 0.3516f}), Map.entry("C", new double[]{0.31006f, 0.31615f}), Map.entry("D50", new double[]{0.34567f, 0.3585f}), Map.entry("D55", new double[]{0.33242f, 0.34743f}), Map.entry("D65", new double[]{0.31273f, 0.32902f}), Map.entry("D75", new double[]{0.29902f, 0.31485f}), Map.entry("9300K", new double[]{0.2848f, 0.2932f}), Map.entry("E", new double[]{0.33333f, 0.33333f}), Map.entry("F2", new double[]{0.37207f, 0.37512f}), Map.entry("F7", new double[]{0.31285f, 0.32918f}), Map.entry("F11", new double[]{0.38054f, 0.37692f}));
+
+    public static final Map<String, double[]> COLOR_SPACES = Map.of(
+            "sRGB", new double[]{0.64, 0.33, 0.3, 0.6, 0.15, 0.06, 0.3127, 0.3290, 2.2},
+            "Adobe RGB", new double[]{0.64, 0.33, 0.21, 0.71, 0.15, 0.06, 0.3127, 0.329, 2.2},
+            "Apple RGB", new double[]{0.625, 0.340, 0.28, 0.595, 0.155, 0.07, 0.3127, 0.329, 1.8},
+            "CIE RGB", new double[]{0.735, 0.265, 0.274, 0.717, 0.167, 0.009, 0.3333, 0.3333, 2.2},
+            "Wide Gamut", new double[]{0.7347, 0.2653, 0.1152, 0.8264, 0.1566, 0.0177, 0.3457, 0.3585, 1.2},
+            "PAL/SECAM", new double[]{0.64, 0.33, 0.29, 0.6, 0.15, 0.06, 0.3127, 0.329, 1.95}
+    );
+
+    private Profiles() {
+    }
+
+    /**
+     * Creates the RGB, YCbCr or HSV separation, or a Lab separation using the sRGB profile.
+     */
+    public static Separation getSeparation(String name) {
+        return getSeparation(name, "sRGB", null, true);
+    }
+
+    /**
+     * Creates a separation by its name, Lab separations use the given color profile
+     * with white point optionally replaced by an illuminant.
+     *
+     * @throws IllegalArgumentException if any of the names is unknown
+     */
+    public static Separation getSeparation(String name, String colorSpace, String illuminant, boolean lut) {
+        switch (name) {
+            case "RGB": return Separation.getRGBtoRGBSeparation();
+            case "YCbCr": return Separation.getRGBtoYCbCrSeparation();
+            case "HSV": return Separation.getRGBtoHSVSeparation();
+            case "Lab": {
+                double[] profile = COLOR_SPACES.get(colorSpace);
+                if (profile == null) throw new IllegalArgumentException("Unknown color profile " + colorSpace + ", expected one of " + COLOR_SPACES.keySet());
+                double x_w = profile[6], y_w = profile[7];
+                if (illuminant != null) {
+                    double[] white = ILLUMINANTS.get(illuminant);
+                    if (white == null) throw new IllegalArgumentException("Unknown illuminant " + illuminant + ", expected one of " + ILLUMINANTS.keySet());
+                    x_w = white[0];
+                    y_w = white[1];
+                }
+                return Separation.getRGBtoLabSeparation((float) profile[0], (float) profile[1], (float) profile[2], (float) profile[3],
+                        (float) profile[4], (float) profile[5], (float) x_w, (float) y_w, (float) profile[8], lut);
+            }
+            default: throw new IllegalArgumentException("Unknown separation " + name + ", expected one of " + CHANNELS.keySet());
+        }
+    }
+}
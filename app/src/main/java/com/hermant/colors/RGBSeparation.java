@@ -0,0 +1,30 @@
+package com.hermant.colors;
+
+public class RGBSeparation extends ChannelSeparation {
+
+    private final Kernels.Packed vector = Kernels.rgb();
+
+    public RGBSeparation() {
+        super(new Color3f(0, 0, 0), new Color3f(255, 0, 0),
+                new Color3f(0, 0, 0), new Color3f(0, 255, 0),
+                new Color3f(0, 0, 0), new Color3f(0, 0, 255));
+    }
+
+    @Override
+    public void separate(float[] r, float[] g, float[] b, float[] c0, float[] c1, float[] c2, int offset, int length) {
+        System.arraycopy(r, offset, c0, offset, length);
+        System.arraycopy(g, offset, c1, offset, length);
+        System.arraycopy(b, offset, c2, offset, length);
+    }
+
+    @Override
+    protected boolean hasPackedKernel() {
+        return vector != null;
+    }
+
+    @Override
+    protected void separate(int[] src, int srcOffset, float[] c0, float[] c1, float[] c2, int length) {
+        if (vector != null) vector.separate(src, srcOffset, c0, c1, c2, 0, length);
+        else super.separate(src, srcOffset, c0, c1, c2, length);
+    }
+}
@@ -0,0 +1,67 @@
+package com.hermant.colors;
+
+import java.nio.IntBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Separation reading results of another separation from a table holding three packed rgb values
+ * for each of the 2^24 possible inputs.
+ */
+public class SeparationTable implements Separation {
+
+    public static final int ENTRIES = 1 << 24;
+    public static final long BYTES = 3L * ENTRIES * Integer.BYTES;
+
+    private final String key;
+    private final IntBuffer table;
+
+    SeparationTable(String key, IntBuffer table) {
+        if (table.capacity() != 3 * ENTRIES) throw new IllegalArgumentException("Table must hold " + 3 * ENTRIES + " values");
+        this.key = key;
+        this.table = table;
+    }
+
+    /**
+     * Builds a table of separation in parallel, one red channel value per task.
+     */
+    public static SeparationTable build(ChannelSeparation separation) {
+        IntBuffer table = IntBuffer.allocate(3 * ENTRIES);
+        fill(separation, table);
+        return new SeparationTable(separation.getKey(), table);
+    }
+
+    static void fill(ChannelSeparation separation, IntBuffer table) {
+        IntStream.range(0, 256).parallel().forEach(red -> {
+            int[] src = new int[1 << 16], dst = new int[3 << 16];
+            for (int i = 0; i < src.length; i++) src[i] = red << 16 | i;
+            separation.separate(src, 0, dst, 0, dst, 1 << 16, dst, 2 << 16, src.length);
+            int offset = 3 * (red << 16);
+            for (int i = 0; i < src.length; i++) {
+                table.put(offset + 3 * i, dst[i]);
+                table.put(offset + 3 * i + 1, dst[(1 << 16) + i]);
+                table.put(offset + 3 * i + 2, dst[(2 << 16) + i]);
+            }
+        });
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public Color3f[] separate(Color3f input) {
+        int index = 3 * input.getRGB();
+        return new Color3f[]{new Color3f(table.get(index)), new Color3f(table.get(index + 1)), new Color3f(table.get(index + 2))};
+    }
+
+    @Override
+    public void separate(int[] src, int srcOffset, int[] dst0, int offset0, int[] dst1, int offset1, int[] dst2, int offset2, int length) {
+        IntBuffer table = this.table;
+        for (int i = 0; i < length; i++) {
+            int index = 3 * (src[srcOffset + i] & 0xffffff);
+            dst0[offset0 + i] = table.get(index);
+            dst1[offset1 + i] = table.get(index + 1);
+            dst2[offset2 + i] = table.get(index + 2);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package com.hermant.colors;
+
+import com.hermant.util.LruCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps separation tables in memory under a byte budget and persists them to memory mapped files
+ * named after a hash of the separation key, so that later runs page them in lazily instead of rebuilding.
+ * <p>
+ * The default cache is enabled with the colors.table system property, its directory and budget
+ * can be set with colors.table.dir and colors.table.budget.
+ */
+public class SeparationTableCache {
+
+    public static final boolean ENABLED = Boolean.getBoolean("colors.table");
+
+    private static final int MAGIC = 0x434c5554;
+    private static final int VERSION = 1;
+    private static final int HEADER = 4 * Integer.BYTES;
+
+    private static SeparationTableCache instance;
+
+    private final Path directory;
+    private final LruCache<String, SeparationTable> tables;
+    private final Map<String, CompletableFuture<SeparationTable>> builds = new ConcurrentHashMap<>();
+
+    /**
+     * @param directory directory of the table files or null to keep tables in memory only
+     * @param budget    bytes of tables kept in memory
+     */
+    public SeparationTableCache(Path directory, long budget) {
+        this.directory = directory;
+        this.tables = new LruCache<>(budget, table -> SeparationTable.BYTES);
+    }
+
+    public static synchronized SeparationTableCache getDefault() {
+        if (instance == null) {
+            String directory = System.getProperty("colors.table.dir", System.getProperty("user.home") + File.separator + ".cache" + File.separator + "colors");
+            long budget = Long.getLong("colors.table.budget", 2 * SeparationTable.BYTES);
+            instance = new SeparationTableCache(Path.of(directory), budget);
+        }
+        return instance;
+    }
+
+    /**
+     * Table of separation, built, or mapped from its file, on the first call for its key.
+     * Only callers of the same key wait for the build, others are served meanwhile.
+     */
+    public SeparationTable get(ChannelSeparation separation) {
+        String key = separation.getKey();
+        SeparationTable table = tables.get(key);
+        if (table != null) return table;
+        CompletableFuture<SeparationTable> future = new CompletableFuture<>();
+        CompletableFuture<SeparationTable> building = builds.putIfAbsent(key, future);
+        if (building != null) {
+            try {
+                return building.join();
+            } catch (CompletionException e) {
+                // the failure of the call that built it
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw (RuntimeException) e.getCause();
+            }
+        }
+        try {
+            // built by a call that finished since the lookup above
+            table = tables.get(key);
+            if (table == null) {
+                table = directory == null ? SeparationTable.build(separation) : load(separation);
+                tables.put(key, table);
+            }
+            future.complete(table);
+            return table;
+        } catch (IOException e) {
+            UncheckedIOException failure = new UncheckedIOException(e);
+            future.completeExceptionally(failure);
+            throw failure;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            builds.remove(key);
+        }
+    }
+
+    private SeparationTable load(ChannelSeparation separation) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(hash(separation.getKey()) + ".lut");
+        if (Files.exists(file)) {
+            SeparationTable table = map(file, separation.getKey());
+            if (table != null) return table;
+            // written by another version or damaged, rebuilt rather than failing every time
+            Files.deleteIfExists(file);
+        }
+        Path temporary = Files.createTempFile(directory, "table", ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + SeparationTable.BYTES);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(SeparationTable.ENTRIES).putInt(3);
+            SeparationTable.fill(separation, buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer());
+            buffer.force();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        SeparationTable table = map(file, separation.getKey());
+        if (table == null) throw new IOException("Corrupted table " + file);
+        return table;
+    }
+
+    /**
+     * Maps the table of file read only, null if its size or header do not match this version.
+     */
+    private static SeparationTable map(Path file, String key) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() != HEADER + SeparationTable.BYTES) return null;
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) if (channel.read(header) < 0) return null;
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getInt() != SeparationTable.ENTRIES || header.getInt() != 3)
+                return null;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER, SeparationTable.BYTES);
+            IntBuffer table = buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            return new SeparationTable(key, table);
+        }
+    }
+
+    private static String hash(String key) {
+        try {
+            StringBuilder builder = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)))
+                builder.append(String.format("%02x", b));
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
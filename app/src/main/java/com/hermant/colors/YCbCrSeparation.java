@@ -0,0 +1,33 @@
+package com.hermant.colors;
+
+public class YCbCrSeparation extends ChannelSeparation {
+
+    private final Kernels.Packed vector = Kernels.ycbcr();
+
+    public YCbCrSeparation() {
+        super(new Color3f(0, 0, 0), new Color3f(255, 255, 255),
+                new Color3f(127, 255, 0), new Color3f(127, 0, 255),
+                new Color3f(0, 255, 127), new Color3f(255, 0, 127));
+    }
+
+    @Override
+    public void separate(float[] r, float[] g, float[] b, float[] c0, float[] c1, float[] c2, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            float red = r[i], green = g[i], blue = b[i];
+            c0[i] = 0.0625f + 0.25678906f * red + 0.50412893f * green + 0.09790625f * blue;
+            c1[i] = 0.5f - 0.14822266f * red - 0.2909922f * green + 0.43921486f * blue;
+            c2[i] = 0.5f + 0.43921486f * red - 0.36778906f * green - 0.07142578f * blue;
+        }
+    }
+
+    @Override
+    protected boolean hasPackedKernel() {
+        return vector != null;
+    }
+
+    @Override
+    protected void separate(int[] src, int srcOffset, float[] c0, float[] c1, float[] c2, int length) {
+        if (vector != null) vector.separate(src, srcOffset, c0, c1, c2, 0, length);
+        else super.separate(src, srcOffset, c0, c1, c2, length);
+    }
+}
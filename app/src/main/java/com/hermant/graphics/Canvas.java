@@ -4,16 +4,27 @@ import com.hermant.colors.Color3f;
 
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class Canvas extends JComponent {
+    private static final double ZOOM_STEP = Math.sqrt(2.0);
+
     private final int width;
     private final int height;
     private final BufferedImage image;
     private final int[] pixels;
     private final int[] clear;
+    private final List<Consumer<Viewport>> viewportListeners = new ArrayList<>();
+    private Viewport viewport;
+    private Point drag;
 
     public Canvas(int width, int height) {
         this.width = width;
@@ -24,6 +35,39 @@ public class Canvas extends JComponent {
         pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
         clear = new int[pixels.length];
         Arrays.fill(clear, 0);
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                drag = e.getPoint();
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                drag = null;
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (viewport == null || drag == null) return;
+                Viewport panned = viewport.pan(e.getX() - drag.x, e.getY() - drag.y);
+                drag = e.getPoint();
+                change(panned);
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (viewport != null) change(viewport.zoom(Math.pow(ZOOM_STEP, -e.getPreciseWheelRotation()), e.getX(), e.getY()));
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (viewport != null && e.getClickCount() == 2)
+                    change(Viewport.fit(viewport.getImageWidth(), viewport.getImageHeight(), width, height));
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
     }
 
     @Override
@@ -42,6 +86,98 @@ public class Canvas extends JComponent {
         pixels[y * width + x] = color;
     }
 
+    /**
+     * Fills the canvas with a width x height image, scaled to the canvas size by pixel replication,
+     * and repaints the pixels that changed.
+     */
+    public void setPixels(int[] src, int width, int height) {
+        if (width == this.width && height == this.height) {
+            setRegion(0, 0, width, height, src, 0, width);
+            return;
+        }
+        int[] row = new int[this.width];
+        Rectangle dirty = new Rectangle();
+        for (int y = 0; y < this.height; y++) {
+            int offset = y * height / this.height * width;
+            for (int x = 0; x < this.width; x++) row[x] = src[offset + x * width / this.width];
+            copy(row, 0, 0, y, this.width, dirty);
+        }
+        if (!dirty.isEmpty()) repaint(dirty);
+    }
+
+    /**
+     * Copies row y of the canvas from src starting at offset and repaints the pixels that changed.
+     */
+    public void setRow(int y, int[] src, int offset) {
+        setRegion(0, y, width, 1, src, offset, width);
+    }
+
+    /**
+     * Copies a width x height region of src, whose rows start stride pixels apart from offset on, to the canvas
+     * at x, y, clipped to its bounds, and repaints only the rectangle of pixels that changed.
+     */
+    public void setRegion(int x, int y, int width, int height, int[] src, int offset, int stride) {
+        int x0 = Math.max(0, x), y0 = Math.max(0, y);
+        int x1 = Math.min(this.width, x + width), y1 = Math.min(this.height, y + height);
+        if (x0 >= x1 || y0 >= y1) return;
+        Rectangle dirty = new Rectangle();
+        for (int j = y0; j < y1; j++) copy(src, offset + (j - y) * stride + (x0 - x), x0, j, x1 - x0, dirty);
+        if (!dirty.isEmpty()) repaint(dirty);
+    }
+
+    /**
+     * Copies length pixels to row y from x on, adding the span of those that changed to dirty.
+     */
+    private void copy(int[] src, int srcOffset, int x, int y, int length, Rectangle dirty) {
+        int row = y * width + x, first = 0, last = length - 1;
+        while (first < length && pixels[row + first] == src[srcOffset + first]) first++;
+        if (first == length) return;
+        while (pixels[row + last] == src[srcOffset + last]) last--;
+        System.arraycopy(src, srcOffset + first, pixels, row + first, last - first + 1);
+        if (dirty.isEmpty()) {
+            dirty.setBounds(x + first, y, last - first + 1, 1);
+        } else {
+            dirty.add(x + first, y);
+            dirty.add(x + last + 1, y + 1);
+        }
+    }
+
+    int[] getPixels() {
+        return pixels;
+    }
+
+    public int getImageWidth() {
+        return width;
+    }
+
+    public int getImageHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the part of the image shown, null if the canvas cannot be zoomed.
+     */
+    public Viewport getViewport() {
+        return viewport;
+    }
+
+    /**
+     * Sets the part of the image shown, which the mouse wheel zooms, dragging pans and double clicking resets.
+     * Listeners are notified only of changes made with the mouse.
+     */
+    public void setViewport(Viewport viewport) {
+        this.viewport = viewport;
+    }
+
+    public void addViewportListener(Consumer<Viewport> listener) {
+        viewportListeners.add(listener);
+    }
+
+    private void change(Viewport viewport) {
+        this.viewport = viewport;
+        for (Consumer<Viewport> listener : viewportListeners) listener.accept(viewport);
+    }
+
     public void clear(){
         System.arraycopy(clear, 0, pixels, 0, pixels.length);
     }
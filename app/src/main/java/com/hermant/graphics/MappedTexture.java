@@ -0,0 +1,163 @@
+package com.hermant.graphics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Image kept outside the heap as interleaved 8 bit rgb, three bytes per pixel, row after row with no header:
+ * either a raw pixel file mapped straight from disk or direct memory. As a single buffer cannot exceed 2 GB,
+ * the pixels are spread over buffers of whole rows and addressed with long offsets, so the image may have
+ * more than 2^31 pixels. Rows are copied to and from int arrays the size of a row only.
+ */
+public class MappedTexture implements PixelSource, AutoCloseable {
+
+    public static final int BYTES_PER_PIXEL = 3;
+
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[0]);
+
+    private final int width, height, rowsPerChunk;
+    private final ByteBuffer[] chunks;
+    private final FileChannel channel;
+    private final boolean writable;
+
+    /**
+     * @param chunkBytes largest buffer, {@link Integer#MAX_VALUE} but for tests
+     */
+    MappedTexture(int width, int height, FileChannel channel, FileChannel.MapMode mode, int chunkBytes) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        long rowBytes = (long) BYTES_PER_PIXEL * width;
+        if (rowBytes > chunkBytes) throw new IllegalArgumentException("Rows of " + width + " pixels do not fit a buffer");
+        this.width = width;
+        this.height = height;
+        this.rowsPerChunk = (int) Math.min(height, chunkBytes / rowBytes);
+        this.chunks = new ByteBuffer[(height + rowsPerChunk - 1) / rowsPerChunk];
+        this.channel = channel;
+        this.writable = mode != FileChannel.MapMode.READ_ONLY;
+        for (int c = 0; c < chunks.length; c++) {
+            int rows = Math.min(rowsPerChunk, height - c * rowsPerChunk);
+            if (channel == null) chunks[c] = ByteBuffer.allocateDirect((int) (rows * rowBytes));
+            else chunks[c] = channel.map(mode, c * rowsPerChunk * rowBytes, rows * rowBytes);
+        }
+    }
+
+    /**
+     * Maps a raw rgb file of width x height pixels for reading.
+     */
+    public static MappedTexture map(Path path, int width, int height) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long bytes = (long) BYTES_PER_PIXEL * width * height;
+            if (channel.size() < bytes)
+                throw new IOException(path + " holds " + channel.size() + " bytes, a " + width + "x" + height + " rgb image needs " + bytes);
+            return new MappedTexture(width, height, channel, FileChannel.MapMode.READ_ONLY, Integer.MAX_VALUE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates or truncates a raw rgb file of width x height pixels and maps it for writing.
+     */
+    public static MappedTexture create(Path path, int width, int height) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new MappedTexture(width, height, channel, FileChannel.MapMode.READ_WRITE, Integer.MAX_VALUE);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Allocates a black width x height image in direct memory.
+     */
+    public static MappedTexture allocate(int width, int height) {
+        try {
+            return new MappedTexture(width, height, null, FileChannel.MapMode.READ_WRITE, Integer.MAX_VALUE);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public long getPixelCount() {
+        return (long) width * height;
+    }
+
+    public int get(int x, int y) {
+        ByteBuffer chunk = chunks[y / rowsPerChunk];
+        int index = (int) (((long) (y % rowsPerChunk) * width + x) * BYTES_PER_PIXEL);
+        return (chunk.get(index) & 0xff) << 16 | (chunk.get(index + 1) & 0xff) << 8 | (chunk.get(index + 2) & 0xff);
+    }
+
+    @Override
+    public void getRow(int y, int[] dst, int offset) {
+        byte[] row = scratch();
+        chunk(y).get(row, 0, BYTES_PER_PIXEL * width);
+        for (int i = 0, j = 0; i < width; i++, j += BYTES_PER_PIXEL)
+            dst[offset + i] = (row[j] & 0xff) << 16 | (row[j + 1] & 0xff) << 8 | (row[j + 2] & 0xff);
+    }
+
+    /**
+     * Writes row y from packed rgb pixels of src starting at offset.
+     */
+    public void setRow(int y, int[] src, int offset) {
+        if (!writable) throw new UnsupportedOperationException("Texture is mapped read only");
+        byte[] row = scratch();
+        for (int i = 0, j = 0; i < width; i++, j += BYTES_PER_PIXEL) {
+            int rgb = src[offset + i];
+            row[j] = (byte) (rgb >> 16);
+            row[j + 1] = (byte) (rgb >> 8);
+            row[j + 2] = (byte) rgb;
+        }
+        chunk(y).put(row, 0, BYTES_PER_PIXEL * width);
+    }
+
+    /**
+     * Writes changes of a file mapped for writing to disk.
+     */
+    public void force() {
+        if (channel == null || !writable) return;
+        for (ByteBuffer chunk : chunks) ((MappedByteBuffer) chunk).force();
+    }
+
+    /**
+     * Closes the file, its pixels stay mapped until the texture is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) return;
+        force();
+        channel.close();
+    }
+
+    /**
+     * A view of the chunk positioned at row y, independent of other threads.
+     */
+    private ByteBuffer chunk(int y) {
+        ByteBuffer chunk = chunks[y / rowsPerChunk].duplicate();
+        chunk.position((y % rowsPerChunk) * BYTES_PER_PIXEL * width);
+        return chunk;
+    }
+
+    private byte[] scratch() {
+        byte[] row = SCRATCH.get();
+        if (row.length < BYTES_PER_PIXEL * width) SCRATCH.set(row = new byte[BYTES_PER_PIXEL * width]);
+        return row;
+    }
+}
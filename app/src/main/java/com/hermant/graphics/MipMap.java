@@ -0,0 +1,77 @@
+package com.hermant.graphics;
+
+import com.hermant.metrics.Metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Pyramid of a texture halved in size level after level down to a single pixel, each level averaging
+ * 2x2 pixel areas of the previous one. Odd sized levels repeat their last row or column.
+ * Rows of every level are filtered in parallel.
+ */
+public class MipMap {
+
+    private final List<Texture> levels;
+
+    public MipMap(Texture texture) {
+        List<Texture> levels = new ArrayList<>();
+        levels.add(texture);
+        while (texture.getWidth() > 1 || texture.getHeight() > 1) {
+            texture = downsample(texture);
+            levels.add(texture);
+        }
+        this.levels = Collections.unmodifiableList(levels);
+    }
+
+    public int getLevels() {
+        return levels.size();
+    }
+
+    /**
+     * @return texture of the given level, level 0 being the original texture
+     */
+    public Texture getLevel(int level) {
+        return levels.get(level);
+    }
+
+    /**
+     * Returns the smallest level at least as large as width x height, sampling it at that size
+     * never skips source pixels, so it does not alias.
+     */
+    public Texture getLevel(int width, int height) {
+        int level = 0;
+        while (level + 1 < levels.size()) {
+            Texture next = levels.get(level + 1);
+            if (next.getWidth() < width || next.getHeight() < height) break;
+            level++;
+        }
+        return levels.get(level);
+    }
+
+    private static Texture downsample(Texture texture) {
+        int width = texture.getWidth(), height = texture.getHeight();
+        int w = (width + 1) / 2, h = (height + 1) / 2;
+        int[] pixels = new int[w * h];
+        Metrics.Sample sample = Metrics.current();
+        IntStream.range(0, h).parallel().forEach(y -> sample.run(() -> {
+            int[] top = new int[width], bottom = new int[width];
+            texture.getRow(2 * y, top, 0);
+            texture.getRow(Math.min(2 * y + 1, height - 1), bottom, 0);
+            for (int x = 0; x < w; x++) {
+                int left = 2 * x, right = Math.min(2 * x + 1, width - 1);
+                pixels[y * w + x] = average(top[left], top[right], bottom[left], bottom[right]);
+            }
+        }));
+        return new Texture(w, h, pixels);
+    }
+
+    private static int average(int c00, int c01, int c10, int c11) {
+        int red = ((c00 >> 16 & 0xff) + (c01 >> 16 & 0xff) + (c10 >> 16 & 0xff) + (c11 >> 16 & 0xff) + 2) >> 2;
+        int green = ((c00 >> 8 & 0xff) + (c01 >> 8 & 0xff) + (c10 >> 8 & 0xff) + (c11 >> 8 & 0xff) + 2) >> 2;
+        int blue = ((c00 & 0xff) + (c01 & 0xff) + (c10 & 0xff) + (c11 & 0xff) + 2) >> 2;
+        return red << 16 | green << 8 | blue;
+    }
+}
@@ -0,0 +1,16 @@
+package com.hermant.graphics;
+
+/**
+ * Image read a row of packed rgb pixels at a time, wherever its pixels are kept.
+ */
+public interface PixelSource {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Copies row y to dst starting at offset.
+     */
+    void getRow(int y, int[] dst, int offset);
+}
@@ -0,0 +1,186 @@
+package com.hermant.graphics;
+
+import com.hermant.metrics.Metrics;
+import com.hermant.metrics.Stage;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Resizes images in two separable passes, first along rows then along columns, with weights and source indices
+ * of every output row and column computed once up front. When shrinking, the filter is widened by the scale,
+ * so every source pixel contributes. Rows of both passes are processed in parallel.
+ */
+public class Resampler {
+
+    private static final int ROWS_PER_TASK = 16;
+
+    public enum Filter {
+        BOX(0.5) {
+            @Override
+            double weight(double x) {
+                return x > -0.5 && x <= 0.5 ? 1.0 : 0.0;
+            }
+        },
+        BILINEAR(1.0) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                return x < 1.0 ? 1.0 - x : 0.0;
+            }
+        },
+        LANCZOS3(3.0) {
+            @Override
+            double weight(double x) {
+                return Math.abs(x) < 3.0 ? sinc(x) * sinc(x / 3.0) : 0.0;
+            }
+        };
+
+        private final double support;
+
+        Filter(double support) {
+            this.support = support;
+        }
+
+        abstract double weight(double x);
+
+        private static double sinc(double x) {
+            if (x == 0.0) return 1.0;
+            x *= Math.PI;
+            return Math.sin(x) / x;
+        }
+    }
+
+    private final Filter filter;
+
+    public Resampler(Filter filter) {
+        this.filter = filter;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public Texture resample(Texture texture, int width, int height) {
+        int[] pixels = new int[width * height];
+        resample(texture.getPixels(), texture.getWidth(), texture.getHeight(), pixels, width, height);
+        return new Texture(width, height, pixels);
+    }
+
+    /**
+     * Resamples packed rgb pixels of a srcWidth x srcHeight image into a width x height image.
+     */
+    public void resample(int[] src, int srcWidth, int srcHeight, int[] dst, int width, int height) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        try (Metrics.Sample sample = Metrics.start(Stage.RESAMPLE)) {
+            Weights columns = new Weights(filter, srcWidth, width), rows = new Weights(filter, srcHeight, height);
+            int[] horizontal = new int[width * srcHeight];
+            forEachRows(srcHeight, (from, to) -> {
+                for (int y = from; y < to; y++) horizontal(src, y * srcWidth, horizontal, y * width, width, columns);
+            });
+            forEachRows(height, (from, to) -> {
+                float[] accumulator = new float[3 * width];
+                for (int y = from; y < to; y++) vertical(horizontal, dst, y, width, rows, accumulator);
+            });
+            sample.setPixels((long) width * height);
+        }
+    }
+
+    private static void horizontal(int[] src, int srcOffset, int[] dst, int dstOffset, int width, Weights columns) {
+        int taps = columns.taps;
+        float[] weights = columns.weights;
+        for (int x = 0; x < width; x++) {
+            float red = 0, green = 0, blue = 0;
+            int start = srcOffset + columns.start[x], count = columns.count[x];
+            for (int k = 0, w = x * taps; k < count; k++, w++) {
+                int rgb = src[start + k];
+                float weight = weights[w];
+                red += weight * (rgb >> 16 & 0xff);
+                green += weight * (rgb >> 8 & 0xff);
+                blue += weight * (rgb & 0xff);
+            }
+            dst[dstOffset + x] = pack(red, green, blue);
+        }
+    }
+
+    private static void vertical(int[] src, int[] dst, int y, int width, Weights rows, float[] accumulator) {
+        Arrays.fill(accumulator, 0.0f);
+        int start = rows.start[y], count = rows.count[y];
+        for (int k = 0, w = y * rows.taps; k < count; k++, w++) {
+            float weight = rows.weights[w];
+            for (int x = 0, i = (start + k) * width, a = 0; x < width; x++, i++, a += 3) {
+                int rgb = src[i];
+                accumulator[a] += weight * (rgb >> 16 & 0xff);
+                accumulator[a + 1] += weight * (rgb >> 8 & 0xff);
+                accumulator[a + 2] += weight * (rgb & 0xff);
+            }
+        }
+        for (int x = 0, a = 0, o = y * width; x < width; x++, a += 3, o++) {
+            dst[o] = pack(accumulator[a], accumulator[a + 1], accumulator[a + 2]);
+        }
+    }
+
+    private static int pack(float red, float green, float blue) {
+        return channel(red) << 16 | channel(green) << 8 | channel(blue);
+    }
+
+    private static int channel(float value) {
+        return Math.max(0, Math.min(255, (int) (value + 0.5f)));
+    }
+
+    private static void forEachRows(int height, Rows rows) {
+        Metrics.Sample sample = Metrics.current();
+        IntStream.range(0, (height + ROWS_PER_TASK - 1) / ROWS_PER_TASK).parallel()
+                .forEach(task -> sample.run(() -> rows.process(task * ROWS_PER_TASK, Math.min(height, (task + 1) * ROWS_PER_TASK))));
+    }
+
+    @FunctionalInterface
+    private interface Rows {
+        void process(int from, int to);
+    }
+
+    /**
+     * First source index, number of taps and normalized weights of every output index, taps weights per index.
+     */
+    static final class Weights {
+        final int[] start, count;
+        final int taps;
+        final float[] weights;
+
+        Weights(Filter filter, int in, int out) {
+            this(filter::weight, filter.support, in, out);
+        }
+
+        /**
+         * @param weight        filter weight at a distance, zero beyond filterSupport
+         * @param filterSupport half width of the filter, in source pixels when not shrinking
+         */
+        Weights(DoubleUnaryOperator weight, double filterSupport, int in, int out) {
+            double scale = (double) in / out, filterScale = Math.max(scale, 1.0);
+            double support = filterSupport * filterScale;
+            taps = (int) Math.ceil(support) * 2 + 1;
+            start = new int[out];
+            count = new int[out];
+            weights = new float[out * taps];
+            double[] row = new double[taps];
+            for (int i = 0; i < out; i++) {
+                double center = (i + 0.5) * scale;
+                int min = Math.max((int) (center - support + 0.5), 0);
+                int max = Math.min((int) (center + support + 0.5), in);
+                int n = Math.min(max - min, taps);
+                double sum = 0.0;
+                for (int k = 0; k < n; k++) sum += row[k] = weight.applyAsDouble((min + k - center + 0.5) / filterScale);
+                if (sum == 0.0) {
+                    // nothing under the filter, fall back to the nearest pixel
+                    min = Math.min((int) center, in - 1);
+                    n = 1;
+                    row[0] = sum = 1.0;
+                }
+                start[i] = min;
+                count[i] = n;
+                for (int k = 0; k < n; k++) weights[i * taps + k] = (float) (row[k] / sum);
+            }
+        }
+    }
+}
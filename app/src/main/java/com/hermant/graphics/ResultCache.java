@@ -0,0 +1,128 @@
+package com.hermant.graphics;
+
+import com.hermant.colors.ChannelSeparation;
+import com.hermant.colors.Separation;
+import com.hermant.colors.SeparationTable;
+import com.hermant.util.LruCache;
+
+import java.lang.ref.SoftReference;
+import java.util.Objects;
+
+/**
+ * Remembers the three planes separated from a texture at a given resolution, so returning to a separation
+ * and parameters seen before is a copy instead of a recomputation. Entries are evicted least recently used
+ * once their pixels exceed the byte budget, and with soft references the collector may drop them earlier.
+ * <p>
+ * The default cache is configured with the colors.results.budget and colors.results.soft system properties.
+ */
+public class ResultCache {
+
+    public static final long DEFAULT_BUDGET = 64L << 20;
+
+    private static ResultCache instance;
+
+    private final LruCache<Key, Entry> entries;
+    private final boolean soft;
+
+    /**
+     * @param budget bytes of planes kept
+     * @param soft   whether planes are only softly reachable from the cache
+     */
+    public ResultCache(long budget, boolean soft) {
+        this.entries = new LruCache<>(budget, entry -> entry.bytes);
+        this.soft = soft;
+    }
+
+    public static synchronized ResultCache getDefault() {
+        if (instance == null)
+            instance = new ResultCache(Long.getLong("colors.results.budget", DEFAULT_BUDGET), Boolean.getBoolean("colors.results.soft"));
+        return instance;
+    }
+
+    /**
+     * @return string identifying separation with all of its parameters, or null if its results cannot be cached
+     */
+    public static String key(Separation separation) {
+        if (separation instanceof ChannelSeparation) return ((ChannelSeparation) separation).getKey();
+        if (separation instanceof SeparationTable) return ((SeparationTable) separation).getKey();
+        return null;
+    }
+
+    /**
+     * @return planes of texture separated by the separation of key at width x height, or null if not cached
+     */
+    public int[][] get(Texture texture, String key, int width, int height) {
+        Key k = new Key(texture.getId(), key, width, height);
+        Entry entry = entries.get(k);
+        if (entry == null) return null;
+        int[][] planes = entry.get();
+        if (planes == null) entries.remove(k);
+        return planes;
+    }
+
+    /**
+     * Caches planes, which must not be modified afterwards.
+     */
+    public void put(Texture texture, String key, int width, int height, int[] plane0, int[] plane1, int[] plane2) {
+        int[][] planes = {plane0, plane1, plane2};
+        long bytes = 3L * Integer.BYTES * width * height;
+        entries.put(new Key(texture.getId(), key, width, height), soft ? new Entry(new SoftReference<>(planes), bytes) : new Entry(planes, bytes));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public void setBudget(long budget) {
+        entries.setBudget(budget);
+    }
+
+    public long getWeight() {
+        return entries.getWeight();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final Object planes;
+        private final long bytes;
+
+        private Entry(Object planes, long bytes) {
+            this.planes = planes;
+            this.bytes = bytes;
+        }
+
+        @SuppressWarnings("unchecked")
+        private int[][] get() {
+            return planes instanceof SoftReference ? ((SoftReference<int[][]>) planes).get() : (int[][]) planes;
+        }
+    }
+
+    private static final class Key {
+        private final long texture;
+        private final String separation;
+        private final int width, height;
+
+        private Key(long texture, String separation, int width, int height) {
+            this.texture = texture;
+            this.separation = separation;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return texture == key.texture && width == key.width && height == key.height && separation.equals(key.separation);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(texture, separation, width, height);
+        }
+    }
+}
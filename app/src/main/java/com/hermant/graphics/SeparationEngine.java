@@ -0,0 +1,438 @@
+package com.hermant.graphics;
+
+import com.hermant.colors.ChannelSeparation;
+import com.hermant.colors.FusedSeparation;
+import com.hermant.colors.LabSeparation;
+import com.hermant.colors.LabStageCache;
+import com.hermant.colors.Separation;
+import com.hermant.metrics.Metrics;
+import com.hermant.metrics.Stage;
+import com.hermant.util.IntIntHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs separations over whole images, split into tiles of consecutive rows processed on a fork join pool.
+ * <p>
+ * Images of few distinct colors, such as charts and synthetic renders, are separated once per color and
+ * the results looked up for every pixel. The most colors worth it default to the colors.unique system property,
+ * 0 separates every pixel.
+ * <p>
+ * Closing an engine shuts down the pool it created, pools passed in are left to their owners.
+ */
+public class SeparationEngine implements AutoCloseable {
+
+    public static final int DEFAULT_TILE_PIXELS = 1 << 16;
+    public static final int DEFAULT_UNIQUE_COLORS = 1 << 16;
+
+    /**
+     * Fewest pixels of every distinct color for the lookups to beat separating each pixel,
+     * checked once the first {@value #SAMPLE_PIXELS} pixels of a tile were seen.
+     */
+    private static final int PIXELS_PER_COLOR = 64;
+    private static final int SAMPLE_PIXELS = 1 << 16;
+
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final int tilePixels;
+    // engines are shared between threads, a change applies to the separations started after it
+    private volatile int uniqueColors = Integer.getInteger("colors.unique", DEFAULT_UNIQUE_COLORS);
+
+    public SeparationEngine() {
+        this(ForkJoinPool.commonPool(), DEFAULT_TILE_PIXELS);
+    }
+
+    /**
+     * Runs on a pool of its own of parallelism threads, shut down when the engine is closed.
+     */
+    public SeparationEngine(int parallelism) {
+        this(parallelism, DEFAULT_TILE_PIXELS);
+    }
+
+    /**
+     * Same as {@link #SeparationEngine(int)} with tiles of about tilePixels pixels.
+     */
+    public SeparationEngine(int parallelism, int tilePixels) {
+        this(new ForkJoinPool(parallelism), tilePixels, true);
+    }
+
+    public SeparationEngine(ForkJoinPool pool, int tilePixels) {
+        this(pool, tilePixels, false);
+    }
+
+    private SeparationEngine(ForkJoinPool pool, int tilePixels, boolean ownsPool) {
+        if (tilePixels <= 0) {
+            if (ownsPool) pool.shutdown();
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.tilePixels = tilePixels;
+    }
+
+    /**
+     * Shuts down the pool if the engine created it, separations in progress still finish.
+     */
+    @Override
+    public void close() {
+        if (ownsPool) pool.shutdown();
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getUniqueColors() {
+        return uniqueColors;
+    }
+
+    /**
+     * @param uniqueColors most distinct colors of an image separated once per color, 0 to separate every pixel
+     */
+    public void setUniqueColors(int uniqueColors) {
+        if (uniqueColors < 0) throw new IllegalArgumentException("Negative color count " + uniqueColors);
+        this.uniqueColors = uniqueColors;
+    }
+
+    /**
+     * Separates texture into three planes of texture's size.
+     */
+    public void separate(PixelSource texture, Separation separation, int[] dst0, int[] dst1, int[] dst2) {
+        int width = texture.getWidth();
+        try (Metrics.Sample sample = Metrics.start(Stage.SEPARATE)) {
+            Palette palette = palette(texture);
+            if (palette != null) palette.separate(separation);
+            forEachTile(width, texture.getHeight(), (from, to) -> {
+                int[] row = new int[width];
+                for (int j = from; j < to; j++) {
+                    texture.getRow(j, row, 0);
+                    if (palette != null) palette.remap(row, 0, dst0, j * width, dst1, j * width, dst2, j * width, width);
+                    else separation.separate(row, 0, dst0, j * width, dst1, j * width, dst2, j * width, width);
+                }
+            });
+            sample.setPixels((long) width * texture.getHeight());
+        }
+    }
+
+    /**
+     * Separates texture into three textures of its size a tile at a time, so neither of them is ever copied to the heap
+     * as a whole, for images too large for int arrays.
+     */
+    public void separate(PixelSource texture, Separation separation, MappedTexture dst0, MappedTexture dst1, MappedTexture dst2) {
+        int width = texture.getWidth(), height = texture.getHeight();
+        try (Metrics.Sample sample = Metrics.start(Stage.SEPARATE)) {
+            forEachTile(width, height, (from, to) -> {
+                int[] row = new int[width], row0 = new int[width], row1 = new int[width], row2 = new int[width];
+                for (int j = from; j < to; j++) {
+                    texture.getRow(j, row, 0);
+                    separation.separate(row, 0, row0, 0, row1, 0, row2, 0, width);
+                    dst0.setRow(j, row0, 0);
+                    dst1.setRow(j, row1, 0);
+                    dst2.setRow(j, row2, 0);
+                }
+            });
+            sample.setPixels((long) width * height);
+        }
+    }
+
+    /**
+     * Fills dst with a composite twice the size of texture: the texture in the top left corner
+     * followed by the separated channels in the top right, bottom left and bottom right corners.
+     */
+    public void composite(PixelSource texture, Separation separation, int[] dst) {
+        int width = texture.getWidth(), height = texture.getHeight(), stride = 2 * width;
+        try (Metrics.Sample sample = Metrics.start(Stage.SEPARATE)) {
+            Palette palette = palette(texture);
+            if (palette != null) palette.separate(separation);
+            forEachTile(width, height, (from, to) -> {
+                for (int j = from; j < to; j++) {
+                    int top = j * stride, bottom = (j + height) * stride;
+                    texture.getRow(j, dst, top);
+                    if (palette != null) palette.remap(dst, top, dst, top + width, dst, bottom, dst, bottom + width, width);
+                    else separation.separate(dst, top, dst, top + width, dst, bottom, dst, bottom + width, width);
+                }
+            });
+            sample.setPixels((long) width * height);
+        }
+    }
+
+    /**
+     * Computes the coefficients of separation for every pixel of texture into three planes of texture's size,
+     * the numbers its channels are drawn from rather than their colors.
+     */
+    public void coefficients(PixelSource texture, ChannelSeparation separation, float[] c0, float[] c1, float[] c2) {
+        int width = texture.getWidth();
+        try (Metrics.Sample sample = Metrics.start(Stage.SEPARATE)) {
+            forEachTile(width, texture.getHeight(), (from, to) -> {
+                int[] row = new int[width];
+                for (int j = from; j < to; j++) {
+                    texture.getRow(j, row, 0);
+                    separation.coefficients(row, 0, c0, c1, c2, j * width, width);
+                }
+            });
+            sample.setPixels((long) width * texture.getHeight());
+        }
+    }
+
+    /**
+     * Separates texture with every separation of fused in a single pass,
+     * channel c of separation k goes to planes[3 * k + c] of texture's size.
+     */
+    public void separate(PixelSource texture, FusedSeparation fused, int[][] planes) {
+        int width = texture.getWidth();
+        try (Metrics.Sample sample = Metrics.start(Stage.SEPARATE)) {
+            Palette palette = palette(texture);
+            if (palette != null) palette.separate(fused);
+            forEachTile(width, texture.getHeight(), (from, to) -> {
+                int[] row = new int[width], offsets = new int[planes.length];
+                for (int j = from; j < to; j++) {
+                    texture.getRow(j, row, 0);
+                    Arrays.fill(offsets, j * width);
+                    if (palette != null) palette.remap(row, 0, planes, offsets, width);
+                    else fused.separate(row, 0, planes, offsets, width);
+                }
+            });
+            sample.setPixels((long) width * texture.getHeight());
+        }
+    }
+
+    /**
+     * Fills dst with the composites of every separation of fused, see {@link #composite(PixelSource, Separation, int[])},
+     * stacked top to bottom in a single pass. The image is twice as wide as texture and twice as high per separation.
+     */
+    public void composite(PixelSource texture, FusedSeparation fused, int[] dst) {
+        int width = texture.getWidth(), height = texture.getHeight(), stride = 2 * width, count = fused.size();
+        int[][] planes = new int[3 * count][];
+        Arrays.fill(planes, dst);
+        try (Metrics.Sample sample = Metrics.start(Stage.SEPARATE)) {
+            Palette palette = palette(texture);
+            if (palette != null) palette.separate(fused);
+            forEachTile(width, height, (from, to) -> {
+                int[] offsets = new int[planes.length];
+                for (int j = from; j < to; j++) {
+                    int top = j * stride;
+                    texture.getRow(j, dst, top);
+                    for (int k = 0; k < count; k++) {
+                        int panel = 2 * k * height * stride, bottom = panel + (j + height) * stride;
+                        if (k > 0) System.arraycopy(dst, top, dst, panel + top, width);
+                        offsets[3 * k] = panel + top + width;
+                        offsets[3 * k + 1] = bottom;
+                        offsets[3 * k + 2] = bottom + width;
+                    }
+                    if (palette != null) palette.remap(dst, top, planes, offsets, width);
+                    else fused.separate(dst, top, planes, offsets, width);
+                }
+            });
+            sample.setPixels((long) width * height);
+        }
+    }
+
+    /**
+     * Separates texture sampled bilinearly at width x height from the nearest level of its mip pyramid.
+     * The samples are kept with the texture, so that every separation of it reuses them.
+     * Lab separations go through the default {@link LabStageCache}, so that tuning their parameters
+     * recomputes only the stages that depend on the changed ones.
+     */
+    public void preview(Texture texture, Separation separation, int width, int height, int[] dst0, int[] dst1, int[] dst2) {
+        try (Metrics.Sample sample = Metrics.start(Stage.PREVIEW)) {
+            LabStageCache stages = LabStageCache.getDefault();
+            if (separation instanceof LabSeparation && stages.isEnabled()) {
+                stages.separate(List.of(texture.getId(), width, height), width * height, () -> samples(texture, width, height),
+                        (LabSeparation) separation, dst0, dst1, dst2,
+                        (length, range) -> forEachTile(width, height, (from, to) -> range.process(from * width, to * width)));
+            } else {
+                int[] samples = samples(texture, width, height);
+                forEachTile(width, height, (from, to) -> separation.separate(samples, from * width,
+                        dst0, from * width, dst1, from * width, dst2, from * width, (to - from) * width));
+            }
+            sample.setPixels((long) width * height);
+        }
+    }
+
+    /**
+     * Samples texture bilinearly at width x height from the nearest level of its mip pyramid.
+     */
+    public void preview(Texture texture, int width, int height, int[] dst) {
+        try (Metrics.Sample sample = Metrics.start(Stage.PREVIEW)) {
+            System.arraycopy(samples(texture, width, height), 0, dst, 0, width * height);
+            sample.setPixels((long) width * height);
+        }
+    }
+
+    /**
+     * Texture sampled bilinearly at width x height from the nearest level of its mip pyramid, sampled once per texture and size.
+     */
+    private int[] samples(Texture texture, int width, int height) {
+        return texture.getPreview(width, height, () -> {
+            Texture level = texture.getMipMap().getLevel(width, height);
+            int[] samples = new int[width * height];
+            forEachTile(width, height, (from, to) -> {
+                for (int j = from; j < to; j++) sample(level, samples, j, width, height);
+            });
+            return samples;
+        });
+    }
+
+    /**
+     * Collects the distinct colors of texture, null once there are more than are worth separating one by one:
+     * over the limit or more than one per {@value #PIXELS_PER_COLOR} pixels seen. Tiles collect their colors
+     * on the pool, every one of them giving up within its first rows for a photograph, and the colors of
+     * all tiles are merged.
+     */
+    private Palette palette(PixelSource texture) {
+        int width = texture.getWidth(), height = texture.getHeight();
+        long limit = Math.min(uniqueColors, (long) width * height / PIXELS_PER_COLOR);
+        if (limit < 1) return null;
+        Queue<int[]> parts = new ConcurrentLinkedQueue<>();
+        AtomicBoolean rejected = new AtomicBoolean();
+        forEachTile(width, height, (from, to) -> {
+            int[] part = distinct(texture, from, to, limit, rejected);
+            if (part == null) rejected.set(true);
+            else parts.add(part);
+        });
+        if (rejected.get()) return null;
+        IntIntHashMap indices = new IntIntHashMap(Math.min((int) limit, 1 << 12));
+        int[] colors = new int[(int) Math.min(limit, 1 << 12)];
+        for (int[] part : parts) {
+            for (int rgb : part) {
+                int size = indices.size();
+                if (indices.containsKey(rgb)) continue;
+                if (size == limit) return null;
+                if (size == colors.length) colors = Arrays.copyOf(colors, (int) Math.min(limit, 2L * size));
+                indices.put(rgb, size);
+                colors[size] = rgb;
+            }
+        }
+        return new Palette(indices, Arrays.copyOf(colors, indices.size()));
+    }
+
+    /**
+     * Distinct colors of rows from to of texture, null if there are too many of them or another tile found so.
+     */
+    private static int[] distinct(PixelSource texture, int from, int to, long limit, AtomicBoolean rejected) {
+        int width = texture.getWidth();
+        IntIntHashMap indices = new IntIntHashMap(Math.min((int) limit, 1 << 8));
+        int[] colors = new int[(int) Math.min(limit, 1 << 8)];
+        int[] row = new int[width];
+        texture.getRow(from, row, 0);
+        int previous = row[0];
+        indices.put(previous, 0);
+        colors[0] = previous;
+        for (int j = from; j < to; j++) {
+            if (rejected.get()) return null;
+            texture.getRow(j, row, 0);
+            for (int i = 0; i < width; i++) {
+                int rgb = row[i];
+                // flat areas repeat the previous color, skipping the lookup
+                if (rgb == previous) continue;
+                previous = rgb;
+                int size = indices.size();
+                if (indices.containsKey(rgb)) continue;
+                if (size == limit) return null;
+                if (size == colors.length) colors = Arrays.copyOf(colors, (int) Math.min(limit, 2L * size));
+                indices.put(rgb, size);
+                colors[size] = rgb;
+            }
+            if (indices.size() > ((long) (j - from) * width + SAMPLE_PIXELS) / PIXELS_PER_COLOR) return null;
+        }
+        return Arrays.copyOf(colors, indices.size());
+    }
+
+    private static void sample(Texture texture, int[] dst, int j, int width, int height) {
+        for (int i = 0, o = j * width; i < width; i++, o++) {
+            dst[o] = texture.getSampleBilinearInterpolation((i + 0.5f) / width, (j + 0.5f) / height);
+        }
+    }
+
+    private void forEachTile(int width, int height, Rows rows) {
+        int tileRows = Math.max(1, tilePixels / Math.max(1, width));
+        pool.invoke(new Tile(rows, 0, height, tileRows, Metrics.current()));
+    }
+
+    private static final class Palette {
+        private final IntIntHashMap indices;
+        private final int[] colors;
+        private int[] plane0, plane1, plane2;
+        private int[][] planes;
+
+        private Palette(IntIntHashMap indices, int[] colors) {
+            this.indices = indices;
+            this.colors = colors;
+        }
+
+        private void separate(Separation separation) {
+            plane0 = new int[colors.length];
+            plane1 = new int[colors.length];
+            plane2 = new int[colors.length];
+            separation.separate(colors, 0, plane0, 0, plane1, 0, plane2, 0, colors.length);
+        }
+
+        private void separate(FusedSeparation fused) {
+            planes = new int[3 * fused.size()][colors.length];
+            fused.separate(colors, 0, planes, new int[planes.length], colors.length);
+        }
+
+        private void remap(int[] src, int srcOffset, int[] dst0, int offset0, int[] dst1, int offset1, int[] dst2, int offset2, int length) {
+            int previous = src[srcOffset], index = indices.get(previous, -1);
+            for (int i = 0; i < length; i++) {
+                int rgb = src[srcOffset + i];
+                if (rgb != previous) {
+                    previous = rgb;
+                    index = indices.get(rgb, -1);
+                }
+                dst0[offset0 + i] = plane0[index];
+                dst1[offset1 + i] = plane1[index];
+                dst2[offset2 + i] = plane2[index];
+            }
+        }
+
+        private void remap(int[] src, int srcOffset, int[][] dst, int[] offsets, int length) {
+            int previous = src[srcOffset], index = indices.get(previous, -1);
+            for (int i = 0; i < length; i++) {
+                int rgb = src[srcOffset + i];
+                if (rgb != previous) {
+                    previous = rgb;
+                    index = indices.get(rgb, -1);
+                }
+                for (int p = 0; p < planes.length; p++) dst[p][offsets[p] + i] = planes[p][index];
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Rows {
+        void process(int from, int to);
+    }
+
+    private static class Tile extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Rows rows;
+        private final int from, to, tileRows;
+        private final Metrics.Sample sample;
+
+        private Tile(Rows rows, int from, int to, int tileRows, Metrics.Sample sample) {
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+            this.tileRows = tileRows;
+            this.sample = sample;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= tileRows) {
+                sample.run(() -> rows.process(from, to));
+                return;
+            }
+            int middle = from + (to - from) / 2;
+            invokeAll(new Tile(rows, from, middle, tileRows, sample), new Tile(rows, middle, to, tileRows, sample));
+        }
+    }
+}
@@ -1,43 +1,67 @@
 package com.hermant.graphics;
 
 import com.hermant.colors.Color3f;
+import com.hermant.metrics.Metrics;
+import com.hermant.metrics.Stage;
 import de.matthiasmann.twl.utils.PNGDecoder;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
-public class Texture {
+public class Texture implements PixelSource {
 
     private int width, height;
     private int[] pixels;
+    private volatile MipMap mipMap;
+    private final Map<Long, int[]> previews = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, int[]> eldest) {
+            return size() > PREVIEWS;
+        }
+    };
+    private final long id = IDS.incrementAndGet();
+
+    private static final AtomicLong IDS = new AtomicLong();
+    // every pass of the input and the output canvases
+    private static final int PREVIEWS = 8;
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
 
     public Texture(String path) throws IOException {
-        if (path.endsWith(".png")) {
-            PNGDecoder decoder = new PNGDecoder(new FileInputStream(path));
-            ByteBuffer buf = ByteBuffer.allocateDirect(3 * decoder.getWidth() * decoder.getHeight());
-            decoder.decode(buf, decoder.getWidth() * 3, PNGDecoder.Format.RGB);
-            width = decoder.getWidth();
-            height = decoder.getHeight();
-            pixels = new int[width * height];
-            for (int i = 0; i < width * height; i++)
-                pixels[i] = ((buf.get(3 * i) << 16) & 0xff0000) | ((buf.get(3 * i + 1) << 8) & 0xff00) | ((buf.get(3 * i + 2)) & 0xff);
-        } else {
-            BufferedImage image = ImageIO.read(new File(path));
-            pixels = new int[image.getHeight() * image.getWidth()];
-            width = image.getWidth();
-            height = image.getHeight();
-            int[] pixel = new int[4];
-            for (int i = 0; i < image.getWidth(); i++) {
-                for (int j = 0; j < image.getHeight(); j++) {
-                    image.getRaster().getPixel(i, j, pixel);
-                    pixels[j * this.width + i] = pixel[0] << 16 | pixel[1] << 8 | pixel[2];
-                }
-            }
+        try (Metrics.Sample sample = Metrics.start(Stage.DECODE)) {
+            decode(path);
+            sample.setPixels((long) width * height);
+        }
+    }
+
+    /**
+     * Decodes a png, or any image ImageIO reads, from stream, which is left open.
+     */
+    public Texture(InputStream stream) throws IOException {
+        try (Metrics.Sample sample = Metrics.start(Stage.DECODE)) {
+            BufferedInputStream input = new BufferedInputStream(stream);
+            input.mark(PNG_SIGNATURE.length);
+            byte[] signature = input.readNBytes(PNG_SIGNATURE.length);
+            input.reset();
+            if (Arrays.equals(signature, PNG_SIGNATURE)) decode(input);
+            else decode(ImageIO.read(input), "stream");
+            sample.setPixels((long) width * height);
         }
     }
 
@@ -49,6 +73,90 @@ public class Texture {
         Arrays.fill(pixels, rgb);
     }
 
+    public Texture(int width, int height, int[] pixels) {
+        if (pixels.length < width * height) throw new IllegalArgumentException("Not enough pixels for " + width + "x" + height + " texture");
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    private void decode(String path) throws IOException {
+        if (path.endsWith(".png")) {
+            try (FileInputStream stream = new FileInputStream(path)) {
+                decode(stream);
+            }
+        } else {
+            decode(ImageIO.read(new File(path)), path);
+        }
+    }
+
+    private void decode(InputStream png) throws IOException {
+        PNGDecoder decoder = new PNGDecoder(png);
+        byte[] rgb = new byte[3 * decoder.getWidth() * decoder.getHeight()];
+        decoder.decode(ByteBuffer.wrap(rgb), decoder.getWidth() * 3, PNGDecoder.Format.RGB);
+        width = decoder.getWidth();
+        height = decoder.getHeight();
+        pixels = new int[width * height];
+        for (int i = 0, j = 0; i < pixels.length; i++, j += 3)
+            pixels[i] = (rgb[j] & 0xff) << 16 | (rgb[j + 1] & 0xff) << 8 | (rgb[j + 2] & 0xff);
+    }
+
+    private void decode(BufferedImage image, String source) throws IOException {
+        if (image == null) throw new IOException("Unsupported image format of " + source);
+        width = image.getWidth();
+        height = image.getHeight();
+        pixels = read(image);
+    }
+
+    /**
+     * Copies pixels straight from the data buffer for the common image types, row after row.
+     * Other types are converted by a single getRGB call.
+     */
+    static int[] read(BufferedImage image) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixels = new int[width * height];
+        WritableRaster raster = image.getRaster();
+        SampleModel model = raster.getSampleModel();
+        int x0 = -raster.getSampleModelTranslateX(), y0 = -raster.getSampleModelTranslateY();
+        switch (image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB: {
+                int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+                int stride = ((SinglePixelPackedSampleModel) model).getScanlineStride();
+                int base = raster.getDataBuffer().getOffset() + y0 * stride + x0;
+                for (int y = 0; y < height; y++)
+                    for (int x = 0, i = y * width, j = base + y * stride; x < width; x++, i++, j++)
+                        pixels[i] = data[j] & 0xffffff;
+                return pixels;
+            }
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                ComponentSampleModel components = (ComponentSampleModel) model;
+                int stride = components.getScanlineStride(), step = components.getPixelStride();
+                int base = raster.getDataBuffer().getOffset() + y0 * stride + x0 * step;
+                int r = components.getOffset(0, 0, 0), g = components.getOffset(0, 0, 1), b = components.getOffset(0, 0, 2);
+                for (int y = 0; y < height; y++)
+                    for (int x = 0, i = y * width, j = base + y * stride; x < width; x++, i++, j += step)
+                        pixels[i] = (data[j + r] & 0xff) << 16 | (data[j + g] & 0xff) << 8 | (data[j + b] & 0xff);
+                return pixels;
+            }
+            case BufferedImage.TYPE_BYTE_GRAY: {
+                byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+                int stride = ((ComponentSampleModel) model).getScanlineStride();
+                int base = raster.getDataBuffer().getOffset() + y0 * stride + x0;
+                for (int y = 0; y < height; y++)
+                    for (int x = 0, i = y * width, j = base + y * stride; x < width; x++, i++, j++)
+                        pixels[i] = (data[j] & 0xff) * 0x010101;
+                return pixels;
+            }
+            default:
+                image.getRGB(0, 0, width, height, pixels, 0, width);
+                for (int i = 0; i < pixels.length; i++) pixels[i] &= 0xffffff;
+                return pixels;
+        }
+    }
+
     public int getSampleNearestNeighbor(float x, float y) {
         int W = (int) (x * width);
         int H = (int) (y * height);
@@ -60,10 +168,17 @@ public class Texture {
         y *= height;
         int x0 = (int) x, y0 = (int) y;
         float dx = x - x0, dy = y - y0, omdx = 1.0f - dx, omdy = 1.0f - dy;
-        return Color3f.add(
-                Color3f.add(Color3f.mul(new Color3f(get(x0, y0)), omdx * omdy), Color3f.mul(new Color3f(get(x0, y0 + 1)), omdx * dy)),
-                Color3f.add(Color3f.mul(new Color3f(get(x0 + 1, y0)), dx * omdy), Color3f.mul(new Color3f(get(x0 + 1, y0 + 1)), dx * dy)))
-                .getRGB();
+        float w00 = omdx * omdy, w01 = omdx * dy, w10 = dx * omdy, w11 = dx * dy;
+        int c00 = get(x0, y0), c01 = get(x0, y0 + 1), c10 = get(x0 + 1, y0), c11 = get(x0 + 1, y0 + 1);
+        return Color3f.getRGB(
+                interpolate(c00, c01, c10, c11, w00, w01, w10, w11, 16),
+                interpolate(c00, c01, c10, c11, w00, w01, w10, w11, 8),
+                interpolate(c00, c01, c10, c11, w00, w01, w10, w11, 0));
+    }
+
+    private static float interpolate(int c00, int c01, int c10, int c11, float w00, float w01, float w10, float w11, int shift) {
+        return (((c00 >> shift) & 0xff) / 255.0f * w00 + ((c01 >> shift) & 0xff) / 255.0f * w01)
+                + (((c10 >> shift) & 0xff) / 255.0f * w10 + ((c11 >> shift) & 0xff) / 255.0f * w11);
     }
 
     public int get(int width, int height) {
@@ -72,27 +187,64 @@ public class Texture {
         return pixels[height * this.width + width];
     }
 
-    private void set(int width, int height, int color) {
-        width = Math.max(Math.min(width, this.width - 1), 0);
-        height = Math.max(Math.min(height, this.height - 1), 0);
-        pixels[height * this.width + width] = color;
+    @Override
+    public void getRow(int y, int[] dst, int offset) {
+        System.arraycopy(pixels, y * width, dst, offset, width);
+    }
+
+    int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * Returns the mip pyramid of this texture, built on first use.
+     */
+    public MipMap getMipMap() {
+        MipMap result = mipMap;
+        if (result == null) {
+            synchronized (this) {
+                result = mipMap;
+                if (result == null) mipMap = result = new MipMap(this);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the samples of this texture at width x height, which sampler computes the first time and
+     * which must not be modified. The most recently used sizes are kept.
+     */
+    int[] getPreview(int width, int height, Supplier<int[]> sampler) {
+        Long size = (long) width << 32 | height;
+        synchronized (previews) {
+            int[] preview = previews.get(size);
+            if (preview != null) return preview;
+        }
+        int[] preview = sampler.get();
+        synchronized (previews) {
+            int[] other = previews.putIfAbsent(size, preview);
+            return other != null ? other : preview;
+        }
+    }
+
+    /**
+     * Returns a number unique to this texture within the process, identifying it in caches.
+     */
+    public long getId() {
+        return id;
     }
 
+    @Override
     public int getWidth() {
         return width;
     }
 
+    @Override
     public int getHeight() {
         return height;
     }
 
     public Texture rescale(int width, int height) {
-        Texture result = new Texture(width, height, new Color3f(0));
-        for (int i = 0; i < width; i++) {
-            for (int j = 0; j < height; j++) {
-                result.set(i, j, getSampleBilinearInterpolation((i + 0.5f) / width, (j + 0.5f) / height));
-            }
-        }
-        return result;
+        return new Resampler(Resampler.Filter.BILINEAR).resample(this, width, height);
     }
 }
@@ -0,0 +1,287 @@
+package com.hermant.graphics;
+
+import com.hermant.colors.LabSeparation;
+import com.hermant.colors.LabStageCache;
+import com.hermant.colors.Separation;
+import com.hermant.metrics.Metrics;
+import com.hermant.metrics.Stage;
+import com.hermant.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Separates zoomed in views a tile at a time. Tiles are {@value #TILE} pixels square cut from the mip level
+ * matching the zoom, computed in the background only once they become visible, those nearest the center
+ * of the view first, and evicted least recently used once they exceed the byte budget.
+ * <p>
+ * The default cache is configured with the colors.tiles.budget system property.
+ */
+public class TileCache {
+
+    public static final int TILE = 256;
+    public static final long DEFAULT_BUDGET = 128L << 20;
+
+    /**
+     * Coarser levels searched for a stand in while a tile is computed.
+     */
+    private static final int FALLBACK_LEVELS = 3;
+    private static final int BACKGROUND = 0x202020;
+
+    private static TileCache instance;
+
+    private final LruCache<Key, Tile> tiles;
+    private final PriorityBlockingQueue<Request> requests = new PriorityBlockingQueue<>();
+    private final Set<Key> computing = ConcurrentHashMap.newKeySet();
+    private final Map<Key, RuntimeException> failures = new ConcurrentHashMap<>();
+
+    /**
+     * @param budget  bytes of tiles kept
+     * @param threads threads computing tiles
+     */
+    public TileCache(long budget, int threads) {
+        this.tiles = new LruCache<>(budget, tile -> 3L * Integer.BYTES * tile.plane0.length);
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(this::work, "tile-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    public static synchronized TileCache getDefault() {
+        if (instance == null)
+            instance = new TileCache(Long.getLong("colors.tiles.budget", DEFAULT_BUDGET), Runtime.getRuntime().availableProcessors());
+        return instance;
+    }
+
+    /**
+     * Draws the part of texture separated by separation that viewport shows to the canvases from cached tiles,
+     * standing in coarser tiles for the missing ones, which are requested nearest the view center first.
+     * Canvases repaint only what changed since the last draw.
+     * Requests of earlier calls are dropped. onTile runs on a worker thread every time a requested tile
+     * is ready or has failed. Failed tiles are not requested again until the cache is cleared.
+     *
+     * @return whether every visible tile was cached
+     * @throws IllegalStateException caused by the failure of a visible tile, after the canvases are drawn
+     */
+    public boolean draw(Texture texture, Separation separation, Viewport viewport, Canvas canvas0, Canvas canvas1, Canvas canvas2, Runnable onTile) {
+        requests.clear();
+        MipMap mipMap = texture.getMipMap();
+        int level = 0;
+        while (level + 1 < mipMap.getLevels() && (1 << level + 1) <= viewport.getScale()) level++;
+        // pixels of level l average 2^l x 2^l pixels of the texture
+        Texture source = mipMap.getLevel(level);
+        double levelScale = 1.0 / (1 << level);
+        int width = canvas0.getImageWidth(), height = canvas0.getImageHeight();
+        int[] columns = coordinates(width, source.getWidth(), levelScale, viewport::toImageX);
+        int[] rows = coordinates(height, source.getHeight(), levelScale, viewport::toImageY);
+        int[] pixels0 = new int[width * height], pixels1 = new int[width * height], pixels2 = new int[width * height];
+        String name = ResultCache.key(separation);
+        Object separationKey = name != null ? name : separation;
+        int tx0 = Integer.MAX_VALUE, tx1 = -1, ty0 = Integer.MAX_VALUE, ty1 = -1;
+        for (int x : columns) if (x >= 0) { tx0 = Math.min(tx0, x / TILE); tx1 = Math.max(tx1, x / TILE); }
+        for (int y : rows) if (y >= 0) { ty0 = Math.min(ty0, y / TILE); ty1 = Math.max(ty1, y / TILE); }
+        if (tx1 < 0 || ty1 < 0) {
+            show(pixels0, pixels1, pixels2, width, height, canvas0, canvas1, canvas2);
+            return true;
+        }
+        Tile[][] grid = new Tile[ty1 - ty0 + 1][tx1 - tx0 + 1];
+        int[][] shifts = new int[ty1 - ty0 + 1][tx1 - tx0 + 1];
+        List<Request> missing = new ArrayList<>();
+        RuntimeException failure = null;
+        double centerX = viewport.getCenterX() * levelScale, centerY = viewport.getCenterY() * levelScale;
+        for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+                Key key = new Key(texture.getId(), separationKey, level, tx, ty);
+                Tile tile = tiles.get(key);
+                if (tile == null) {
+                    RuntimeException failed = failures.get(key);
+                    if (failed != null) {
+                        if (failure == null) failure = failed;
+                    } else {
+                        double dx = (tx + 0.5) * TILE - centerX, dy = (ty + 0.5) * TILE - centerY;
+                        missing.add(new Request(key, texture, separation, onTile, dx * dx + dy * dy));
+                    }
+                    for (int k = 1; k <= FALLBACK_LEVELS && tile == null && level + k < mipMap.getLevels(); k++) {
+                        tile = tiles.get(new Key(texture.getId(), separationKey, level + k, tx >> k, ty >> k));
+                        shifts[ty - ty0][tx - tx0] = k;
+                    }
+                }
+                grid[ty - ty0][tx - tx0] = tile;
+            }
+        }
+        for (int sy = 0, o = 0; sy < height; sy++) {
+            int y = rows[sy];
+            for (int sx = 0; sx < width; sx++, o++) {
+                int x = columns[sx];
+                if (x < 0 || y < 0) {
+                    pixels0[o] = pixels1[o] = pixels2[o] = 0;
+                    continue;
+                }
+                Tile tile = grid[y / TILE - ty0][x / TILE - tx0];
+                if (tile == null) {
+                    pixels0[o] = pixels1[o] = pixels2[o] = BACKGROUND;
+                    continue;
+                }
+                int k = shifts[y / TILE - ty0][x / TILE - tx0];
+                int i = ((y >> k) % TILE) * tile.width + (x >> k) % TILE;
+                pixels0[o] = tile.plane0[i];
+                pixels1[o] = tile.plane1[i];
+                pixels2[o] = tile.plane2[i];
+            }
+        }
+        show(pixels0, pixels1, pixels2, width, height, canvas0, canvas1, canvas2);
+        requests.addAll(missing);
+        if (failure != null) throw new IllegalStateException("Separating a tile failed", failure);
+        return missing.isEmpty();
+    }
+
+    private static void show(int[] pixels0, int[] pixels1, int[] pixels2, int width, int height, Canvas canvas0, Canvas canvas1, Canvas canvas2) {
+        canvas0.setPixels(pixels0, width, height);
+        canvas1.setPixels(pixels1, width, height);
+        canvas2.setPixels(pixels2, width, height);
+    }
+
+    /**
+     * Drops all requested tiles not yet being computed.
+     */
+    public void cancel() {
+        requests.clear();
+    }
+
+    public void clear() {
+        tiles.clear();
+        failures.clear();
+    }
+
+    public long getWeight() {
+        return tiles.getWeight();
+    }
+
+    /**
+     * Level coordinates of the centers of canvas pixels, -1 outside of the level.
+     */
+    private static int[] coordinates(int length, int levelLength, double levelScale, DoubleUnaryOperator toImage) {
+        int[] result = new int[length];
+        for (int i = 0; i < length; i++) {
+            double coordinate = Math.floor(toImage.applyAsDouble(i + 0.5) * levelScale);
+            result[i] = coordinate < 0 || coordinate >= levelLength ? -1 : (int) coordinate;
+        }
+        return result;
+    }
+
+    private void work() {
+        while (true) {
+            Request request;
+            try {
+                request = requests.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (tiles.get(request.key) != null || !computing.add(request.key)) continue;
+            try {
+                tiles.put(request.key, compute(request));
+            } catch (RuntimeException e) {
+                // kept for draw to report
+                failures.put(request.key, e);
+            } finally {
+                computing.remove(request.key);
+            }
+            request.onTile.run();
+        }
+    }
+
+    private static Tile compute(Request request) {
+        Texture level = request.texture.getMipMap().getLevel(request.key.level);
+        int levelWidth = level.getWidth(), x0 = request.key.x * TILE, y0 = request.key.y * TILE;
+        int width = Math.min(TILE, levelWidth - x0), height = Math.min(TILE, level.getHeight() - y0);
+        Tile tile = new Tile(width, new int[width * height], new int[width * height], new int[width * height]);
+        int[] pixels = level.getPixels();
+        LabStageCache stages = LabStageCache.getDefault();
+        // one sample per tile, kept apart from the preview samples of whole views
+        try (Metrics.Sample sample = Metrics.start(Stage.TILE)) {
+            if (request.separation instanceof LabSeparation && stages.isEnabled()) {
+                // tuning Lab redoes only the stages after the changed parameter, on this thread as the workers
+                // already compute tiles in parallel
+                stages.separate(List.of(request.texture.getId(), request.key.level, request.key.x, request.key.y), width * height, () -> {
+                    int[] region = new int[width * height];
+                    for (int y = 0; y < height; y++) System.arraycopy(pixels, (y0 + y) * levelWidth + x0, region, y * width, width);
+                    return region;
+                }, (LabSeparation) request.separation, tile.plane0, tile.plane1, tile.plane2);
+            } else {
+                for (int y = 0; y < height; y++) {
+                    request.separation.separate(pixels, (y0 + y) * levelWidth + x0,
+                            tile.plane0, y * width, tile.plane1, y * width, tile.plane2, y * width, width);
+                }
+            }
+            sample.setPixels((long) width * height);
+        }
+        return tile;
+    }
+
+    private static final class Tile {
+        private final int width;
+        private final int[] plane0, plane1, plane2;
+
+        private Tile(int width, int[] plane0, int[] plane1, int[] plane2) {
+            this.width = width;
+            this.plane0 = plane0;
+            this.plane1 = plane1;
+            this.plane2 = plane2;
+        }
+    }
+
+    private static final class Request implements Comparable<Request> {
+        private final Key key;
+        private final Texture texture;
+        private final Separation separation;
+        private final Runnable onTile;
+        private final double distance;
+
+        private Request(Key key, Texture texture, Separation separation, Runnable onTile, double distance) {
+            this.key = key;
+            this.texture = texture;
+            this.separation = separation;
+            this.onTile = onTile;
+            this.distance = distance;
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            return Double.compare(distance, other.distance);
+        }
+    }
+
+    private static final class Key {
+        private final long texture;
+        private final Object separation;
+        private final int level, x, y;
+
+        private Key(long texture, Object separation, int level, int x, int y) {
+            this.texture = texture;
+            this.separation = separation;
+            this.level = level;
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return texture == key.texture && level == key.level && x == key.x && y == key.y && separation.equals(key.separation);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(texture, separation, level, x, y);
+        }
+    }
+}
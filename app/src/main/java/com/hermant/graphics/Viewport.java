@@ -0,0 +1,100 @@
+package com.hermant.graphics;
+
+/**
+ * Part of an image shown on a canvas: the image point at the canvas center and the number of image pixels
+ * per canvas pixel. Immutable, zooming and panning return new viewports.
+ */
+public final class Viewport {
+
+    /**
+     * Closest zoom, canvas pixels per image pixel.
+     */
+    public static final double MAX_ZOOM = 8.0;
+
+    private final int imageWidth, imageHeight, width, height;
+    private final double centerX, centerY, scale;
+
+    private Viewport(int imageWidth, int imageHeight, int width, int height, double centerX, double centerY, double scale) {
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        this.width = width;
+        this.height = height;
+        double fit = fitScale(imageWidth, imageHeight, width, height);
+        this.scale = Math.max(1.0 / MAX_ZOOM, Math.min(fit, scale));
+        // keep the center within the image, on an image smaller than the canvas it stays centered
+        double halfWidth = width * this.scale / 2.0, halfHeight = height * this.scale / 2.0;
+        this.centerX = halfWidth * 2 >= imageWidth ? imageWidth / 2.0 : Math.max(halfWidth, Math.min(imageWidth - halfWidth, centerX));
+        this.centerY = halfHeight * 2 >= imageHeight ? imageHeight / 2.0 : Math.max(halfHeight, Math.min(imageHeight - halfHeight, centerY));
+    }
+
+    /**
+     * Shows the whole imageWidth x imageHeight image on a width x height canvas.
+     */
+    public static Viewport fit(int imageWidth, int imageHeight, int width, int height) {
+        return new Viewport(imageWidth, imageHeight, width, height, imageWidth / 2.0, imageHeight / 2.0,
+                fitScale(imageWidth, imageHeight, width, height));
+    }
+
+    private static double fitScale(int imageWidth, int imageHeight, int width, int height) {
+        return Math.max((double) imageWidth / width, (double) imageHeight / height);
+    }
+
+    /**
+     * Zooms in by factor, or out if it is below 1, keeping the image point under canvas point x, y in place.
+     */
+    public Viewport zoom(double factor, double x, double y) {
+        double imageX = toImageX(x), imageY = toImageY(y), scale = this.scale / factor;
+        return new Viewport(imageWidth, imageHeight, width, height,
+                imageX - (x - width / 2.0) * scale, imageY - (y - height / 2.0) * scale, scale);
+    }
+
+    /**
+     * Moves the image by dx, dy canvas pixels.
+     */
+    public Viewport pan(double dx, double dy) {
+        return new Viewport(imageWidth, imageHeight, width, height, centerX - dx * scale, centerY - dy * scale, scale);
+    }
+
+    /**
+     * @return whether the whole image is shown
+     */
+    public boolean isFit() {
+        return scale >= fitScale(imageWidth, imageHeight, width, height) * (1 - 1e-9);
+    }
+
+    public double toImageX(double x) {
+        return centerX + (x - width / 2.0) * scale;
+    }
+
+    public double toImageY(double y) {
+        return centerY + (y - height / 2.0) * scale;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public double getCenterX() {
+        return centerX;
+    }
+
+    public double getCenterY() {
+        return centerY;
+    }
+
+    public double getScale() {
+        return scale;
+    }
+}
@@ -1,9 +1,16 @@
 package com.hermant.gui;
 
-import com.hermant.colors.Color3f;
+import com.hermant.colors.ChannelSeparation;
+import com.hermant.colors.Profiles;
 import com.hermant.colors.Separation;
+import com.hermant.colors.SeparationTableCache;
 import com.hermant.graphics.Canvas;
+import com.hermant.graphics.SeparationEngine;
 import com.hermant.graphics.Texture;
+import com.hermant.graphics.Viewport;
+import com.hermant.io.PngEncoder;
+import com.hermant.metrics.Metrics;
+import com.hermant.metrics.Stage;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -11,10 +18,15 @@ import javax.swing.border.TitledBorder;
 import javax.swing.filechooser.FileFilter;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 public class Layout {
@@ -46,16 +58,17 @@ public class Layout {
     private JFileChooser input_chooser;
     private JFileChooser output_chooser;
     private Texture texture;
+    private final SeparationEngine engine = new SeparationEngine();
+    private final Consumer<String> status;
+    private final PreviewRenderer renderer;
+    private final Timer debounce = new Timer(DEBOUNCE_DELAY, e -> separate());
+    private boolean separated;
+    private Separation separation;
+    private static final int DEBOUNCE_DELAY = 150;
     private static final int INPUT_PANEL_HEIGHT = 512;
     private static final int INPUT_PANEL_WIDTH = 768;
     private static final int OUTPUT_PANEL_HEIGHT = 384;
     private static final int OUTPUT_PANEL_WIDTH = 384 * 3 / 2;
-    private static final Map<String, String[]> SEPARATIONS = Map.of(
-            "YCbCr", new String[]{"Y", "Cb", "Cr"},
-            "HSV", new String[]{"H", "S", "V"},
-            "RGB", new String[]{"R", "G", "B"},
-            "Lab", new String[]{"L", "a", "b"}
-    );
     private final Map<String, Supplier<Separation>> SEPARATION_FUNCTIONS = Map.of(
             "RGB", Separation::getRGBtoRGBSeparation,
             "YCbCr", Separation::getRGBtoYCbCrSeparation,
@@ -68,24 +81,18 @@ public class Layout {
                     (float) (double) gamma_spinner.getModel().getValue())
     );
 
-    private static final Map<String, double[]> ILLUMINANTS = Map.ofEntries(Map.entry("A", new double[]{0.44757f, 0.40744f}), Map.entry("B", new double[]{0.34840f, 0.3516f}), Map.entry("C", new double[]{0.31006f, 0.31615f}), Map.entry("D50", new double[]{0.34567f, 0.3585f}), Map.entry("D55", new double[]{0.33242f, 0.34743f}), Map.entry("D65", new double[]{0.31273f, 0.32902f}), Map.entry("D75", new double[]{0.29902f, 0.31485f}), Map.entry("9300K", new double[]{0.2848f, 0.2932f}), Map.entry("E", new double[]{0.33333f, 0.33333f}), Map.entry("F2", new double[]{0.37207f, 0.37512f}), Map.entry("F7", new double[]{0.31285f, 0.32918f}), Map.entry("F11", new double[]{0.38054f, 0.37692f}));
-
-    private static final Map<String, double[]> COLOR_SPACES = Map.of(
-            "sRGB", new double[]{0.64, 0.33, 0.3, 0.6, 0.15, 0.06, 0.3127, 0.3290, 2.2},
-            "Adobe RGB", new double[]{0.64, 0.33, 0.21, 0.71, 0.15, 0.06, 0.3127, 0.329, 2.2},
-            "Apple RGB", new double[]{0.625, 0.340, 0.28, 0.595, 0.155, 0.07, 0.3127, 0.329, 1.8},
-            "CIE RGB", new double[]{0.735, 0.265, 0.274, 0.717, 0.167, 0.009, 0.3333, 0.3333, 2.2},
-            "Wide Gamut", new double[]{0.7347, 0.2653, 0.1152, 0.8264, 0.1566, 0.0177, 0.3457, 0.3585, 1.2},
-            "PAL/SECAM", new double[]{0.64, 0.33, 0.29, 0.6, 0.15, 0.06, 0.3127, 0.329, 1.95}
-    );
-
     private Canvas input_canvas;
     private Canvas output_canvas_0;
     private Canvas output_canvas_1;
     private Canvas output_canvas_2;
 
 
-    Layout() {
+    /**
+     * @param status receives a short summary of timings after every operation
+     */
+    Layout(Consumer<String> status) {
+        this.status = status;
+        renderer = new PreviewRenderer(engine, status);
         setPanels();
         setupFileChoosers();
     }
@@ -103,6 +110,8 @@ public class Layout {
         output_panel_1.add(output_canvas_1 = new Canvas(OUTPUT_PANEL_WIDTH, OUTPUT_PANEL_HEIGHT));
         output_panel_2.add(output_canvas_2 = new Canvas(OUTPUT_PANEL_WIDTH, OUTPUT_PANEL_HEIGHT));
         input_panel.add(input_canvas = new Canvas(INPUT_PANEL_WIDTH, INPUT_PANEL_HEIGHT));
+        for (Canvas canvas : new Canvas[]{output_canvas_0, output_canvas_1, output_canvas_2})
+            canvas.addViewportListener(this::zoomed);
         x_r_spinner.setModel(new SpinnerNumberModel(0.64f, 0.0001f, 1.0f, 0.01f));
         y_r_spinner.setModel(new SpinnerNumberModel(0.33f, 0.0001f, 1.0f, 0.01f));
         x_g_spinner.setModel(new SpinnerNumberModel(0.3f, 0.001f, 1.0f, 0.01f));
@@ -128,47 +137,81 @@ public class Layout {
                 File file = input_chooser.getSelectedFile();
                 String resource = file.getPath();
                 input_panel_border.setBorder(new TitledBorder(resource));
-                try {
-                    texture = new Texture(resource);
-                    for (int i = 0; i < input_canvas.getWidth(); i++) {
-                        for (int j = 0; j < input_canvas.getHeight(); j++) {
-                            input_canvas.setPixel(i, j, texture.getSampleBilinearInterpolation((i + 0.5f) / input_canvas.getWidth(), (j + 0.5f) / input_canvas.getHeight()));
-                        }
-                    }
-                    input_canvas.repaint();
-                } catch (IOException ex) {
-                    ex.printStackTrace();
-                }
+                load(resource);
             }
         });
         separate_button.addActionListener(e -> {
-            if (texture != null) {
-                setOutputNames(Objects.requireNonNull(separation_combo_box.getSelectedItem()).toString());
-                Separation separation = SEPARATION_FUNCTIONS.get(Objects.requireNonNull(separation_combo_box.getSelectedItem()).toString()).get();
-                for (int i = 0; i < output_canvas_0.getWidth(); i++) {
-                    for (int j = 0; j < output_canvas_0.getHeight(); j++) {
-                        Color3f color = new Color3f(texture.getSampleBilinearInterpolation((i + 0.5f) / output_canvas_0.getWidth(), (j + 0.5f) / output_canvas_0.getHeight()));
-                        var colors = separation.separate(color);
-                        output_canvas_0.setPixel(i, j, colors[0]);
-                        output_canvas_1.setPixel(i, j, colors[1]);
-                        output_canvas_2.setPixel(i, j, colors[2]);
-                    }
-                }
-                output_canvas_0.repaint();
-                output_canvas_1.repaint();
-                output_canvas_2.repaint();
-            }
+            separated = true;
+            separate();
         });
+        debounce.setRepeats(false);
+        for (JSpinner spinner : new JSpinner[]{x_r_spinner, y_r_spinner, x_g_spinner, y_g_spinner, x_b_spinner, y_b_spinner, x_w_spinner, y_w_spinner, gamma_spinner})
+            spinner.addChangeListener(e -> changed());
+        separation_combo_box.addActionListener(e -> changed());
         illuminant_combo_box.addActionListener(e -> setWhitePoint(Objects.requireNonNull(illuminant_combo_box.getSelectedItem()).toString()));
         color_profile_combo_box.addActionListener(e -> setColorSpace(Objects.requireNonNull(color_profile_combo_box.getSelectedItem()).toString()));
     }
 
+    /**
+     * Once something was separated every change of the parameters separates again, a short while after the last one.
+     */
+    private void changed() {
+        if (separated) debounce.restart();
+    }
+
+    private void separate() {
+        if (texture != null) {
+            setOutputNames(Objects.requireNonNull(separation_combo_box.getSelectedItem()).toString());
+            separation = SEPARATION_FUNCTIONS.get(Objects.requireNonNull(separation_combo_box.getSelectedItem()).toString()).get();
+            renderer.render(texture, separation, output_canvas_0.getViewport(), output_canvas_0, output_canvas_1, output_canvas_2);
+        }
+    }
+
+    /**
+     * Shows the same part of the image on all output canvases, zooming the last separation.
+     */
+    private void zoomed(Viewport viewport) {
+        output_canvas_0.setViewport(viewport);
+        output_canvas_1.setViewport(viewport);
+        output_canvas_2.setViewport(viewport);
+        if (texture != null && separated && separation != null)
+            renderer.render(texture, separation, viewport, output_canvas_0, output_canvas_1, output_canvas_2);
+    }
+
+    private void load(String path) {
+        renderer.cancel();
+        new SwingWorker<Texture, Void>() {
+            @Override
+            protected Texture doInBackground() throws IOException {
+                Texture texture = new Texture(path);
+                texture.getMipMap();
+                return texture;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    texture = get();
+                    Viewport fit = Viewport.fit(texture.getWidth(), texture.getHeight(), OUTPUT_PANEL_WIDTH, OUTPUT_PANEL_HEIGHT);
+                    output_canvas_0.setViewport(fit);
+                    output_canvas_1.setViewport(fit);
+                    output_canvas_2.setViewport(fit);
+                    status.accept(Metrics.summary(Stage.DECODE));
+                    renderer.render(texture, input_canvas);
+                    if (separated) separate();
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        }.execute();
+    }
+
     Container getMainPanel() {
         return main_panel;
     }
 
     private void setOutputNames(String separation) {
-        String[] values = SEPARATIONS.get(separation);
+        String[] values = Profiles.CHANNELS.get(separation);
         if (values == null) return;
         output_panel_0_border.setBorder(new TitledBorder(values[0]));
         output_panel_1_border.setBorder(new TitledBorder(values[1]));
@@ -201,14 +244,14 @@ public class Layout {
     }
 
     private void setWhitePoint(String illuminant) {
-        double[] values = ILLUMINANTS.get(illuminant);
+        double[] values = Profiles.ILLUMINANTS.get(illuminant);
         if (values == null) return;
         x_w_spinner.getModel().setValue(values[0]);
         y_w_spinner.getModel().setValue(values[1]);
     }
 
     private void setColorSpace(String colorSpace) {
-        double[] values = COLOR_SPACES.get(colorSpace);
+        double[] values = Profiles.COLOR_SPACES.get(colorSpace);
         if (values == null) {
             System.out.println(colorSpace + " not found");
             return;
@@ -228,29 +271,47 @@ public class Layout {
         if (texture != null) {
             setOutputNames(Objects.requireNonNull(separation_combo_box.getSelectedItem()).toString());
             Separation separation = SEPARATION_FUNCTIONS.get(Objects.requireNonNull(separation_combo_box.getSelectedItem()).toString()).get();
-            BufferedImage image = new BufferedImage(texture.getWidth() * 2, texture.getHeight() * 2, BufferedImage.TYPE_INT_RGB);
-            for (int i = 0; i < texture.getWidth(); i++) {
-                for (int j = 0; j < texture.getHeight(); j++) {
-                    Color3f color = new Color3f(texture.get(i, j));
-                    var colors = separation.separate(color);
-                    image.setRGB(i, j, color.getRGB());
-                    image.setRGB(i + texture.getWidth(), j, colors[0].getRGB());
-                    image.setRGB(i, j + texture.getHeight(), colors[1].getRGB());
-                    image.setRGB(i + texture.getWidth(), j + texture.getHeight(), colors[2].getRGB());
+            Texture texture = this.texture;
+            save_button.setEnabled(false);
+            new SwingWorker<Void, Void>() {
+                @Override
+                protected Void doInBackground() throws IOException {
+                    Separation function = separation;
+                    if (SeparationTableCache.ENABLED && separation instanceof ChannelSeparation)
+                        function = SeparationTableCache.getDefault().get((ChannelSeparation) separation);
+                    BufferedImage image = new BufferedImage(texture.getWidth() * 2, texture.getHeight() * 2, BufferedImage.TYPE_INT_RGB);
+                    engine.composite(texture, function, ((DataBufferInt) image.getRaster().getDataBuffer()).getData());
+                    File file = new File(path);
+                    String format = null;
+                    if (path.contains(".")) {
+                        var tokens = path.split("\\.");
+                        format = tokens[tokens.length - 1];
+                    }
+                    if (format == null) throw new IOException("No format specified!");
+                    if (format.equalsIgnoreCase("png")) {
+                        try (OutputStream stream = new FileOutputStream(file)) {
+                            new PngEncoder().encode(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), image.getWidth(), image.getHeight(), stream);
+                        }
+                    } else {
+                        try (Metrics.Sample sample = Metrics.start(Stage.ENCODE)) {
+                            ImageIO.write(image, format, file);
+                            sample.setPixels((long) image.getWidth() * image.getHeight());
+                        }
+                    }
+                    return null;
                 }
-            }
-            File file = new File(path);
-            try {
-                String format = null;
-                if (path.contains(".")) {
-                    var tokens = path.split("\\.");
-                    format = tokens[tokens.length - 1];
+
+                @Override
+                protected void done() {
+                    save_button.setEnabled(true);
+                    try {
+                        get();
+                        status.accept(Metrics.summary(Stage.SEPARATE, Stage.ENCODE));
+                    } catch (InterruptedException | ExecutionException e) {
+                        e.printStackTrace();
+                    }
                 }
-                if (format == null) throw new IOException("No format specified!");
-                ImageIO.write(image, format, file);
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            }.execute();
         }
     }
 
@@ -0,0 +1,159 @@
+package com.hermant.gui;
+
+import com.hermant.colors.Separation;
+import com.hermant.graphics.Canvas;
+import com.hermant.graphics.ResultCache;
+import com.hermant.graphics.SeparationEngine;
+import com.hermant.graphics.Texture;
+import com.hermant.graphics.TileCache;
+import com.hermant.graphics.Viewport;
+import com.hermant.metrics.Metrics;
+import com.hermant.metrics.Stage;
+
+import javax.swing.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Renders previews off the event dispatch thread in passes of growing resolution, each pass published
+ * to its canvases as soon as it is done. Every request cancels the previous one of its kind,
+ * which stops after the pass it is rendering. Timings of the last pass are reported to the status.
+ * Separations at full resolution are cached, a separation rendered before is copied to the canvases at once.
+ * Zoomed in separations are drawn from tiles, redrawn as the missing ones come in.
+ * Canvases repaint only the pixels that changed.
+ */
+class PreviewRenderer {
+
+    private static final int[] PASSES = {8, 2, 1};
+
+    private final SeparationEngine engine;
+    private final Consumer<String> status;
+    private final ResultCache cache;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "preview");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicLong input = new AtomicLong(), output = new AtomicLong();
+
+    PreviewRenderer(SeparationEngine engine, Consumer<String> status) {
+        this(engine, status, ResultCache.getDefault());
+    }
+
+    PreviewRenderer(SeparationEngine engine, Consumer<String> status, ResultCache cache) {
+        this.engine = engine;
+        this.status = status;
+        this.cache = cache;
+    }
+
+    /**
+     * Draws texture to the canvas.
+     */
+    void render(Texture texture, Canvas canvas) {
+        long generation = input.incrementAndGet();
+        worker.execute(() -> {
+            for (int divisor : PASSES) {
+                if (input.get() != generation) return;
+                int width = size(canvas.getImageWidth(), divisor), height = size(canvas.getImageHeight(), divisor);
+                int[] pixels = new int[width * height];
+                engine.preview(texture, width, height, pixels);
+                String summary = divisor == 1 ? Metrics.summary(Stage.PREVIEW) : null;
+                publish(input, generation, () -> {
+                    canvas.setPixels(pixels, width, height);
+                    if (summary != null) status.accept(summary);
+                });
+            }
+        });
+    }
+
+    /**
+     * Draws channels of texture separated by separation to the canvases, which must be of the same size.
+     * Must be called on the event dispatch thread.
+     */
+    void render(Texture texture, Separation separation, Canvas canvas0, Canvas canvas1, Canvas canvas2) {
+        long generation = output.incrementAndGet();
+        String key = ResultCache.key(separation);
+        int[][] cached = key == null ? null : cache.get(texture, key, canvas0.getImageWidth(), canvas0.getImageHeight());
+        if (cached != null) {
+            draw(cached[0], cached[1], cached[2], canvas0.getImageWidth(), canvas0.getImageHeight(), canvas0, canvas1, canvas2);
+            status.accept("preview cached");
+            return;
+        }
+        worker.execute(() -> {
+            for (int divisor : PASSES) {
+                if (output.get() != generation) return;
+                int width = size(canvas0.getImageWidth(), divisor), height = size(canvas0.getImageHeight(), divisor);
+                int[] pixels0 = new int[width * height], pixels1 = new int[width * height], pixels2 = new int[width * height];
+                engine.preview(texture, separation, width, height, pixels0, pixels1, pixels2);
+                String summary = divisor == 1 ? Metrics.summary(Stage.PREVIEW) : null;
+                if (divisor == 1 && key != null) cache.put(texture, key, width, height, pixels0, pixels1, pixels2);
+                publish(output, generation, () -> {
+                    draw(pixels0, pixels1, pixels2, width, height, canvas0, canvas1, canvas2);
+                    if (summary != null) status.accept(summary);
+                });
+            }
+        });
+    }
+
+    /**
+     * Draws the part of the separated texture shown by viewport, the whole texture if viewport is null or fits it.
+     * Must be called on the event dispatch thread.
+     */
+    void render(Texture texture, Separation separation, Viewport viewport, Canvas canvas0, Canvas canvas1, Canvas canvas2) {
+        TileCache tiles = TileCache.getDefault();
+        if (viewport == null || viewport.isFit()) {
+            tiles.cancel();
+            render(texture, separation, canvas0, canvas1, canvas2);
+            return;
+        }
+        long generation = output.incrementAndGet();
+        AtomicBoolean pending = new AtomicBoolean();
+        Runnable redraw = new Runnable() {
+            @Override
+            public void run() {
+                if (output.get() != generation) return;
+                pending.set(false);
+                boolean complete;
+                try {
+                    complete = tiles.draw(texture, separation, viewport, canvas0, canvas1, canvas2, () -> {
+                        // coalesce tiles finished before the next redraw
+                        if (output.get() == generation && pending.compareAndSet(false, true)) SwingUtilities.invokeLater(this);
+                    });
+                } catch (IllegalStateException e) {
+                    status.accept("tile failed: " + e.getCause());
+                    return;
+                }
+                if (complete) status.accept(Metrics.summary(Stage.TILE));
+            }
+        };
+        redraw.run();
+    }
+
+    /**
+     * Cancels all requests in flight.
+     */
+    void cancel() {
+        input.incrementAndGet();
+        output.incrementAndGet();
+        TileCache.getDefault().cancel();
+    }
+
+    private static void draw(int[] pixels0, int[] pixels1, int[] pixels2, int width, int height, Canvas canvas0, Canvas canvas1, Canvas canvas2) {
+        canvas0.setPixels(pixels0, width, height);
+        canvas1.setPixels(pixels1, width, height);
+        canvas2.setPixels(pixels2, width, height);
+    }
+
+    private static void publish(AtomicLong current, long generation, Runnable update) {
+        SwingUtilities.invokeLater(() -> {
+            if (current.get() == generation) update.run();
+        });
+    }
+
+    private static int size(int size, int divisor) {
+        return Math.max(1, (size + divisor - 1) / divisor);
+    }
+}
@@ -8,7 +8,7 @@ public class Window extends JFrame {
 
     public Window(String title, int width, int height) {
         this.title = title;
-        Layout layout = new Layout();
+        Layout layout = new Layout(this::setText);
         setBackground(Color.BLACK);
         setForeground(Color.BLACK);
         setContentPane(layout.getMainPanel());
@@ -0,0 +1,65 @@
+package com.hermant.io;
+
+final class Filters {
+
+    private Filters() {
+    }
+
+    /**
+     * Filters row against prior by strategy into out or spare, spare is only written by the adaptive strategy.
+     *
+     * @return out or spare, whichever holds the filter type followed by the filtered row
+     */
+    static byte[] filter(PngFilter strategy, byte[] row, byte[] prior, int bpp, byte[] out, byte[] spare) {
+        if (strategy != PngFilter.ADAPTIVE) {
+            apply(strategy.ordinal(), row, prior, bpp, out);
+            return out;
+        }
+        long bestSum = Long.MAX_VALUE;
+        byte[] best = out, line = spare;
+        for (int type = 0; type < 5; type++) {
+            long sum = apply(type, row, prior, bpp, line);
+            if (sum < bestSum) {
+                bestSum = sum;
+                byte[] swap = best;
+                best = line;
+                line = swap;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Writes png filter type followed by row filtered against prior to out.
+     *
+     * @return sum of absolute values of the filtered bytes taken as signed
+     */
+    static long apply(int type, byte[] row, byte[] prior, int bpp, byte[] out) {
+        out[0] = (byte) type;
+        int length = row.length;
+        switch (type) {
+            case 0:
+                System.arraycopy(row, 0, out, 1, length);
+                break;
+            case 1:
+                for (int i = 0; i < length; i++) out[i + 1] = (byte) (row[i] - (i >= bpp ? row[i - bpp] : 0));
+                break;
+            case 2:
+                for (int i = 0; i < length; i++) out[i + 1] = (byte) (row[i] - prior[i]);
+                break;
+            case 3:
+                for (int i = 0; i < length; i++)
+                    out[i + 1] = (byte) (row[i] - (((i >= bpp ? row[i - bpp] & 0xff : 0) + (prior[i] & 0xff)) >> 1));
+                break;
+            case 4:
+                for (int i = 0; i < length; i++)
+                    out[i + 1] = (byte) (row[i] - (i >= bpp ? PngReader.paeth(row[i - bpp] & 0xff, prior[i] & 0xff, prior[i - bpp] & 0xff) : prior[i]));
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid png filter " + type);
+        }
+        long sum = 0;
+        for (int i = 1; i <= length; i++) sum += Math.abs(out[i]);
+        return sum;
+    }
+}
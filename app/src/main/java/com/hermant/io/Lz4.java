@@ -0,0 +1,127 @@
+package com.hermant.io;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compressor of the lz4 block format: sequences of literal bytes, each followed by a copy of at least four bytes
+ * from up to 64 KB back. Matches are found through a table of the last position of every hashed four bytes,
+ * trading ratio for speed, and incompressible input is skipped over in growing steps.
+ * Blocks are readable by any lz4 block decoder.
+ */
+final class Lz4 {
+
+    private static final int MIN_MATCH = 4;
+    // the format wants the last five bytes literal and no match starting in the last twelve
+    private static final int LAST_LITERALS = 5, MATCH_LIMIT = 12;
+    private static final int MAX_OFFSET = 0xffff;
+    private static final int HASH_BITS = 12;
+    private static final ThreadLocal<int[]> TABLE = ThreadLocal.withInitial(() -> new int[1 << HASH_BITS]);
+
+    private Lz4() {
+    }
+
+    /**
+     * Size of dst large enough for any length bytes.
+     */
+    static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses the first length bytes of src to dst.
+     *
+     * @return compressed size
+     */
+    static int compress(byte[] src, int length, byte[] dst) {
+        int anchor = 0, d = 0;
+        if (length > MATCH_LIMIT) {
+            int[] table = TABLE.get();
+            Arrays.fill(table, -1);
+            int limit = length - MATCH_LIMIT, matchLimit = length - LAST_LITERALS;
+            for (int i = 0; i < limit; ) {
+                int sequence = readInt(src, i), hash = hash(sequence), ref = table[hash];
+                table[hash] = i;
+                if (ref < 0 || i - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                    i += 1 + ((i - anchor) >>> 6);
+                    continue;
+                }
+                while (i > anchor && ref > 0 && src[i - 1] == src[ref - 1]) {
+                    i--;
+                    ref--;
+                }
+                int match = MIN_MATCH;
+                while (i + match < matchLimit && src[i + match] == src[ref + match]) match++;
+                d = sequence(src, anchor, i - anchor, i - ref, match, dst, d);
+                i += match;
+                anchor = i;
+            }
+        }
+        return sequence(src, anchor, length - anchor, 0, 0, dst, d);
+    }
+
+    /**
+     * Decompresses length bytes of src into exactly dstLength bytes of dst.
+     */
+    static void decompress(byte[] src, int length, byte[] dst, int dstLength) throws IOException {
+        int s = 0, d = 0;
+        while (true) {
+            if (s >= length) throw new IOException("Truncated block");
+            int token = src[s++] & 0xff, literals = token >>> 4;
+            if (literals == 15) for (int b = 255; b == 255; literals += b) b = src[check(s++, length)] & 0xff;
+            if (s + literals > length || d + literals > dstLength) throw new IOException("Truncated block");
+            System.arraycopy(src, s, dst, d, literals);
+            s += literals;
+            d += literals;
+            if (s == length) break;
+            int offset = (src[check(s, length)] & 0xff) | (src[check(s + 1, length)] & 0xff) << 8, match = token & 15;
+            s += 2;
+            if (match == 15) for (int b = 255; b == 255; match += b) b = src[check(s++, length)] & 0xff;
+            match += MIN_MATCH;
+            if (offset == 0 || offset > d) throw new IOException("Invalid match offset " + offset + " at " + d);
+            if (d + match > dstLength) throw new IOException("Block holds more than " + dstLength + " bytes");
+            // overlapping copies repeat the last offset bytes
+            if (offset >= match) System.arraycopy(dst, d - offset, dst, d, match);
+            else for (int i = 0; i < match; i++) dst[d + i] = dst[d - offset + i];
+            d += match;
+        }
+        if (d != dstLength) throw new IOException("Block holds " + d + " bytes, expected " + dstLength);
+    }
+
+    private static int check(int index, int length) throws IOException {
+        if (index >= length) throw new IOException("Truncated block");
+        return index;
+    }
+
+    /**
+     * Writes literals followed by a match of the given length at offset back, no match if length is 0.
+     *
+     * @return position in dst after the sequence
+     */
+    private static int sequence(byte[] src, int from, int literals, int offset, int match, byte[] dst, int d) {
+        int token = d++, extra = match - MIN_MATCH;
+        dst[token] = (byte) (Math.min(literals, 15) << 4 | (match == 0 ? 0 : Math.min(extra, 15)));
+        if (literals >= 15) d = length(literals - 15, dst, d);
+        System.arraycopy(src, from, dst, d, literals);
+        d += literals;
+        if (match == 0) return d;
+        dst[d++] = (byte) offset;
+        dst[d++] = (byte) (offset >>> 8);
+        if (extra >= 15) d = length(extra - 15, dst, d);
+        return d;
+    }
+
+    private static int length(int remaining, byte[] dst, int d) {
+        for (; remaining >= 255; remaining -= 255) dst[d++] = (byte) 255;
+        dst[d++] = (byte) remaining;
+        return d;
+    }
+
+    private static int readInt(byte[] src, int i) {
+        return (src[i] & 0xff) | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff) << 16 | src[i + 3] << 24;
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_BITS);
+    }
+}
@@ -0,0 +1,215 @@
+package com.hermant.io;
+
+import com.hermant.colors.Color3f;
+import com.hermant.graphics.PixelSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a file written by {@link PlanarWriter}. Uncompressed channels are mapped from disk in buffers of whole rows,
+ * compressed strips are read and decompressed on demand, the last one of each channel per thread kept
+ * for the rows that follow.
+ * <p>
+ * As a {@link PixelSource} the channels make up the red, green and blue of its pixels, so that the coefficients
+ * can be separated, previewed or written as any other image.
+ */
+public class PlanarReader implements PixelSource, AutoCloseable {
+
+    private static final ThreadLocal<float[]> SCRATCH = ThreadLocal.withInitial(() -> new float[0]);
+    private static final ThreadLocal<short[]> SHORTS = ThreadLocal.withInitial(() -> new short[0]);
+
+    private final FileChannel channel;
+    private final int width, height, stripRows;
+    private final PlanarSample sample;
+    private final boolean compressed;
+    private final String key;
+    // uncompressed channels
+    private final ByteBuffer[][] chunks;
+    private final int rowsPerChunk;
+    // compressed strips, strip major
+    private final long[] offsets;
+    private final int[] lengths;
+    private final ThreadLocal<Strip[]> strips = ThreadLocal.withInitial(() -> new Strip[]{new Strip(), new Strip(), new Strip()});
+
+    private PlanarReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        read(header, 0);
+        byte[] magic = new byte[PlanarWriter.MAGIC.length];
+        header.flip().get(magic);
+        if (!Arrays.equals(magic, PlanarWriter.MAGIC)) throw new IOException("Not a planar file");
+        int version = header.get();
+        if (version != PlanarWriter.VERSION) throw new IOException("Unsupported planar file version " + version);
+        int type = header.get(), compression = header.get();
+        header.get();
+        if (type < 0 || type >= PlanarSample.values().length || compression < 0 || compression > 1)
+            throw new IOException("Unsupported sample type " + type + " or compression " + compression);
+        this.sample = PlanarSample.values()[type];
+        this.compressed = compression == 1;
+        this.width = header.getInt();
+        this.height = header.getInt();
+        this.stripRows = header.getInt();
+        int keyLength = header.getInt();
+        if (width <= 0 || height <= 0 || stripRows <= 0 || keyLength < 0)
+            throw new IOException("Invalid planar file of " + width + "x" + height + " pixels in strips of " + stripRows + " rows");
+        ByteBuffer name = ByteBuffer.allocate(keyLength);
+        read(name, header.capacity());
+        this.key = new String(name.array(), StandardCharsets.UTF_8);
+        long data = (header.capacity() + keyLength + PlanarWriter.ALIGNMENT - 1) / PlanarWriter.ALIGNMENT * PlanarWriter.ALIGNMENT;
+        long rowBytes = (long) sample.getBytes() * width;
+        if (compressed) {
+            int count = 3 * ((height + stripRows - 1) / stripRows);
+            ByteBuffer index = ByteBuffer.allocate(count * PlanarWriter.INDEX_ENTRY).order(ByteOrder.LITTLE_ENDIAN);
+            read(index, data);
+            index.flip();
+            this.offsets = new long[count];
+            this.lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = index.getLong();
+                lengths[i] = index.getInt();
+                if (offsets[i] < 0 || lengths[i] < 0 || offsets[i] + lengths[i] > channel.size())
+                    throw new IOException("Strip " + i / 3 + " of channel " + i % 3 + " lies outside of the file");
+            }
+            this.chunks = null;
+            this.rowsPerChunk = 0;
+        } else {
+            if (channel.size() < data + 3 * rowBytes * height)
+                throw new IOException("Planar file holds " + channel.size() + " bytes, its " + width + "x" + height + " channels need " + (data + 3 * rowBytes * height));
+            if (rowBytes > Integer.MAX_VALUE) throw new IOException("Rows of " + width + " pixels do not fit a buffer");
+            this.rowsPerChunk = (int) Math.min(height, Integer.MAX_VALUE / rowBytes);
+            this.chunks = new ByteBuffer[3][(height + rowsPerChunk - 1) / rowsPerChunk];
+            for (int c = 0; c < 3; c++) {
+                for (int k = 0; k < chunks[c].length; k++) {
+                    int rows = Math.min(rowsPerChunk, height - k * rowsPerChunk);
+                    chunks[c][k] = channel.map(FileChannel.MapMode.READ_ONLY, data + (c * (long) height + (long) k * rowsPerChunk) * rowBytes, rows * rowBytes);
+                }
+            }
+            this.offsets = null;
+            this.lengths = null;
+        }
+    }
+
+    /**
+     * Opens a planar file for reading.
+     */
+    public static PlanarReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new PlanarReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public PlanarSample getSample() {
+        return sample;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Key of the separation the channels were computed with.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Copies the coefficients of row y of channel c to dst starting at offset.
+     */
+    public void getRow(int c, int y, float[] dst, int offset) {
+        if (compressed) {
+            Strip strip = strips.get()[c];
+            strip.load(c, y / stripRows);
+            System.arraycopy(strip.values, y % stripRows * width, dst, offset, width);
+            return;
+        }
+        ByteBuffer chunk = chunks[c][y / rowsPerChunk].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        chunk.position((y % rowsPerChunk) * sample.getBytes() * width);
+        if (sample == PlanarSample.FLOAT32) {
+            chunk.asFloatBuffer().get(dst, offset, width);
+            return;
+        }
+        short[] shorts = SHORTS.get();
+        if (shorts.length < width) SHORTS.set(shorts = new short[width]);
+        chunk.asShortBuffer().get(shorts, 0, width);
+        for (int i = 0; i < width; i++) dst[offset + i] = (shorts[i] & 0xffff) / 65535.0f;
+    }
+
+    /**
+     * Copies row y of the channels, quantized to 8 bits, as the red, green and blue of packed pixels.
+     */
+    @Override
+    public void getRow(int y, int[] dst, int offset) {
+        float[] row = SCRATCH.get();
+        if (row.length < 3 * width) SCRATCH.set(row = new float[3 * width]);
+        for (int c = 0; c < 3; c++) getRow(c, y, row, c * width);
+        for (int i = 0; i < width; i++) dst[offset + i] = Color3f.getRGB(row[i], row[width + i], row[2 * width + i]);
+    }
+
+    /**
+     * Closes the file, mapped channels stay mapped until the reader is garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private void read(ByteBuffer buffer, long at) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, at);
+            if (read < 0) throw new IOException("Truncated planar file");
+            at += read;
+        }
+    }
+
+    /**
+     * Decompressed strip of a channel, loaded for that channel only.
+     */
+    private final class Strip {
+        private int strip = -1;
+        private final float[] values = new float[stripRows * width];
+        private final byte[] shuffled = new byte[values.length * sample.getBytes()];
+        private ByteBuffer block = ByteBuffer.allocate(0);
+
+        private void load(int channel, int strip) {
+            if (strip == this.strip) return;
+            int entry = 3 * strip + channel, rows = Math.min(stripRows, height - strip * stripRows), length = rows * width;
+            if (block.capacity() < lengths[entry]) block = ByteBuffer.allocate(lengths[entry]);
+            try {
+                block.clear().limit(lengths[entry]);
+                read(block, offsets[entry]);
+                Lz4.decompress(block.array(), lengths[entry], shuffled, length * sample.getBytes());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read strip " + strip + " of channel " + channel, e);
+            }
+            for (int i = 0; i < length; i++) {
+                int bits = 0;
+                for (int k = 0; k < sample.getBytes(); k++) bits |= (shuffled[k * length + i] & 0xff) << 8 * k;
+                values[i] = sample == PlanarSample.FLOAT32 ? Float.intBitsToFloat(bits) : bits / 65535.0f;
+            }
+            this.strip = strip;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.hermant.io;
+
+/**
+ * Type of the channel samples of a planar file.
+ */
+public enum PlanarSample {
+    /**
+     * Coefficients as computed, little endian IEEE 754 single precision.
+     */
+    FLOAT32(Float.BYTES),
+    /**
+     * Coefficients clamped to [0, 1] and scaled to 0..65535, little endian.
+     */
+    UINT16(Short.BYTES);
+
+    private final int bytes;
+
+    PlanarSample(int bytes) {
+        this.bytes = bytes;
+    }
+
+    public int getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,186 @@
+package com.hermant.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the coefficients of the three channels of a separation as numbers, a strip of rows at a time,
+ * for tools reading them rather than looking at them. Strips go from a direct buffer straight to the file channel.
+ * <p>
+ * A planar file is little endian and starts with a header padded with zeros to a multiple of {@value #ALIGNMENT} bytes:
+ * the magic bytes CPLN, the version, the {@link PlanarSample} ordinal, 1 if strips are compressed and 0 otherwise,
+ * a zero byte, then ints width, height, rows per strip and the length of the key of the separation, followed by
+ * the key in UTF-8. Uncompressed, the header is followed by the channels one after another, each an array of
+ * width x height samples row after row, which may be mapped as is. Compressed, the header is followed by an index of
+ * a long offset and an int length of every strip of every channel, strip after strip, then the strips themselves:
+ * lz4 blocks of the bytes of their samples grouped by significance, the lowest byte of every sample first,
+ * which puts the slowly changing high bytes next to each other.
+ * <p>
+ * A file that failed to be written is deleted, so a truncated file never passes for a complete one.
+ */
+public class PlanarWriter implements Closeable {
+
+    public static final int VERSION = 1;
+
+    static final byte[] MAGIC = {'C', 'P', 'L', 'N'};
+    static final int ALIGNMENT = 64;
+    static final int INDEX_ENTRY = Long.BYTES + Integer.BYTES;
+    // leaves room for incompressible strips growing under compression
+    private static final int MAX_STRIP_BYTES = 1 << 30;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int width, height, stripRows;
+    private final PlanarSample sample;
+    private final boolean compress;
+    private final long data;
+    private final ByteBuffer buffer;
+    private final FloatBuffer floats;
+    private final ShortBuffer shorts;
+    private final ByteBuffer index;
+    private final short[] quantized;
+    private final byte[] shuffled, compressed;
+    private long position;
+    private int row;
+
+    public PlanarWriter(Path path, int width, int height, String key, PlanarSample sample, boolean compress, int stripRows) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        if (stripRows <= 0) throw new IllegalArgumentException("Strip must have at least one row");
+        stripRows = Math.min(stripRows, height);
+        long stripBytes = (long) stripRows * width * sample.getBytes();
+        if (stripBytes > MAX_STRIP_BYTES) throw new IllegalArgumentException("Strips of " + stripRows + " rows of " + width + " pixels do not fit a buffer");
+        this.path = path;
+        this.width = width;
+        this.height = height;
+        this.stripRows = stripRows;
+        this.sample = sample;
+        this.compress = compress;
+        int strips = (height + stripRows - 1) / stripRows;
+        byte[] header = header(width, height, stripRows, key, sample, compress);
+        this.data = header.length + (compress ? 3L * strips * INDEX_ENTRY : 0);
+        this.position = data;
+        this.buffer = ByteBuffer.allocateDirect(compress ? Lz4.maxCompressedLength((int) stripBytes) : (int) stripBytes).order(ByteOrder.LITTLE_ENDIAN);
+        this.floats = buffer.asFloatBuffer();
+        this.shorts = buffer.asShortBuffer();
+        this.index = compress ? ByteBuffer.allocate(3 * strips * INDEX_ENTRY).order(ByteOrder.LITTLE_ENDIAN) : null;
+        this.quantized = sample == PlanarSample.UINT16 && !compress ? new short[stripRows * width] : null;
+        this.shuffled = compress ? new byte[(int) stripBytes] : null;
+        this.compressed = compress ? new byte[buffer.capacity()] : null;
+        if (path.toAbsolutePath().getParent() != null) Files.createDirectories(path.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            write(ByteBuffer.wrap(header), 0);
+        } catch (IOException e) {
+            try {
+                abort();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    public int getStripRows() {
+        return stripRows;
+    }
+
+    /**
+     * Writes the next strip, rows of coefficients of each channel starting at index 0.
+     * Every strip but the last one has exactly {@link #getStripRows()} rows.
+     */
+    public void write(float[] c0, float[] c1, float[] c2, int rows) throws IOException {
+        int expected = Math.min(stripRows, height - row);
+        if (rows != expected) throw new IllegalArgumentException("Expected a strip of " + expected + " rows, got " + rows);
+        write(0, c0, rows * width);
+        write(1, c1, rows * width);
+        write(2, c2, rows * width);
+        row += rows;
+    }
+
+    /**
+     * Writes the index of compressed strips and closes the file, which must have all of its rows by then.
+     */
+    @Override
+    public void close() throws IOException {
+        boolean complete = false;
+        try {
+            if (row < height) throw new IOException("Only " + row + " of " + height + " rows were written");
+            if (compress) write(index.clear(), data - index.capacity());
+            complete = true;
+        } finally {
+            if (complete) channel.close();
+            else abort();
+        }
+    }
+
+    /**
+     * Closes and deletes the file, for writes that failed.
+     */
+    public void abort() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void write(int c, float[] values, int length) throws IOException {
+        buffer.clear();
+        if (compress) {
+            shuffle(values, length);
+            int size = Lz4.compress(shuffled, length * sample.getBytes(), compressed);
+            buffer.put(compressed, 0, size).flip();
+            index.putLong(position).putInt(size);
+            write(buffer, position);
+            position += size;
+            return;
+        }
+        if (sample == PlanarSample.FLOAT32) {
+            floats.clear();
+            floats.put(values, 0, length);
+        } else {
+            for (int i = 0; i < length; i++) quantized[i] = (short) quantize(values[i]);
+            shorts.clear();
+            shorts.put(quantized, 0, length);
+        }
+        buffer.limit(length * sample.getBytes());
+        write(buffer, data + c * (long) width * height * sample.getBytes() + (long) row * width * sample.getBytes());
+    }
+
+    /**
+     * Groups the bytes of length samples by significance in shuffled.
+     */
+    private void shuffle(float[] values, int length) {
+        int bytes = sample.getBytes();
+        for (int i = 0; i < length; i++) {
+            int bits = sample == PlanarSample.FLOAT32 ? Float.floatToRawIntBits(values[i]) : quantize(values[i]);
+            for (int k = 0; k < bytes; k++) shuffled[k * length + i] = (byte) (bits >>> 8 * k);
+        }
+    }
+
+    private void write(ByteBuffer source, long at) throws IOException {
+        while (source.hasRemaining()) at += channel.write(source, at);
+    }
+
+    private static int quantize(float value) {
+        return (int) (Math.max(0.0f, Math.min(1.0f, value)) * 65535.0f + 0.5f);
+    }
+
+    private static byte[] header(int width, int height, int stripRows, String key, PlanarSample sample, boolean compress) {
+        byte[] name = key.getBytes(StandardCharsets.UTF_8);
+        int length = 24 + name.length;
+        ByteBuffer header = ByteBuffer.allocate((length + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).put((byte) VERSION).put((byte) sample.ordinal()).put((byte) (compress ? 1 : 0)).put((byte) 0);
+        header.putInt(width).putInt(height).putInt(stripRows).putInt(name.length).put(name);
+        return header.array();
+    }
+}
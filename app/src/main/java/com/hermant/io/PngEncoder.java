@@ -0,0 +1,197 @@
+package com.hermant.io;
+
+import com.hermant.metrics.Metrics;
+import com.hermant.metrics.Stage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes whole rgb images to png compressing blocks of rows in parallel, the way pigz does:
+ * every block is deflated on its own, primed with the last 32 KB of the data before it, and ends
+ * with a sync flush, so the blocks concatenate into a single zlib stream. Its checksum is combined
+ * from the checksums of the blocks.
+ */
+public class PngEncoder {
+
+    public static final int DEFAULT_BLOCK_BYTES = 1 << 20;
+
+    private static final int WINDOW = 1 << 15;
+    private static final int BASE = 65521;
+
+    private final int level;
+    private final PngFilter filter;
+    private final ForkJoinPool pool;
+    private final int blockBytes;
+
+    public PngEncoder() {
+        this(Deflater.DEFAULT_COMPRESSION, PngFilter.ADAPTIVE);
+    }
+
+    public PngEncoder(int level, PngFilter filter) {
+        this(level, filter, ForkJoinPool.commonPool(), DEFAULT_BLOCK_BYTES);
+    }
+
+    /**
+     * @param blockBytes approximate number of uncompressed bytes deflated by a single task
+     */
+    public PngEncoder(int level, PngFilter filter, ForkJoinPool pool, int blockBytes) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        if (blockBytes <= 0) throw new IllegalArgumentException("Block size must be positive");
+        this.level = level;
+        this.filter = filter;
+        this.pool = pool;
+        this.blockBytes = blockBytes;
+    }
+
+    /**
+     * Writes width x height packed rgb pixels as png to stream, the stream is left open.
+     */
+    public void encode(int[] pixels, int width, int height, OutputStream stream) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        if (pixels.length < width * height) throw new IllegalArgumentException("Not enough pixels for " + width + "x" + height + " image");
+        try (Metrics.Sample sample = Metrics.start(Stage.ENCODE)) {
+            write(pixels, width, height, stream);
+            sample.setPixels((long) width * height);
+        }
+    }
+
+    private void write(int[] pixels, int width, int height, OutputStream stream) throws IOException {
+        int rowBytes = 3 * width + 1;
+        int blockRows = Math.max(1, blockBytes / rowBytes), windowRows = (WINDOW + rowBytes - 1) / rowBytes;
+        Metrics.Sample sample = Metrics.current();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        CRC32 crc = new CRC32();
+        out.write(PngReader.SIGNATURE);
+        byte[] header = PngWriter.header(width, height);
+        PngWriter.chunk(out, crc, PngReader.IHDR, header, header.length);
+        byte[] zlib = {0x78, (byte) (level == 0 || level == 1 ? 0x01 : level >= 2 && level <= 5 ? 0x5e : level >= 7 ? 0xda : 0x9c)};
+        PngWriter.chunk(out, crc, PngReader.IDAT, zlib, zlib.length);
+        // only a few blocks are in flight, so compressed blocks do not pile up ahead of the stream
+        Deque<Future<Block>> blocks = new ArrayDeque<>();
+        int inFlight = 2 * pool.getParallelism();
+        long adler = 1;
+        try {
+            int from = 0;
+            while (from < height || !blocks.isEmpty()) {
+                while (from < height && blocks.size() < inFlight) {
+                    int start = from, end = Math.min(height, from + blockRows);
+                    blocks.add(pool.submit(() -> sample.get(() -> deflate(pixels, width, Math.max(0, start - windowRows), start, end, end == height))));
+                    from = end;
+                }
+                Block block = blocks.poll().get();
+                PngWriter.chunk(out, crc, PngReader.IDAT, block.data, block.length);
+                adler = combine(adler, block.adler, block.bytes);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Encoding failed", e.getCause());
+        } finally {
+            for (Future<Block> future : blocks) future.cancel(false);
+        }
+        byte[] trailer = {(byte) (adler >>> 24), (byte) (adler >>> 16), (byte) (adler >>> 8), (byte) adler};
+        PngWriter.chunk(out, crc, PngReader.IDAT, trailer, trailer.length);
+        PngWriter.chunk(out, crc, PngReader.IEND, trailer, 0);
+        out.flush();
+    }
+
+    /**
+     * Filters and deflates rows from to end, rows window to from are filtered only to prime the dictionary.
+     */
+    private Block deflate(int[] pixels, int width, int window, int from, int end, boolean last) {
+        int rowBytes = 3 * width + 1;
+        byte[] previous = new byte[rowBytes - 1], current = new byte[rowBytes - 1];
+        byte[] line = new byte[rowBytes], spare = new byte[rowBytes];
+        byte[] dictionary = new byte[(from - window) * rowBytes];
+        // grown as needed, a block is kept until written and usually compresses far below its raw size
+        byte[] output = new byte[1 << 12];
+        int length = 0;
+        Adler32 adler = new Adler32();
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (window > 0) unpack(pixels, (window - 1) * width, width, current);
+            for (int y = window; y < end; y++) {
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+                unpack(pixels, y * width, width, current);
+                byte[] filtered = Filters.filter(filter, current, previous, 3, line, spare);
+                if (y < from) {
+                    System.arraycopy(filtered, 0, dictionary, (y - window) * rowBytes, rowBytes);
+                    if (y == from - 1) deflater.setDictionary(dictionary, Math.max(0, dictionary.length - WINDOW), Math.min(WINDOW, dictionary.length));
+                    continue;
+                }
+                adler.update(filtered, 0, rowBytes);
+                deflater.setInput(filtered, 0, rowBytes);
+                while (!deflater.needsInput()) {
+                    if (length == output.length) output = Arrays.copyOf(output, 2 * output.length);
+                    length += deflater.deflate(output, length, output.length - length, Deflater.NO_FLUSH);
+                }
+            }
+            if (last) deflater.finish();
+            while (true) {
+                if (length == output.length) output = Arrays.copyOf(output, 2 * output.length);
+                int count = last
+                        ? deflater.deflate(output, length, output.length - length)
+                        : deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+                length += count;
+                if (last ? deflater.finished() : length < output.length) break;
+            }
+        } finally {
+            deflater.end();
+        }
+        return new Block(output, length, adler.getValue(), (long) (end - from) * rowBytes);
+    }
+
+    private static void unpack(int[] pixels, int offset, int width, byte[] row) {
+        for (int i = 0, j = offset; i < width; i++, j++) {
+            int rgb = pixels[j];
+            row[3 * i] = (byte) (rgb >> 16);
+            row[3 * i + 1] = (byte) (rgb >> 8);
+            row[3 * i + 2] = (byte) rgb;
+        }
+    }
+
+    /**
+     * Adler-32 of two concatenated sequences from checksums of both and the length of the second, as zlib's adler32_combine.
+     */
+    static long combine(long adler1, long adler2, long length2) {
+        long remainder = length2 % BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = remainder * sum1 % BASE;
+        sum1 += (adler2 & 0xffff) + BASE - 1;
+        sum2 += (adler1 >>> 16 & 0xffff) + (adler2 >>> 16 & 0xffff) + BASE - remainder;
+        if (sum1 >= BASE) sum1 -= BASE;
+        if (sum1 >= BASE) sum1 -= BASE;
+        if (sum2 >= 2L * BASE) sum2 -= 2L * BASE;
+        if (sum2 >= BASE) sum2 -= BASE;
+        return sum2 << 16 | sum1;
+    }
+
+    private static final class Block {
+        private final byte[] data;
+        private final int length;
+        private final long adler, bytes;
+
+        private Block(byte[] data, int length, long adler, long bytes) {
+            this.data = data;
+            this.length = length;
+            this.adler = adler;
+            this.bytes = bytes;
+        }
+    }
+}
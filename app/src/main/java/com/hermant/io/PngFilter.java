@@ -0,0 +1,12 @@
+package com.hermant.io;
+
+/**
+ * Png row filter used by the encoders.
+ */
+public enum PngFilter {
+    NONE, SUB, UP, AVERAGE, PAETH,
+    /**
+     * Chooses per row the filter minimizing the sum of absolute differences, the usual png heuristic.
+     */
+    ADAPTIVE
+}
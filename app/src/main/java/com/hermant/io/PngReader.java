@@ -0,0 +1,216 @@
+package com.hermant.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decodes non interlaced png images row by row, so that only two rows of the image are kept in memory.
+ * Alpha is ignored and 16 bit samples are reduced to 8 bits.
+ */
+public class PngReader implements Closeable {
+
+    static final byte[] SIGNATURE = {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    static final int IHDR = 0x49484452, PLTE = 0x504c5445, IDAT = 0x49444154, IEND = 0x49454e44;
+
+    private final DataInputStream in;
+    private final Inflater inflater = new Inflater();
+    private final byte[] input = new byte[1 << 16];
+    private final byte[] filter = new byte[1];
+    private final int width, height;
+    private final int bitDepth, colorType, channels, bytesPerPixel;
+    private int[] palette;
+    private byte[] previous, current;
+    private int row;
+    private int remaining;
+    private boolean data;
+
+    public PngReader(InputStream stream) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(stream, 1 << 16));
+        byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        for (int i = 0; i < SIGNATURE.length; i++) if (signature[i] != SIGNATURE[i]) throw new IOException("Not a png image");
+        if (in.readInt() != 13 || in.readInt() != IHDR) throw new IOException("Missing png header");
+        width = in.readInt();
+        height = in.readInt();
+        bitDepth = in.readUnsignedByte();
+        colorType = in.readUnsignedByte();
+        int compression = in.readUnsignedByte(), filtering = in.readUnsignedByte(), interlace = in.readUnsignedByte();
+        in.readInt();
+        if (width <= 0 || height <= 0 || compression != 0 || filtering != 0) throw new IOException("Invalid png header");
+        if (interlace != 0) throw new IOException("Interlaced png images cannot be read row by row");
+        switch (colorType) {
+            case 0: channels = 1; break;
+            case 2: channels = 3; break;
+            case 3: channels = 1; break;
+            case 4: channels = 2; break;
+            case 6: channels = 4; break;
+            default: throw new IOException("Invalid png color type " + colorType);
+        }
+        boolean packed = bitDepth == 1 || bitDepth == 2 || bitDepth == 4;
+        if (!(bitDepth == 8 || bitDepth == 16 && colorType != 3 || packed && (colorType == 0 || colorType == 3)))
+            throw new IOException("Invalid png bit depth " + bitDepth);
+        bytesPerPixel = Math.max(1, channels * bitDepth / 8);
+        int rowBytes = (int) (((long) width * channels * bitDepth + 7) / 8);
+        previous = new byte[rowBytes];
+        current = new byte[rowBytes];
+        nextData();
+        if (colorType == 3 && palette == null) throw new IOException("Missing png palette");
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return number of rows read so far
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Reads the following rows of the image as packed rgb pixels, width pixels per row.
+     */
+    public void read(int[] dst, int offset, int rows) throws IOException {
+        if (row + rows > height) throw new EOFException("Only " + (height - row) + " rows left");
+        for (int r = 0; r < rows; r++, row++) {
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+            inflate(filter);
+            inflate(current);
+            unfilter(filter[0] & 0xff);
+            convert(dst, offset + r * width);
+        }
+    }
+
+    private void inflate(byte[] target) throws IOException {
+        int done = 0;
+        try {
+            while (done < target.length) {
+                int count = inflater.inflate(target, done, target.length - done);
+                done += count;
+                if (count > 0) continue;
+                if (inflater.finished() || inflater.needsDictionary()) throw new EOFException("Truncated png data");
+                if (remaining == 0) nextData();
+                int length = in.read(input, 0, Math.min(input.length, remaining));
+                if (length < 0) throw new EOFException("Truncated png file");
+                remaining -= length;
+                inflater.setInput(input, 0, length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted png data", e);
+        }
+    }
+
+    /**
+     * Skips chunks up to the next non empty IDAT chunk, remembering the palette on the way.
+     */
+    private void nextData() throws IOException {
+        if (data) in.readInt();
+        data = false;
+        while (true) {
+            int length = in.readInt(), type = in.readInt();
+            if (type == IDAT && length > 0) {
+                remaining = length;
+                data = true;
+                return;
+            }
+            if (type == IEND) throw new EOFException("Truncated png data");
+            if (type == PLTE) {
+                palette = new int[length / 3];
+                for (int i = 0; i < palette.length; i++)
+                    palette[i] = in.readUnsignedByte() << 16 | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+                skip(length - 3 * palette.length);
+            } else {
+                skip(length);
+            }
+            in.readInt();
+        }
+    }
+
+    private void skip(int length) throws IOException {
+        while (length > 0) {
+            int skipped = in.skipBytes(length);
+            if (skipped <= 0) {
+                in.readByte();
+                skipped = 1;
+            }
+            length -= skipped;
+        }
+    }
+
+    private void unfilter(int type) throws IOException {
+        byte[] row = current, prior = previous;
+        int bpp = bytesPerPixel;
+        switch (type) {
+            case 0:
+                break;
+            case 1:
+                for (int i = bpp; i < row.length; i++) row[i] += row[i - bpp];
+                break;
+            case 2:
+                for (int i = 0; i < row.length; i++) row[i] += prior[i];
+                break;
+            case 3:
+                for (int i = 0; i < bpp; i++) row[i] += (prior[i] & 0xff) >> 1;
+                for (int i = bpp; i < row.length; i++) row[i] += ((row[i - bpp] & 0xff) + (prior[i] & 0xff)) >> 1;
+                break;
+            case 4:
+                for (int i = 0; i < bpp; i++) row[i] += prior[i];
+                for (int i = bpp; i < row.length; i++) row[i] += paeth(row[i - bpp] & 0xff, prior[i] & 0xff, prior[i - bpp] & 0xff);
+                break;
+            default:
+                throw new IOException("Invalid png filter " + type);
+        }
+    }
+
+    static int paeth(int a, int b, int c) {
+        int p = a + b - c, pa = Math.abs(p - a), pb = Math.abs(p - b), pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) return a;
+        return pb <= pc ? b : c;
+    }
+
+    private void convert(int[] dst, int offset) {
+        byte[] row = current;
+        int step = bitDepth == 16 ? 2 : 1, stride = channels * step;
+        if (bitDepth < 8) {
+            int perByte = 8 / bitDepth, mask = (1 << bitDepth) - 1;
+            for (int i = 0; i < width; i++) {
+                int sample = ((row[i / perByte] & 0xff) >> (8 - bitDepth * (i % perByte + 1))) & mask;
+                dst[offset + i] = colorType == 3 ? color(sample) : grey(sample * 0xff / mask);
+            }
+        } else if (colorType == 3) {
+            for (int i = 0; i < width; i++) dst[offset + i] = color(row[i] & 0xff);
+        } else if (channels < 3) {
+            for (int i = 0, j = 0; i < width; i++, j += stride) dst[offset + i] = grey(row[j] & 0xff);
+        } else {
+            for (int i = 0, j = 0; i < width; i++, j += stride)
+                dst[offset + i] = (row[j] & 0xff) << 16 | (row[j + step] & 0xff) << 8 | (row[j + 2 * step] & 0xff);
+        }
+    }
+
+    private int color(int index) {
+        return index < palette.length ? palette[index] : 0;
+    }
+
+    private static int grey(int value) {
+        return value << 16 | value << 8 | value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+}
@@ -0,0 +1,135 @@
+package com.hermant.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes rgb png images row by row, compressed data is written out as soon as it is produced.
+ */
+public class PngWriter implements Closeable {
+
+    private static final int CHUNK = 1 << 16;
+
+    private final DataOutputStream out;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[CHUNK];
+    private final int width, height;
+    private final PngFilter filter;
+    private byte[] previous, current, line, spare;
+    private int row;
+
+    public PngWriter(OutputStream stream, int width, int height) throws IOException {
+        this(stream, width, height, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    public PngWriter(OutputStream stream, int width, int height, int level) throws IOException {
+        this(stream, width, height, level, PngFilter.ADAPTIVE);
+    }
+
+    public PngWriter(OutputStream stream, int width, int height, int level, PngFilter filter) throws IOException {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        this.out = new DataOutputStream(new BufferedOutputStream(stream, CHUNK));
+        this.deflater = new Deflater(level);
+        this.width = width;
+        this.height = height;
+        this.filter = filter;
+        previous = new byte[3 * width];
+        current = new byte[3 * width];
+        line = new byte[3 * width + 1];
+        spare = new byte[3 * width + 1];
+        out.write(PngReader.SIGNATURE);
+        byte[] header = header(width, height);
+        chunk(out, crc, PngReader.IHDR, header, header.length);
+    }
+
+    /**
+     * Returns IHDR chunk data of an 8 bit rgb image.
+     */
+    static byte[] header(int width, int height) {
+        byte[] header = new byte[13];
+        int[] values = {width, height};
+        for (int i = 0; i < 2; i++) {
+            header[4 * i] = (byte) (values[i] >>> 24);
+            header[4 * i + 1] = (byte) (values[i] >>> 16);
+            header[4 * i + 2] = (byte) (values[i] >>> 8);
+            header[4 * i + 3] = (byte) values[i];
+        }
+        header[8] = 8;
+        header[9] = 2;
+        return header;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Writes the following rows of packed rgb pixels, rows are width pixels apart.
+     */
+    public void write(int[] src, int offset, int rows) throws IOException {
+        write(src, offset, width, rows);
+    }
+
+    /**
+     * Writes the following rows of packed rgb pixels, rows are stride pixels apart.
+     */
+    public void write(int[] src, int offset, int stride, int rows) throws IOException {
+        if (row + rows > height) throw new IOException("Only " + (height - row) + " rows left");
+        for (int r = 0; r < rows; r++, row++) {
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+            for (int i = 0, j = offset + r * stride; i < width; i++, j++) {
+                int rgb = src[j];
+                current[3 * i] = (byte) (rgb >> 16);
+                current[3 * i + 1] = (byte) (rgb >> 8);
+                current[3 * i + 2] = (byte) rgb;
+            }
+            byte[] filtered = Filters.filter(filter, current, previous, 3, line, spare);
+            deflater.setInput(filtered, 0, filtered.length);
+            while (!deflater.needsInput()) drain(Deflater.NO_FLUSH);
+        }
+    }
+
+    private void drain(int flush) throws IOException {
+        int length = deflater.deflate(buffer, 0, buffer.length, flush);
+        if (length > 0) chunk(out, crc, PngReader.IDAT, buffer, length);
+    }
+
+    static void chunk(DataOutputStream out, CRC32 crc, int type, byte[] data, int length) throws IOException {
+        out.writeInt(length);
+        out.writeInt(type);
+        out.write(data, 0, length);
+        crc.reset();
+        crc.update(type >>> 24);
+        crc.update(type >>> 16);
+        crc.update(type >>> 8);
+        crc.update(type);
+        crc.update(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (row != height) throw new IOException("Only " + row + " of " + height + " rows written");
+            deflater.finish();
+            while (!deflater.finished()) drain(Deflater.NO_FLUSH);
+            chunk(out, crc, PngReader.IEND, buffer, 0);
+            out.flush();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+}
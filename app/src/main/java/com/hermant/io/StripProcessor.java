@@ -0,0 +1,252 @@
+package com.hermant.io;
+
+import com.hermant.colors.ChannelSeparation;
+import com.hermant.colors.Separation;
+import com.hermant.graphics.SeparationEngine;
+import com.hermant.graphics.Texture;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Separates images strip by strip, decoding, separating and encoding a few rows at a time,
+ * so that memory used depends on image width and not on its area.
+ * <p>
+ * Only png images are decoded in strips, other formats are decoded whole. Output is png,
+ * or planar files of coefficients, see {@link PlanarWriter}.
+ * The bottom half of a composite is produced before it can be written, meanwhile it is spooled,
+ * deflated, to a temporary file next to the output.
+ */
+public class StripProcessor {
+
+    public static final int DEFAULT_STRIP_ROWS = 64;
+
+    private final SeparationEngine engine;
+    private final int stripRows;
+    private final int level;
+    private final PngFilter filter;
+
+    public StripProcessor(SeparationEngine engine) {
+        this(engine, DEFAULT_STRIP_ROWS);
+    }
+
+    public StripProcessor(SeparationEngine engine, int stripRows) {
+        this(engine, stripRows, Deflater.DEFAULT_COMPRESSION, PngFilter.ADAPTIVE);
+    }
+
+    public StripProcessor(SeparationEngine engine, int stripRows, int level, PngFilter filter) {
+        if (stripRows <= 0) throw new IllegalArgumentException("Strip must have at least one row");
+        this.engine = engine;
+        this.stripRows = stripRows;
+        this.level = level;
+        this.filter = filter;
+    }
+
+    /**
+     * Writes the same composite as the save button, input and its channels in a 2x2 grid.
+     *
+     * @return number of input pixels processed
+     */
+    public long composite(Path input, Separation separation, Path output) throws IOException {
+        png(output);
+        try (Rows source = open(input)) {
+            int width = source.getWidth(), height = source.getHeight(), stride = 2 * width;
+            int[] strip = new int[width * stripRows], rows = new int[stride * stripRows];
+            int[][] planes = new int[3][width * stripRows];
+            byte[] bytes = new byte[3 * rows.length];
+            // next to the output rather than in a temporary directory that may well be in memory
+            Path spool = Files.createTempFile(output.toAbsolutePath().getParent(), "strips", ".raw");
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (PngWriter writer = new PngWriter(Files.newOutputStream(output), stride, 2 * height, level, filter)) {
+                try (OutputStream stream = new DeflaterOutputStream(Files.newOutputStream(spool), deflater, 1 << 16)) {
+                    for (int y = 0; y < height; y += stripRows) {
+                        int count = Math.min(stripRows, height - y);
+                        source.read(strip, count);
+                        engine.separate(new Texture(width, count, strip), separation, planes[0], planes[1], planes[2]);
+                        join(strip, planes[0], rows, width, count);
+                        writer.write(rows, 0, count);
+                        join(planes[1], planes[2], rows, width, count);
+                        pack(rows, bytes, stride * count);
+                        stream.write(bytes, 0, 3 * stride * count);
+                    }
+                }
+                try (DataInputStream stream = new DataInputStream(new InflaterInputStream(new BufferedInputStream(Files.newInputStream(spool), 1 << 16)))) {
+                    for (int y = 0; y < height; y += stripRows) {
+                        int count = Math.min(stripRows, height - y);
+                        stream.readFully(bytes, 0, 3 * stride * count);
+                        unpack(bytes, rows, stride * count);
+                        writer.write(rows, 0, count);
+                    }
+                }
+            } finally {
+                deflater.end();
+                Files.deleteIfExists(spool);
+            }
+            return (long) width * height;
+        }
+    }
+
+    /**
+     * Writes every channel of the separation to its own image.
+     *
+     * @return number of input pixels processed
+     */
+    public long channels(Path input, Separation separation, Path output0, Path output1, Path output2) throws IOException {
+        png(output0);
+        png(output1);
+        png(output2);
+        try (Rows source = open(input)) {
+            int width = source.getWidth(), height = source.getHeight();
+            int[] strip = new int[width * stripRows];
+            int[][] planes = new int[3][width * stripRows];
+            try (PngWriter writer0 = new PngWriter(Files.newOutputStream(output0), width, height, level, filter);
+                 PngWriter writer1 = new PngWriter(Files.newOutputStream(output1), width, height, level, filter);
+                 PngWriter writer2 = new PngWriter(Files.newOutputStream(output2), width, height, level, filter)) {
+                for (int y = 0; y < height; y += stripRows) {
+                    int count = Math.min(stripRows, height - y);
+                    source.read(strip, count);
+                    engine.separate(new Texture(width, count, strip), separation, planes[0], planes[1], planes[2]);
+                    writer0.write(planes[0], 0, count);
+                    writer1.write(planes[1], 0, count);
+                    writer2.write(planes[2], 0, count);
+                }
+            }
+            return (long) width * height;
+        }
+    }
+
+    /**
+     * Writes the coefficients of every separation to its own planar file, see {@link PlanarWriter},
+     * a strip of rows of the file per strip of the input.
+     *
+     * @return number of input pixels processed
+     */
+    public long planar(Path input, ChannelSeparation[] separations, Path[] outputs, PlanarSample sample, boolean compress) throws IOException {
+        try (Rows source = open(input)) {
+            int width = source.getWidth(), height = source.getHeight();
+            int[] strip = new int[width * stripRows];
+            float[][] planes = new float[3][width * stripRows];
+            PlanarWriter[] writers = new PlanarWriter[separations.length];
+            try {
+                for (int k = 0; k < writers.length; k++)
+                    writers[k] = new PlanarWriter(outputs[k], width, height, separations[k].getKey(), sample, compress, stripRows);
+                for (int y = 0; y < height; y += stripRows) {
+                    int count = Math.min(stripRows, height - y);
+                    source.read(strip, count);
+                    Texture rows = new Texture(width, count, strip);
+                    for (int k = 0; k < writers.length; k++) {
+                        engine.coefficients(rows, separations[k], planes[0], planes[1], planes[2]);
+                        writers[k].write(planes[0], planes[1], planes[2], count);
+                    }
+                }
+                for (PlanarWriter writer : writers) writer.close();
+            } catch (IOException | RuntimeException e) {
+                // no file is left behind, even those of the separations that were complete
+                for (PlanarWriter writer : writers) {
+                    if (writer == null) continue;
+                    try {
+                        writer.abort();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                }
+                throw e;
+            }
+            return (long) width * height;
+        }
+    }
+
+    private static void join(int[] left, int[] right, int[] dst, int width, int rows) {
+        for (int r = 0; r < rows; r++) {
+            System.arraycopy(left, r * width, dst, 2 * r * width, width);
+            System.arraycopy(right, r * width, dst, (2 * r + 1) * width, width);
+        }
+    }
+
+    private static void pack(int[] rgb, byte[] dst, int count) {
+        for (int i = 0, j = 0; i < count; i++) {
+            int pixel = rgb[i];
+            dst[j++] = (byte) (pixel >> 16);
+            dst[j++] = (byte) (pixel >> 8);
+            dst[j++] = (byte) pixel;
+        }
+    }
+
+    private static void unpack(byte[] src, int[] rgb, int count) {
+        for (int i = 0, j = 0; i < count; i++, j += 3)
+            rgb[i] = (src[j] & 0xff) << 16 | (src[j + 1] & 0xff) << 8 | src[j + 2] & 0xff;
+    }
+
+    private static void png(Path output) throws IOException {
+        if (!output.getFileName().toString().toLowerCase().endsWith(".png"))
+            throw new IOException("Streamed output must be png, got " + output);
+        if (output.toAbsolutePath().getParent() != null) Files.createDirectories(output.toAbsolutePath().getParent());
+    }
+
+    private static Rows open(Path input) throws IOException {
+        if (input.getFileName().toString().toLowerCase().endsWith(".png")) {
+            InputStream stream = Files.newInputStream(input);
+            try {
+                PngReader reader = new PngReader(stream);
+                return new Rows() {
+                    public int getWidth() {
+                        return reader.getWidth();
+                    }
+
+                    public int getHeight() {
+                        return reader.getHeight();
+                    }
+
+                    public void read(int[] dst, int rows) throws IOException {
+                        reader.read(dst, 0, rows);
+                    }
+
+                    public void close() throws IOException {
+                        reader.close();
+                    }
+                };
+            } catch (IOException e) {
+                stream.close();
+                throw e;
+            }
+        }
+        Texture texture = new Texture(input.toString());
+        return new Rows() {
+            private int row;
+
+            public int getWidth() {
+                return texture.getWidth();
+            }
+
+            public int getHeight() {
+                return texture.getHeight();
+            }
+
+            public void read(int[] dst, int rows) {
+                for (int r = 0; r < rows; r++, row++) texture.getRow(row, dst, r * texture.getWidth());
+            }
+
+            public void close() {
+            }
+        };
+    }
+
+    private interface Rows extends AutoCloseable {
+        int getWidth();
+
+        int getHeight();
+
+        void read(int[] dst, int rows) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+}
@@ -0,0 +1,200 @@
+package com.hermant.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Process wide registry of stage metrics, every stage is also registered as an MXBean named
+ * {@code com.hermant.colors:type=Stage,name=<stage>}.
+ * <pre>
+ * try (Metrics.Sample sample = Metrics.start(Stage.DECODE)) {
+ *     ...
+ *     sample.setPixels(width * height);
+ * }
+ * </pre>
+ * Allocated bytes are those of the thread that opened the sample, plus those of work it hands to other threads
+ * through {@link Sample#run(Runnable)}, so samples running at the same time do not count each other's allocations.
+ */
+public final class Metrics {
+
+    public static final String DOMAIN = "com.hermant.colors";
+
+    private static final Map<Stage, StageMetrics> STAGES = new EnumMap<>(Stage.class);
+    private static final com.sun.management.ThreadMXBean THREADS;
+    private static final ThreadLocal<Sample> CURRENT = new ThreadLocal<>();
+    private static final Sample NONE = new Sample(null, null);
+
+    static {
+        for (Stage stage : Stage.values()) STAGES.put(stage, new StageMetrics(stage));
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = null;
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            allocations = (com.sun.management.ThreadMXBean) threads;
+            try {
+                if (!allocations.isThreadAllocatedMemorySupported()) allocations = null;
+                else if (!allocations.isThreadAllocatedMemoryEnabled()) allocations.setThreadAllocatedMemoryEnabled(true);
+            } catch (UnsupportedOperationException | SecurityException e) {
+                allocations = null;
+            }
+        }
+        THREADS = allocations;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            for (StageMetrics metrics : STAGES.values()) {
+                ObjectName name = new ObjectName(DOMAIN + ":type=Stage,name=" + metrics.getStage().getName());
+                if (!server.isRegistered(name)) server.registerMBean(metrics, name);
+            }
+        } catch (JMException | SecurityException e) {
+            System.err.println("Metrics not registered with JMX: " + e.getMessage());
+        }
+    }
+
+    private Metrics() { }
+
+    public static Sample start(Stage stage) {
+        Sample sample = new Sample(STAGES.get(stage), CURRENT.get());
+        CURRENT.set(sample);
+        return sample;
+    }
+
+    /**
+     * The innermost sample open on the calling thread, one recording nothing if there is none.
+     * Work handed to other threads runs through it to have its allocations counted.
+     */
+    public static Sample current() {
+        Sample sample = CURRENT.get();
+        return sample == null ? NONE : sample;
+    }
+
+    public static StageMetrics get(Stage stage) {
+        return STAGES.get(stage);
+    }
+
+    public static void reset() {
+        for (StageMetrics metrics : STAGES.values()) metrics.reset();
+    }
+
+    /**
+     * @return one line with the duration and throughput of the last sample of every given stage
+     */
+    public static String summary(Stage... stages) {
+        StringBuilder builder = new StringBuilder();
+        for (Stage stage : stages) {
+            StageMetrics metrics = STAGES.get(stage);
+            if (metrics.getCount() == 0) continue;
+            if (builder.length() > 0) builder.append(", ");
+            builder.append(String.format(Locale.ROOT, "%s %.0f ms %.1f MP/s",
+                    stage.getName(), metrics.getLastMillis(), metrics.getLastThroughput()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return all stages as a json object keyed by stage name
+     */
+    public static String toJson() {
+        StringBuilder builder = new StringBuilder("{");
+        for (StageMetrics metrics : STAGES.values()) {
+            if (builder.length() > 1) builder.append(',');
+            builder.append(String.format(Locale.ROOT,
+                    "\n  \"%s\": {\"count\": %d, \"totalMillis\": %.3f, \"pixels\": %d, \"throughput\": %.3f, " +
+                            "\"allocatedBytes\": %d, \"lastMillis\": %.3f, \"lastThroughput\": %.3f, \"medianMillis\": %.3f, " +
+                            "\"p90Millis\": %.3f, \"p99Millis\": %.3f, \"maxMillis\": %.3f}",
+                    metrics.getStage().getName(), metrics.getCount(), metrics.getTotalMillis(), metrics.getPixels(),
+                    metrics.getThroughput(), metrics.getAllocatedBytes(), metrics.getLastMillis(), metrics.getLastThroughput(),
+                    metrics.getMedianMillis(), metrics.getP90Millis(), metrics.getP99Millis(), metrics.getMaxMillis()));
+        }
+        return builder.append("\n}\n").toString();
+    }
+
+    /**
+     * Bytes allocated by the calling thread so far, -1 if the JVM does not tell.
+     */
+    private static long allocated() {
+        return THREADS == null ? -1 : THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * A single measurement of a stage, recorded when closed.
+     */
+    public static final class Sample implements AutoCloseable {
+        private final StageMetrics metrics;
+        // open on the same thread when this one was started, it includes this one
+        private final Sample parent;
+        private final Thread thread = Thread.currentThread();
+        private final LongAdder forked = new LongAdder();
+        private final long start, allocated;
+        private long pixels;
+        private boolean closed;
+
+        private Sample(StageMetrics metrics, Sample parent) {
+            this.metrics = metrics;
+            this.parent = parent;
+            this.allocated = metrics == null ? -1 : allocated();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Runs work on behalf of this sample, counting what it allocates if the calling thread
+         * is not the one that opened the sample, whose own allocations are counted anyway.
+         */
+        public void run(Runnable work) {
+            long before = fork();
+            try {
+                work.run();
+            } finally {
+                join(before);
+            }
+        }
+
+        /**
+         * Computes a value on behalf of this sample, see {@link #run(Runnable)}.
+         */
+        public <T> T get(Supplier<T> work) {
+            long before = fork();
+            try {
+                return work.get();
+            } finally {
+                join(before);
+            }
+        }
+
+        /**
+         * Bytes allocated by the calling thread so far if they are to be counted, -1 otherwise.
+         */
+        private long fork() {
+            return metrics == null || allocated < 0 || Thread.currentThread() == thread ? -1 : allocated();
+        }
+
+        private void join(long before) {
+            if (before < 0) return;
+            long bytes = Math.max(0, allocated() - before);
+            for (Sample sample = this; sample != null; sample = sample.parent) sample.forked.add(bytes);
+        }
+
+        public void setPixels(long pixels) {
+            this.pixels = pixels;
+        }
+
+        @Override
+        public void close() {
+            if (closed || metrics == null) return;
+            closed = true;
+            long nanos = System.nanoTime() - start;
+            long bytes = allocated < 0 ? -1 : Math.max(0, allocated() - allocated) + forked.sum();
+            if (Thread.currentThread() == thread && CURRENT.get() == this) {
+                if (parent == null) CURRENT.remove();
+                else CURRENT.set(parent);
+            }
+            metrics.record(nanos, pixels, bytes);
+        }
+    }
+}
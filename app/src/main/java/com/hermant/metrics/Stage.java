@@ -0,0 +1,14 @@
+package com.hermant.metrics;
+
+import java.util.Locale;
+
+/**
+ * Instrumented stages of processing an image.
+ */
+public enum Stage {
+    DECODE, RESAMPLE, PREVIEW, TILE, SEPARATE, ENCODE;
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,36 @@
+package com.hermant.metrics;
+
+/**
+ * Totals of a stage since start or last reset, percentiles are taken over the most recent samples.
+ */
+public interface StageMXBean {
+    long getCount();
+
+    double getTotalMillis();
+
+    long getPixels();
+
+    /**
+     * @return megapixels per second over all samples
+     */
+    double getThroughput();
+
+    /**
+     * @return bytes allocated by all threads while the stage ran, -1 if the JVM does not count them
+     */
+    long getAllocatedBytes();
+
+    double getLastMillis();
+
+    double getLastThroughput();
+
+    double getMedianMillis();
+
+    double getP90Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+
+    void reset();
+}
@@ -0,0 +1,108 @@
+package com.hermant.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Running totals of a stage and a ring of its most recent durations, from which percentiles are computed on demand.
+ */
+public class StageMetrics implements StageMXBean {
+
+    public static final int WINDOW = 1024;
+
+    private final Stage stage;
+    private final long[] durations = new long[WINDOW];
+    private long count, nanos, pixels, bytes, last, lastPixels;
+
+    StageMetrics(Stage stage) {
+        this.stage = stage;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    synchronized void record(long nanos, long pixels, long bytes) {
+        durations[(int) (count % WINDOW)] = nanos;
+        count++;
+        this.nanos += nanos;
+        this.pixels += pixels;
+        if (bytes < 0 || this.bytes < 0) this.bytes = -1;
+        else this.bytes += bytes;
+        last = nanos;
+        lastPixels = pixels;
+    }
+
+    @Override
+    public synchronized long getCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized double getTotalMillis() {
+        return nanos / 1e6;
+    }
+
+    @Override
+    public synchronized long getPixels() {
+        return pixels;
+    }
+
+    @Override
+    public synchronized double getThroughput() {
+        return nanos == 0 ? 0.0 : pixels * 1e3 / nanos;
+    }
+
+    @Override
+    public synchronized long getAllocatedBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized double getLastMillis() {
+        return last / 1e6;
+    }
+
+    @Override
+    public synchronized double getLastThroughput() {
+        return last == 0 ? 0.0 : lastPixels * 1e3 / last;
+    }
+
+    @Override
+    public double getMedianMillis() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public double getP90Millis() {
+        return percentile(0.9);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return percentile(1.0);
+    }
+
+    @Override
+    public synchronized void reset() {
+        count = nanos = pixels = bytes = last = lastPixels = 0;
+    }
+
+    /**
+     * @return duration in milliseconds below which the given fraction of the recent samples fall, nearest rank
+     */
+    public double percentile(double fraction) {
+        long[] recent;
+        synchronized (this) {
+            if (count == 0) return 0.0;
+            recent = Arrays.copyOf(durations, (int) Math.min(count, WINDOW));
+        }
+        Arrays.sort(recent);
+        int rank = (int) Math.ceil(fraction * recent.length);
+        return recent[Math.max(0, Math.min(recent.length - 1, rank - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,302 @@
+package com.hermant.server;
+
+import com.hermant.colors.ChannelSeparation;
+import com.hermant.colors.Profiles;
+import com.hermant.colors.Separation;
+import com.hermant.colors.SeparationTableCache;
+import com.hermant.graphics.SeparationEngine;
+import com.hermant.graphics.Texture;
+import com.hermant.io.PngEncoder;
+import com.hermant.io.PngFilter;
+import com.hermant.metrics.Metrics;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.zip.Deflater;
+
+/**
+ * Separates images posted over http, using nothing but the http server of the JDK.
+ * <pre>
+ * curl --data-binary @photo.jpg "http://localhost:8080/separate?separation=Lab&amp;profile=sRGB&amp;channel=a" -o a.png
+ * </pre>
+ * Every request runs on its own virtual thread when the JDK has them, on a cached thread pool otherwise.
+ * At most {@code concurrency} requests are processed at once and at most {@code queue} more wait for their turn,
+ * requests beyond that are turned away with 503 right away. Separations come from {@link Profiles}, so
+ * concurrent requests with the same parameters share the cached Lab separation or separation table.
+ * Bodies larger than {@code maxBody} bytes are refused with 413, by their Content-Length before they are read
+ * or as soon as a body without one grows past the limit.
+ */
+public class SeparationServer {
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_QUEUE = 64;
+    public static final long DEFAULT_MAX_BODY = 64L << 20;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "usage: colors serve [options]",
+            "  -b, --bind <address>      address to listen on (default 127.0.0.1)",
+            "  -p, --port <port>         port to listen on (default " + DEFAULT_PORT + ")",
+            "  -c, --concurrency <n>     requests separated at once (default 2)",
+            "  -q, --queue <n>           requests waiting for their turn before 503 (default " + DEFAULT_QUEUE + ")",
+            "  -t, --threads <n>         separation threads (default all processors)",
+            "  -m, --max-body <MB>       largest image accepted (default " + (DEFAULT_MAX_BODY >> 20) + ")",
+            "  -h, --help                print this message",
+            "",
+            "POST /separate?separation=&profile=&illuminant=&channel=&exact=&table=&level=&filter= with the image as body",
+            "  returns the png composite, or a single channel given by index or name",
+            "GET /metrics returns stage metrics as json");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final SeparationEngine engine;
+    private final Semaphore admitted, running;
+    private final long maxBody;
+
+    public SeparationServer(InetSocketAddress address, int concurrency, int queue, SeparationEngine engine) throws IOException {
+        this(address, concurrency, queue, engine, DEFAULT_MAX_BODY);
+    }
+
+    /**
+     * @param maxBody largest request body in bytes
+     */
+    public SeparationServer(InetSocketAddress address, int concurrency, int queue, SeparationEngine engine, long maxBody) throws IOException {
+        if (concurrency <= 0 || queue < 0) throw new IllegalArgumentException("Invalid concurrency " + concurrency + " or queue " + queue);
+        if (maxBody <= 0) throw new IllegalArgumentException("Invalid body limit " + maxBody);
+        this.engine = engine;
+        this.maxBody = maxBody;
+        this.admitted = new Semaphore(concurrency + queue);
+        this.running = new Semaphore(concurrency, true);
+        this.executor = executor();
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/separate", this::separate);
+        server.createContext("/metrics", this::metrics);
+    }
+
+    public static void main(String[] args) {
+        int code = run(args);
+        if (code != 0) System.exit(code);
+    }
+
+    /**
+     * Starts a server configured by command line arguments, which keeps the process running.
+     *
+     * @return 0 if the server was started or usage printed, other process exit code otherwise
+     */
+    public static int run(String[] args) {
+        String bind = "127.0.0.1";
+        int port = DEFAULT_PORT, concurrency = 2, queue = DEFAULT_QUEUE, threads = 0;
+        long maxBody = DEFAULT_MAX_BODY;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-h": case "--help": System.out.println(USAGE); return 0;
+                    case "-b": case "--bind": bind = value(args, ++i, arg); break;
+                    case "-p": case "--port": port = number(value(args, ++i, arg), arg, 0); break;
+                    case "-c": case "--concurrency": concurrency = number(value(args, ++i, arg), arg, 1); break;
+                    case "-q": case "--queue": queue = number(value(args, ++i, arg), arg, 0); break;
+                    case "-t": case "--threads": threads = number(value(args, ++i, arg), arg, 1); break;
+                    case "-m": case "--max-body": maxBody = (long) number(value(args, ++i, arg), arg, 1) << 20; break;
+                    default: throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        try {
+            SeparationServer server = new SeparationServer(new InetSocketAddress(bind, port), concurrency, queue,
+                    threads > 0 ? new SeparationEngine(threads) : new SeparationEngine(), maxBody);
+            server.start();
+            System.out.println("Listening on http://" + bind + ":" + server.getPort() + "/separate");
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Cannot listen on " + bind + ":" + port + ": " + e.getMessage());
+            return 1;
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits up to delay seconds for the ones in flight.
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void separate(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                send(exchange, 405, "text/plain", "Use POST with the image as body\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            String length = exchange.getRequestHeaders().getFirst("Content-Length");
+            if (length != null && length.matches("\\d+") && (length.length() > 18 || Long.parseLong(length) > maxBody)) {
+                tooLarge(exchange);
+                return;
+            }
+            if (!admitted.tryAcquire()) {
+                // read the upload anyway, so the client gets the response instead of a reset connection
+                exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, "text/plain", "Too many requests\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            byte[] png;
+            try {
+                // read before taking a slot, so a slow upload does not hold up separations,
+                // bodies without a Content-Length are cut one byte past the limit
+                byte[] body = exchange.getRequestBody().readNBytes((int) Math.min(maxBody + 1, Integer.MAX_VALUE - 8));
+                if (body.length > maxBody) {
+                    tooLarge(exchange);
+                    return;
+                }
+                running.acquire();
+                try {
+                    png = separate(query(exchange), new ByteArrayInputStream(body));
+                } finally {
+                    running.release();
+                }
+            } catch (IllegalArgumentException | IOException e) {
+                send(exchange, 400, "text/plain", (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, "text/plain", "Interrupted\n".getBytes(StandardCharsets.UTF_8));
+                return;
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                send(exchange, 500, "text/plain", (e + "\n").getBytes(StandardCharsets.UTF_8));
+                return;
+            } finally {
+                admitted.release();
+            }
+            send(exchange, 200, "image/png", png);
+        }
+    }
+
+    private byte[] separate(Map<String, String> query, InputStream body) throws IOException {
+        String name = query.getOrDefault("separation", "RGB");
+        String channel = query.getOrDefault("channel", "composite");
+        int level = number(query.getOrDefault("level", String.valueOf(Deflater.DEFAULT_COMPRESSION)), "level", -1);
+        PngFilter filter = PngFilter.valueOf(query.getOrDefault("filter", "ADAPTIVE").toUpperCase(Locale.ROOT));
+        Separation separation = Profiles.getSeparation(name, query.getOrDefault("profile", "sRGB"),
+                query.get("illuminant"), !Boolean.parseBoolean(query.get("exact")));
+        if (Boolean.parseBoolean(query.get("table")) && separation instanceof ChannelSeparation)
+            separation = SeparationTableCache.getDefault().get((ChannelSeparation) separation);
+        int index = channel.equals("composite") ? -1 : channel(name, channel);
+        Texture texture = new Texture(body);
+        int width = texture.getWidth(), height = texture.getHeight();
+        int[] pixels;
+        if (index < 0) {
+            pixels = new int[4 * width * height];
+            engine.composite(texture, separation, pixels);
+            width *= 2;
+            height *= 2;
+        } else {
+            int[][] planes = new int[3][width * height];
+            engine.separate(texture, separation, planes[0], planes[1], planes[2]);
+            pixels = planes[index];
+        }
+        ByteArrayOutputStream png = new ByteArrayOutputStream(width * height);
+        new PngEncoder(level, filter).encode(pixels, width, height, png);
+        return png.toByteArray();
+    }
+
+    private void metrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            send(exchange, 200, "application/json", Metrics.toJson().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static int channel(String separation, String channel) {
+        if (channel.matches("[0-2]")) return channel.charAt(0) - '0';
+        String[] names = Profiles.CHANNELS.get(separation);
+        if (names != null) {
+            for (int i = 0; i < names.length; i++) if (names[i].equalsIgnoreCase(channel)) return i;
+        }
+        throw new IllegalArgumentException("Unknown channel " + channel + " of " + separation
+                + ", expected composite, 0, 1, 2 or one of " + Arrays.toString(names));
+    }
+
+    private void tooLarge(HttpExchange exchange) throws IOException {
+        // the rest of the body is not read, the connection is closed after the response
+        exchange.getResponseHeaders().set("Connection", "close");
+        send(exchange, 413, "text/plain", ("Image larger than " + maxBody + " bytes\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream stream = exchange.getResponseBody()) {
+            stream.write(body);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> result = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) return result;
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) continue;
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals), value = equals < 0 ? "" : pair.substring(equals + 1);
+            result.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    /**
+     * Virtual thread per task executor on JDKs that have it, looked up reflectively to keep building on older ones.
+     */
+    private static ExecutorService executor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "http");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) throw new IllegalArgumentException("Missing value of " + option);
+        return args[i];
+    }
+
+    private static int number(String value, String option, int minimum) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= minimum) return result;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new IllegalArgumentException(option + " expects a number of at least " + minimum + ", got " + value);
+    }
+}
@@ -0,0 +1,103 @@
+package com.hermant.util;
+
+import java.util.Arrays;
+
+/**
+ * Map of int keys to int values without boxing, open addressing with linear probing in a power of two table
+ * kept at most half full. Not thread safe, though reading it from many threads once filled is.
+ */
+public class IntIntHashMap {
+
+    private static final int FREE = 0;
+
+    private int[] keys, values;
+    private int mask, size;
+    // key 0 marks free slots, so it is kept aside
+    private boolean hasZero;
+    private int zeroValue;
+
+    public IntIntHashMap() {
+        this(16);
+    }
+
+    /**
+     * @param expected number of keys held without growing
+     */
+    public IntIntHashMap(int expected) {
+        if (expected < 0) throw new IllegalArgumentException("Negative size " + expected);
+        int capacity = Integer.highestOneBit(Math.max(4, expected) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return value mapped to key, or missing if there is none
+     */
+    public int get(int key, int missing) {
+        if (key == FREE) return hasZero ? zeroValue : missing;
+        for (int i = slot(key); ; i = i + 1 & mask) {
+            int k = keys[i];
+            if (k == key) return values[i];
+            if (k == FREE) return missing;
+        }
+    }
+
+    public boolean containsKey(int key) {
+        if (key == FREE) return hasZero;
+        for (int i = slot(key); ; i = i + 1 & mask) {
+            int k = keys[i];
+            if (k == key) return true;
+            if (k == FREE) return false;
+        }
+    }
+
+    public void put(int key, int value) {
+        if (key == FREE) {
+            if (!hasZero) size++;
+            hasZero = true;
+            zeroValue = value;
+            return;
+        }
+        int i = slot(key);
+        for (int k; (k = keys[i]) != FREE; i = i + 1 & mask) {
+            if (k == key) {
+                values[i] = value;
+                return;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size * 2 > keys.length) grow();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        hasZero = false;
+        size = 0;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys, oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            int key = oldKeys[j];
+            if (key == FREE) continue;
+            int i = slot(key);
+            while (keys[i] != FREE) i = i + 1 & mask;
+            keys[i] = key;
+            values[i] = oldValues[j];
+        }
+    }
+
+    private int slot(int key) {
+        // fibonacci hashing spreads the channels of packed colors over the high bits
+        return (key * 0x9E3779B9 >>> 16 ^ key * 0x9E3779B9) & mask;
+    }
+}
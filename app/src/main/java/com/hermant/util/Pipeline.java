@@ -0,0 +1,230 @@
+package com.hermant.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Passes items through stages, each run by its own threads and connected to the next one by a bounded queue,
+ * so a slow stage holds back the ones before it instead of piling up items. Items are handed to the sink
+ * on the calling thread in the order they were given, whatever order the stages finish them in.
+ * Items enter the first stage only while fewer than the stages can hold are waiting for the sink, so items
+ * finished ahead of a slow one do not pile up waiting for their turn either.
+ * An {@link Error} thrown by a step stops the pipeline and is rethrown by {@link #run}.
+ * <p>
+ * Every stage records the time its threads spent working, waiting for input and waiting for room
+ * in the next queue, the stage busy most of the time is the bottleneck.
+ */
+public class Pipeline<T> {
+
+    @FunctionalInterface
+    public interface Step<T> {
+        void apply(T item) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Sink<T> {
+        /**
+         * @param error exception thrown by the stage that failed the item, the following stages skip it, or null
+         */
+        void accept(T item, Exception error) throws Exception;
+    }
+
+    private static final Slot<?> END = new Slot<>(-1, null);
+
+    private final int capacity;
+    private final List<Stage<T>> stages = new ArrayList<>();
+    private Stage<T> sink;
+    private long nanos;
+
+    /**
+     * @param capacity items waiting between two stages
+     */
+    public Pipeline(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Queue capacity must be positive");
+        this.capacity = capacity;
+    }
+
+    public Pipeline<T> stage(String name, int threads, Step<T> step) {
+        if (threads <= 0) throw new IllegalArgumentException("Stage " + name + " needs at least one thread");
+        stages.add(new Stage<>(name, threads, step));
+        return this;
+    }
+
+    /**
+     * Runs all items through the stages and hands them to sink in order, returns once the last one was handed over.
+     * An exception thrown by sink stops the pipeline and is rethrown once the stage threads are done.
+     *
+     * @param name name of the sink in the report
+     */
+    public void run(List<T> items, String name, Sink<T> sink) throws Exception {
+        if (stages.isEmpty()) throw new IllegalStateException("No stages");
+        this.sink = new Stage<>(name, 1, null);
+        long start = System.nanoTime();
+        List<BlockingQueue<Slot<T>>> queues = new ArrayList<>();
+        queues.add(new LinkedBlockingQueue<>());
+        for (int i = 0; i < stages.size(); i++) queues.add(new ArrayBlockingQueue<>(capacity));
+        // items between the first stage and the sink, as many as the stage threads and queues hold
+        int window = stages.size() * capacity;
+        for (Stage<T> stage : stages) window += stage.threads;
+        Semaphore admitted = new Semaphore(window);
+        AtomicReference<Error> failure = new AtomicReference<>();
+        Thread caller = Thread.currentThread();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(start(() -> feed(items, queues.get(0), admitted), "feed"));
+        for (int s = 0; s < stages.size(); s++) {
+            Stage<T> stage = stages.get(s);
+            BlockingQueue<Slot<T>> in = queues.get(s), out = queues.get(s + 1);
+            int downstream = s + 1 < stages.size() ? stages.get(s + 1).threads : 1;
+            AtomicInteger live = new AtomicInteger(stage.threads);
+            for (int t = 0; t < stage.threads; t++) {
+                threads.add(start(() -> {
+                    try {
+                        stage.work(in, out, live, downstream);
+                    } catch (Error e) {
+                        // the item never reaches the sink, wake the caller up instead of leaving it waiting for it
+                        if (failure.compareAndSet(null, e)) caller.interrupt();
+                    }
+                }, stage.name + "-" + t));
+            }
+        }
+        try {
+            drain(queues.get(stages.size()), sink, admitted);
+        } catch (Exception e) {
+            Error error = failure.get();
+            if (error == null) throw e;
+            Thread.interrupted();
+            throw error;
+        } finally {
+            for (Thread thread : threads) thread.interrupt();
+            for (Thread thread : threads) thread.join();
+            nanos = System.nanoTime() - start;
+        }
+    }
+
+    private void feed(List<T> items, BlockingQueue<Slot<T>> out, Semaphore admitted) {
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                admitted.acquire();
+                out.put(new Slot<>(i, items.get(i)));
+            }
+            for (int i = 0; i < stages.get(0).threads; i++) out.put(end());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain(BlockingQueue<Slot<T>> in, Sink<T> sink, Semaphore admitted) throws Exception {
+        Map<Integer, Slot<T>> pending = new HashMap<>();
+        int next = 0;
+        while (true) {
+            long waiting = System.nanoTime();
+            Slot<T> slot = in.take();
+            long taken = System.nanoTime();
+            this.sink.starved.addAndGet(taken - waiting);
+            this.sink.depth.addAndGet(in.size());
+            this.sink.takes.incrementAndGet();
+            if (slot == END) break;
+            pending.put(slot.index, slot);
+            for (Slot<T> ready; (ready = pending.remove(next)) != null; next++) {
+                sink.accept(ready.item, ready.error);
+                admitted.release();
+            }
+            this.sink.busy.addAndGet(System.nanoTime() - taken);
+        }
+    }
+
+    /**
+     * @return one line per stage with its threads and the share of their time spent working, waiting for input,
+     * waiting for room in the next queue, and the average number of items queued in front of it
+     */
+    public String report() {
+        StringBuilder builder = new StringBuilder();
+        for (Stage<T> stage : stages) builder.append(stage.report(nanos)).append(System.lineSeparator());
+        if (sink != null) builder.append(sink.report(nanos)).append(System.lineSeparator());
+        return builder.toString();
+    }
+
+    private static Thread start(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Slot<T> end() {
+        return (Slot<T>) END;
+    }
+
+    private static final class Slot<T> {
+        private final int index;
+        private final T item;
+        private Exception error;
+
+        private Slot(int index, T item) {
+            this.index = index;
+            this.item = item;
+        }
+    }
+
+    private static final class Stage<T> {
+        private final String name;
+        private final int threads;
+        private final Step<T> step;
+        private final AtomicLong busy = new AtomicLong(), starved = new AtomicLong(), blocked = new AtomicLong();
+        private final AtomicLong depth = new AtomicLong(), takes = new AtomicLong();
+
+        private Stage(String name, int threads, Step<T> step) {
+            this.name = name;
+            this.threads = threads;
+            this.step = step;
+        }
+
+        private void work(BlockingQueue<Slot<T>> in, BlockingQueue<Slot<T>> out, AtomicInteger live, int downstream) {
+            try {
+                while (true) {
+                    long waiting = System.nanoTime();
+                    Slot<T> slot = in.take();
+                    long taken = System.nanoTime();
+                    starved.addAndGet(taken - waiting);
+                    depth.addAndGet(in.size());
+                    takes.incrementAndGet();
+                    if (slot == END) break;
+                    if (slot.error == null) {
+                        try {
+                            step.apply(slot.item);
+                        } catch (Exception e) {
+                            slot.error = e;
+                        }
+                    }
+                    long done = System.nanoTime();
+                    busy.addAndGet(done - taken);
+                    out.put(slot);
+                    blocked.addAndGet(System.nanoTime() - done);
+                }
+                if (live.decrementAndGet() == 0) {
+                    for (int i = 0; i < downstream; i++) out.put(end());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private String report(long nanos) {
+            double total = Math.max(1, nanos) * (double) threads;
+            return String.format(Locale.ROOT, "%-10s %2d threads, busy %3.0f%%, starved %3.0f%%, blocked %3.0f%%, queue %.1f",
+                    name, threads, 100 * busy.get() / total, 100 * starved.get() / total, 100 * blocked.get() / total,
+                    takes.get() == 0 ? 0.0 : depth.get() / (double) takes.get());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.hermant;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures heap bytes allocated by the calling thread, for tests asserting allocation budgets of hot paths.
+ * Paths are run until compiled first, vector kernels allocate their vectors until C2 eliminates them.
+ */
+public final class Allocations {
+
+    private static final int WARMUP_RUNS = 400;
+    private static final int MEASURED_RUNS = 20;
+
+    private Allocations() {
+    }
+
+    /**
+     * Fails unless run, processing pixels pixels, allocates at most budget bytes per pixel once warmed up.
+     * The least allocating of a few runs counts, so a collection or a recompilation in between does not fail the test.
+     */
+    public static void assertBudget(String name, double budget, long pixels, Runnable run) {
+        com.sun.management.ThreadMXBean threads = threads();
+        long id = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_RUNS; i++) run.run();
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            long before = threads.getThreadAllocatedBytes(id);
+            run.run();
+            least = Math.min(least, threads.getThreadAllocatedBytes(id) - before);
+        }
+        double perPixel = (double) least / pixels;
+        assertTrue(String.format(Locale.ROOT, "%s allocates %.3f bytes per pixel, its budget is %.3f", name, perPixel, budget),
+                perPixel <= budget);
+    }
+
+    /**
+     * Packed rgb test image of width x height: every 8 bit level of each channel, greys, primaries and noise.
+     */
+    public static int[] image(int width, int height) {
+        int[] pixels = new int[width * height];
+        Random random = new Random(42);
+        for (int i = 0; i < pixels.length; i++) {
+            int level = i & 0xff;
+            switch (i / 256 % 8) {
+                case 0: pixels[i] = level << 16; break;
+                case 1: pixels[i] = level << 8; break;
+                case 2: pixels[i] = level; break;
+                case 3: pixels[i] = level * 0x010101; break;
+                case 4: pixels[i] = new int[]{0x000000, 0xffffff, 0xff0000, 0x00ff00, 0x0000ff, 0xffff00, 0x00ffff, 0xff00ff}[i & 7]; break;
+                default: pixels[i] = random.nextInt(1 << 24);
+            }
+        }
+        return pixels;
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean result = (com.sun.management.ThreadMXBean) threads;
+        Assume.assumeTrue(result.isThreadAllocatedMemorySupported());
+        if (!result.isThreadAllocatedMemoryEnabled()) result.setThreadAllocatedMemoryEnabled(true);
+        return result;
+    }
+}
@@ -0,0 +1,24 @@
+package com.hermant.colors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class LabSeparationTest {
+
+    @Test
+    public void recentlyUsedSeparationsSurviveEviction() {
+        LabSeparation hot = of(2.2f), cold = of(1.7f);
+        // far more parameter sets than are kept, the hot one asked for all along
+        for (int i = 0; i < 1000; i++) {
+            of(1.0f + i / 1000.0f);
+            assertSame(hot, of(2.2f));
+        }
+        assertNotSame(cold, of(1.7f));
+    }
+
+    private static LabSeparation of(float gamma) {
+        return LabSeparation.of(0.64f, 0.33f, 0.3f, 0.6f, 0.15f, 0.06f, 0.3127f, 0.329f, gamma, true);
+    }
+}
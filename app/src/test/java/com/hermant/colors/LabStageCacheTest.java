@@ -0,0 +1,66 @@
+package com.hermant.colors;
+
+import com.hermant.Allocations;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LabStageCacheTest {
+
+    private static final int[] IMAGE = Allocations.image(256, 64);
+
+    @Test
+    public void stagesMatchSeparation() {
+        LabStageCache cache = new LabStageCache(LabStageCache.DEFAULT_BUDGET);
+        for (float gamma : new float[]{2.2f, 1.8f}) {
+            for (float x_w : new float[]{0.3127f, 0.34567f}) {
+                for (boolean lut : new boolean[]{true, false}) {
+                    LabSeparation separation = LabSeparation.of(0.64f, 0.33f, 0.3f, 0.6f, 0.15f, 0.06f, x_w, 0.329f, gamma, lut);
+                    int[][] expected = new int[3][IMAGE.length], actual = new int[3][IMAGE.length];
+                    separation.separate(IMAGE, 0, expected[0], 0, expected[1], 0, expected[2], 0, IMAGE.length);
+                    cache.separate("image", IMAGE.length, () -> IMAGE, separation, actual[0], actual[1], actual[2]);
+                    for (int c = 0; c < 3; c++) assertArrayEquals(separation.getKey() + " channel " + c, expected[c], actual[c]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parallelStagesMatchSerial() {
+        LabSeparation separation = LabSeparation.of(0.64f, 0.33f, 0.3f, 0.6f, 0.15f, 0.06f, 0.3127f, 0.329f, 2.2f, true);
+        int[][] expected = new int[3][IMAGE.length], actual = new int[3][IMAGE.length];
+        new LabStageCache(LabStageCache.DEFAULT_BUDGET).separate("image", IMAGE.length, () -> IMAGE, separation,
+                expected[0], expected[1], expected[2]);
+        // ranges of odd lengths, not aligned to blocks
+        LabStageCache.Ranges parallel = (length, range) -> IntStream.range(0, (length + 999) / 1000).parallel()
+                .forEach(i -> range.process(i * 1000, Math.min(length, (i + 1) * 1000)));
+        new LabStageCache(LabStageCache.DEFAULT_BUDGET).separate("image", IMAGE.length, () -> IMAGE, separation,
+                actual[0], actual[1], actual[2], parallel);
+        for (int c = 0; c < 3; c++) assertArrayEquals("channel " + c, expected[c], actual[c]);
+    }
+
+    @Test
+    public void onlyStagesAfterTheChangedParameterRun() {
+        LabStageCache cache = new LabStageCache(LabStageCache.DEFAULT_BUDGET);
+        AtomicInteger reads = new AtomicInteger();
+        int[] dst0 = new int[IMAGE.length], dst1 = new int[IMAGE.length], dst2 = new int[IMAGE.length];
+        long planes = 3L * Float.BYTES * IMAGE.length;
+        cache.separate("image", IMAGE.length, () -> { reads.incrementAndGet(); return IMAGE; },
+                LabSeparation.of(0.64f, 0.33f, 0.3f, 0.6f, 0.15f, 0.06f, 0.3127f, 0.329f, 2.2f, true), dst0, dst1, dst2);
+        assertEquals(2 * planes, cache.getWeight());
+        // the white point needs new xyz planes only
+        cache.separate("image", IMAGE.length, () -> { reads.incrementAndGet(); return IMAGE; },
+                LabSeparation.of(0.64f, 0.33f, 0.3f, 0.6f, 0.15f, 0.06f, 0.34567f, 0.3585f, 2.2f, true), dst0, dst1, dst2);
+        assertEquals(1, reads.get());
+        assertEquals(3 * planes, cache.getWeight());
+        // exact cube roots need none
+        cache.separate("image", IMAGE.length, () -> { reads.incrementAndGet(); return IMAGE; },
+                LabSeparation.of(0.64f, 0.33f, 0.3f, 0.6f, 0.15f, 0.06f, 0.34567f, 0.3585f, 2.2f, false), dst0, dst1, dst2);
+        assertEquals(1, reads.get());
+        assertEquals(3 * planes, cache.getWeight());
+    }
+}
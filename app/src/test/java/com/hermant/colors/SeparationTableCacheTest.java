@@ -0,0 +1,110 @@
+package com.hermant.colors;
+
+import com.hermant.Allocations;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SeparationTableCacheTest {
+
+    private static final int[] IMAGE = Allocations.image(256, 64);
+    private static final FileTime WRITTEN = FileTime.fromMillis(1_000_000_000_000L);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ChannelSeparation separation = (ChannelSeparation) Profiles.getSeparation("YCbCr");
+
+    @Test
+    public void tablesArePersistedAndMapped() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        SeparationTableCache cache = new SeparationTableCache(directory, SeparationTable.BYTES);
+        // concurrent callers of one key share a single build
+        List<SeparationTable> tables = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<SeparationTable>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) futures.add(executor.submit(() -> cache.get(separation)));
+            for (Future<SeparationTable> future : futures) tables.add(future.get());
+        } finally {
+            executor.shutdown();
+        }
+        for (SeparationTable table : tables) assertSame(tables.get(0), table);
+        assertMatches(tables.get(0));
+        Path file = single(directory);
+        // named after the sha-256 of the key
+        assertTrue(file.getFileName().toString().matches("[0-9a-f]{64}\\.lut"));
+        assertEquals(16 + SeparationTable.BYTES, Files.size(file));
+        // another run maps the file rather than writing it again
+        Files.setLastModifiedTime(file, WRITTEN);
+        SeparationTable mapped = new SeparationTableCache(directory, SeparationTable.BYTES).get(separation);
+        assertMatches(mapped);
+        assertEquals(WRITTEN, Files.getLastModifiedTime(single(directory)));
+        // the budget holds a single table, the other is mapped again
+        ChannelSeparation rgb = (ChannelSeparation) Profiles.getSeparation("RGB");
+        cache.get(rgb);
+        assertNotSame(tables.get(0), cache.get(separation));
+        assertSame(cache.get(separation), cache.get(separation));
+    }
+
+    @Test
+    public void damagedTablesAreRebuilt() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        new SeparationTableCache(directory, SeparationTable.BYTES).get(separation);
+        Path file = single(directory);
+        // as if written by another version
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Integer.BYTES), Integer.BYTES);
+        }
+        Files.setLastModifiedTime(file, WRITTEN);
+        assertMatches(new SeparationTableCache(directory, SeparationTable.BYTES).get(separation));
+        assertEquals(file, single(directory));
+        assertNotEquals(WRITTEN, Files.getLastModifiedTime(file));
+        assertEquals(16 + SeparationTable.BYTES, Files.size(file));
+        // and so is a truncated one
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(SeparationTable.BYTES);
+        }
+        assertMatches(new SeparationTableCache(directory, SeparationTable.BYTES).get(separation));
+        assertEquals(16 + SeparationTable.BYTES, Files.size(single(directory)));
+    }
+
+    private void assertMatches(SeparationTable table) {
+        int[][] expected = new int[3][IMAGE.length], actual = new int[3][IMAGE.length];
+        separation.separate(IMAGE, 0, expected[0], 0, expected[1], 0, expected[2], 0, IMAGE.length);
+        table.separate(IMAGE, 0, actual[0], 0, actual[1], 0, actual[2], 0, IMAGE.length);
+        for (int c = 0; c < 3; c++) assertArrayEquals("channel " + c, expected[c], actual[c]);
+    }
+
+    /**
+     * The only file of the directory, no temporary file is left behind.
+     */
+    private static Path single(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            Object[] all = files.toArray();
+            assertEquals(1, all.length);
+            return (Path) all[0];
+        }
+    }
+}
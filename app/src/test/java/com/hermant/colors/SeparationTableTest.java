@@ -0,0 +1,42 @@
+package com.hermant.colors;
+
+import com.hermant.Allocations;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class SeparationTableTest {
+
+    private static final int[] IMAGE = Allocations.image(256, 64);
+
+    private static ChannelSeparation separation;
+    private static SeparationTable table;
+
+    @BeforeClass
+    public static void build() {
+        separation = (ChannelSeparation) Profiles.getSeparation("YCbCr");
+        // direct, so the 192 MB table does not strain the test heap
+        IntBuffer buffer = ByteBuffer.allocateDirect((int) SeparationTable.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        SeparationTable.fill(separation, buffer);
+        table = new SeparationTable(separation.getKey(), buffer);
+    }
+
+    @Test
+    public void lookupDoesNotAllocate() {
+        int[] dst0 = new int[IMAGE.length], dst1 = new int[IMAGE.length], dst2 = new int[IMAGE.length];
+        Allocations.assertBudget("table", 0, IMAGE.length, () -> table.separate(IMAGE, 0, dst0, 0, dst1, 0, dst2, 0, IMAGE.length));
+    }
+
+    @Test
+    public void lookupMatchesSeparation() {
+        int[][] expected = new int[3][IMAGE.length], actual = new int[3][IMAGE.length];
+        separation.separate(IMAGE, 0, expected[0], 0, expected[1], 0, expected[2], 0, IMAGE.length);
+        table.separate(IMAGE, 0, actual[0], 0, actual[1], 0, actual[2], 0, IMAGE.length);
+        for (int c = 0; c < 3; c++) assertArrayEquals("channel " + c, expected[c], actual[c]);
+    }
+}
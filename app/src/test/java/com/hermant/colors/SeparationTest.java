@@ -0,0 +1,216 @@
+package com.hermant.colors;
+
+import com.hermant.Allocations;
+import org.joml.Matrix3f;
+import org.joml.Vector3f;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Bulk separation kernels, scalar or vector depending on the runtime, must not allocate and must match
+ * the per pixel {@link Color3f} separations they replaced, kept here as the reference.
+ */
+@RunWith(Parameterized.class)
+public class SeparationTest {
+
+    private static final int WIDTH = 256, HEIGHT = 64;
+    private static final int[] IMAGE = Allocations.image(WIDTH, HEIGHT);
+
+    @Parameterized.Parameters(name = "{0}")
+    public static List<String> separations() {
+        return Arrays.asList("RGB", "YCbCr", "HSV", "Lab sRGB", "Lab sRGB exact", "Lab Apple RGB", "Lab Wide Gamut");
+    }
+
+    private final String name;
+    private final Separation separation;
+
+    public SeparationTest(String name) {
+        this.name = name;
+        this.separation = create(name);
+    }
+
+    static Separation create(String name) {
+        if (name.startsWith("Lab ")) {
+            boolean exact = name.endsWith(" exact");
+            String profile = name.substring("Lab ".length(), exact ? name.length() - " exact".length() : name.length());
+            return Profiles.getSeparation("Lab", profile, null, !exact);
+        }
+        return Profiles.getSeparation(name);
+    }
+
+    @Test
+    public void bulkSeparationDoesNotAllocate() {
+        int[] dst0 = new int[IMAGE.length], dst1 = new int[IMAGE.length], dst2 = new int[IMAGE.length];
+        Allocations.assertBudget(name, 0, IMAGE.length,
+                () -> separation.separate(IMAGE, 0, dst0, 0, dst1, 0, dst2, 0, IMAGE.length));
+    }
+
+    @Test
+    public void bulkSeparationMatchesPerPixelSeparation() {
+        // lookup tables and the reordered Lab arithmetic may round a channel to the neighbouring step
+        int steps = name.startsWith("Lab ") ? 1 : 0;
+        assertWithinSteps(name, separate(reference(name)), separate(separation), steps);
+    }
+
+    @Test
+    public void packedCoefficientsMatchPlanarKernel() {
+        ChannelSeparation channels = (ChannelSeparation) separation;
+        int length = 1024;
+        float[] r = new float[length], g = new float[length], b = new float[length];
+        float[][] expected = new float[3][length], actual = new float[3][length];
+        for (int offset = 0; offset < IMAGE.length; offset += length) {
+            for (int i = 0; i < length; i++) {
+                int rgb = IMAGE[offset + i];
+                r[i] = ((rgb >> 16) & 0xff) / 255.0f;
+                g[i] = ((rgb >> 8) & 0xff) / 255.0f;
+                b[i] = (rgb & 0xff) / 255.0f;
+            }
+            channels.separate(r, g, b, expected[0], expected[1], expected[2], 0, length);
+            channels.separate(IMAGE, offset, actual[0], actual[1], actual[2], length);
+            for (int c = 0; c < 3; c++) assertArrayEquals(name + " coefficient " + c, expected[c], actual[c], 0.0f);
+        }
+    }
+
+    @Test
+    public void lookupTablesStayWithinAStepOfExactLab() {
+        if (!(separation instanceof LabSeparation) || !((LabSeparation) separation).isLut()) return;
+        assertWithinSteps(name, separate(create(name + " exact")), separate(separation), 1);
+    }
+
+    private static void assertWithinSteps(String name, int[][] expected, int[][] actual, int steps) {
+        for (int c = 0; c < 3; c++) {
+            for (int i = 0; i < IMAGE.length; i++) {
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = Math.abs((expected[c][i] >> shift & 0xff) - (actual[c][i] >> shift & 0xff));
+                    assertTrue(name + " channel " + c + " differs by " + difference + " at " + Integer.toHexString(IMAGE[i]), difference <= steps);
+                }
+            }
+        }
+    }
+
+    private static int[][] separate(Separation separation) {
+        int[][] planes = new int[3][IMAGE.length];
+        separation.separate(IMAGE, 0, planes[0], 0, planes[1], 0, planes[2], 0, IMAGE.length);
+        return planes;
+    }
+
+    /**
+     * The per pixel separation as it was first written, Color3f in and out, run through the interface default.
+     */
+    private static Separation reference(String name) {
+        switch (name) {
+            case "RGB": {
+                Color3f black = new Color3f(0, 0, 0);
+                Color3f red = new Color3f(255, 0, 0);
+                Color3f green = new Color3f(0, 255, 0);
+                Color3f blue = new Color3f(0, 0, 255);
+                Function<float[], Color3f[]> interpolate = coefficients -> new Color3f[]{Color3f.interpolate(black, red, coefficients[0]), Color3f.interpolate(black, green, coefficients[1]), Color3f.interpolate(black, blue, coefficients[2])};
+                return color -> interpolate.apply(new float[]{color.red, color.green, color.blue});
+            }
+            case "YCbCr": {
+                Color3f chartreuse = new Color3f(127, 255, 0);
+                Color3f violet = new Color3f(127, 0, 255);
+                Color3f spring_green = new Color3f(0, 255, 127);
+                Color3f rose = new Color3f(255, 0, 127);
+                Function<float[], Color3f[]> interpolate = coefficients -> new Color3f[]{new Color3f(coefficients[0]), Color3f.interpolate(chartreuse, violet, coefficients[1]), Color3f.interpolate(spring_green, rose, coefficients[2])};
+                return color -> {
+                    float y, cb, cr;
+                    y = 0.0625f + 0.25678906f * color.red + 0.50412893f * color.green + 0.09790625f * color.blue;
+                    cb = 0.5f - 0.14822266f * color.red - 0.2909922f * color.green + 0.43921486f * color.blue;
+                    cr = 0.5f + 0.43921486f * color.red - 0.36778906f * color.green - 0.07142578f * color.blue;
+                    return interpolate.apply(new float[]{y, cb, cr});
+                };
+            }
+            case "HSV": {
+                Function<float[], Color3f[]> interpolate = coefficients -> new Color3f[]{new Color3f(coefficients[0]), new Color3f(coefficients[1]), new Color3f(coefficients[2])};
+                return color -> {
+                    float min, max, delta;
+                    float h, s, v;
+                    min = Math.min(color.blue, Math.min(color.red, color.green));
+                    max = Math.max(color.blue, Math.max(color.red, color.green));
+                    delta = max - min;
+                    v = max;
+                    if (delta < 0.0000001f) {
+                        s = 0;
+                        h = 0;
+                        return interpolate.apply(new float[]{h, s, v});
+                    }
+                    if (max > 0.0f) {
+                        s = (delta / max);
+                    } else {
+                        s = 0.0f;
+                        h = Float.NaN;
+                        return interpolate.apply(new float[]{h, s, v});
+                    }
+                    if (color.red == max) {
+                        h = 6.0f + (color.green - color.blue) / delta;
+                    } else if (color.green == max) {
+                        h = 2.0f + (color.blue - color.red) / delta;
+                    } else {
+                        h = 4.0f + (color.red - color.green) / delta;
+                    }
+                    h = h / 6.0f;
+                    if (h < 0.0f) h += 1.0f;
+                    if (h > 1.0f) h -= 1.0f;
+                    return interpolate.apply(new float[]{h, s, v});
+                };
+            }
+            default: {
+                String profile = name.substring("Lab ".length()).replace(" exact", "");
+                double[] p = Profiles.COLOR_SPACES.get(profile);
+                return lab((float) p[0], (float) p[1], (float) p[2], (float) p[3], (float) p[4], (float) p[5], (float) p[6], (float) p[7], (float) p[8]);
+            }
+        }
+    }
+
+    private static Separation lab(float x_r, float y_r, float x_g, float y_g, float x_b, float y_b, float x_w, float y_w, float gamma) {
+        final Color3f azure = new Color3f(0, 127, 255);
+        final Color3f orange = new Color3f(255, 127, 0);
+        final Color3f spring_green = new Color3f(0, 255, 127);
+        final Color3f rose = new Color3f(255, 0, 127);
+        final float X_r = x_r / y_r;
+        final float Y_r = 1.0f;
+        final float Z_r = (1.0f - x_r - y_r) / y_r;
+        final float X_g = x_g / y_g;
+        final float Y_g = 1.0f;
+        final float Z_g = (1.0f - x_g - y_g) / y_g;
+        final float X_b = x_b / y_b;
+        final float Y_b = 1.0f;
+        final float Z_b = (1.0f - x_b - y_b) / y_b;
+        final float X_w = x_w / y_w;
+        final float Y_w = 1.0f;
+        final float Z_w = (1.0f - x_w - y_w) / y_w;
+        final float e = 0.008856f;
+        final float k = 903.3f;
+        final Function<Float, Float> f = x -> (x > e) ? (float) Math.pow(x, 0.33333333f) : (k * x + 16f) / 116f;
+        final Vector3f S = new Matrix3f(X_r, X_g, X_b, Y_r, Y_g, Y_b, Z_r, Z_g, Z_b).invert().transformTranspose(new Vector3f(X_w, Y_w, Z_w));
+        final Matrix3f M = new Matrix3f(
+                S.x * X_r, S.y * X_g, S.z * X_b,
+                S.x * Y_r, S.y * Y_g, S.z * Y_b,
+                S.x * Z_r, S.y * Z_g, S.z * Z_b
+        );
+        final Function<float[], Color3f[]> interpolate = coefficients -> new Color3f[]{new Color3f(coefficients[0]), Color3f.interpolate(spring_green, rose, coefficients[1]), Color3f.interpolate(azure, orange, coefficients[2])};
+        return color -> {
+            Vector3f rgb = new Vector3f(color.red, color.green, color.blue);
+            rgb.x = (float) Math.pow(rgb.x, gamma);
+            rgb.y = (float) Math.pow(rgb.y, gamma);
+            rgb.z = (float) Math.pow(rgb.z, gamma);
+            rgb = rgb.mulTranspose(M);
+            float f_x = f.apply(rgb.x / X_w);
+            float f_y = f.apply(rgb.y / Y_w);
+            float f_z = f.apply(rgb.z / Z_w);
+            float L = 116f * f_y - 16f;
+            float a = 500f * (f_x - f_y);
+            float b = 200f * (f_y - f_z);
+            return interpolate.apply(new float[]{L / 256f, (a + 128f) / 256f, (b + 128f) / 256f});
+        };
+    }
+}
@@ -0,0 +1,49 @@
+package com.hermant.colors;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Bulk kernels, vector ones when the module is present, must give the same coefficients as the scalar planar kernels
+ * and the same packed colors as the per pixel {@link Color3f} path for every one of the 2^24 colors.
+ */
+public class VectorKernelsTest {
+
+    private static final int COLORS = 1 << 24;
+    private static final int BLOCK = ChannelSeparation.BLOCK;
+
+    @Test
+    public void everyColorMatchesScalarPath() {
+        int[] src = new int[BLOCK], dst0 = new int[BLOCK], dst1 = new int[BLOCK], dst2 = new int[BLOCK];
+        float[] r = new float[BLOCK], g = new float[BLOCK], b = new float[BLOCK];
+        float[][] expected = new float[3][BLOCK], actual = new float[3][BLOCK];
+        for (String name : new String[]{"RGB", "YCbCr", "HSV", "Lab"}) {
+            ChannelSeparation separation = (ChannelSeparation) Profiles.getSeparation(name);
+            for (int from = 0; from < COLORS; from += BLOCK) {
+                for (int i = 0; i < BLOCK; i++) {
+                    int rgb = from + i;
+                    src[i] = rgb;
+                    r[i] = ((rgb >> 16) & 0xff) / 255.0f;
+                    g[i] = ((rgb >> 8) & 0xff) / 255.0f;
+                    b[i] = (rgb & 0xff) / 255.0f;
+                }
+                separation.separate(r, g, b, expected[0], expected[1], expected[2], 0, BLOCK);
+                separation.separate(src, 0, actual[0], actual[1], actual[2], BLOCK);
+                separation.separate(src, 0, dst0, 0, dst1, 0, dst2, 0, BLOCK);
+                for (int i = 0; i < BLOCK; i++) {
+                    for (int c = 0; c < 3; c++) {
+                        if (Float.compare(expected[c][i], actual[c][i]) != 0)
+                            assertEquals(name + " coefficient " + c + " of " + Integer.toHexString(src[i]), expected[c][i], actual[c][i], 0.0f);
+                    }
+                    // the Color3f path allocates, a sample of the colors is enough to check the gradients
+                    if ((i & 15) != 0) continue;
+                    Color3f[] colors = separation.separate(new Color3f(src[i]));
+                    assertEquals(name + " channel 0 of " + Integer.toHexString(src[i]), colors[0].getRGB(), dst0[i]);
+                    assertEquals(name + " channel 1 of " + Integer.toHexString(src[i]), colors[1].getRGB(), dst1[i]);
+                    assertEquals(name + " channel 2 of " + Integer.toHexString(src[i]), colors[2].getRGB(), dst2[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.hermant.graphics;
+
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CanvasTest {
+
+    private static final int WIDTH = 100, HEIGHT = 50;
+
+    private final List<Rectangle> repainted = new ArrayList<>();
+    private final Canvas canvas = new Canvas(WIDTH, HEIGHT) {
+        @Override
+        public void repaint(long time, int x, int y, int width, int height) {
+            repainted.add(new Rectangle(x, y, width, height));
+        }
+    };
+
+    @Test
+    public void onlyChangedPixelsAreRepainted() {
+        int[] image = new int[WIDTH * HEIGHT];
+        Arrays.fill(image, 0x336699);
+        canvas.setPixels(image, WIDTH, HEIGHT);
+        assertEquals(List.of(new Rectangle(0, 0, WIDTH, HEIGHT)), repainted);
+        repainted.clear();
+        canvas.setPixels(image, WIDTH, HEIGHT);
+        assertTrue(repainted.isEmpty());
+        image[10 * WIDTH + 20] = 0;
+        image[30 * WIDTH + 5] = 0;
+        canvas.setPixels(image, WIDTH, HEIGHT);
+        assertEquals(List.of(new Rectangle(5, 10, 16, 21)), repainted);
+    }
+
+    @Test
+    public void regionsAreClipped() {
+        int[] region = new int[20 * 20];
+        Arrays.fill(region, 0xffffff);
+        region[5 * 20 + 2] = 0x123456;
+        canvas.setRegion(90, -5, 20, 20, region, 0, 20);
+        assertEquals(List.of(new Rectangle(90, 0, 10, 15)), repainted);
+        assertEquals(0x123456, canvas.getPixels()[92]);
+        assertEquals(0xffffff, canvas.getPixels()[14 * WIDTH + 99]);
+        assertEquals(0, canvas.getPixels()[15 * WIDTH + 99]);
+        repainted.clear();
+        canvas.setRegion(WIDTH + 10, 0, 20, 20, region, 0, 20);
+        canvas.setRegion(-25, 0, 20, 20, region, 0, 20);
+        canvas.setRegion(0, HEIGHT + 10, 20, 20, region, 0, 20);
+        canvas.setRegion(0, -25, 20, 20, region, 0, 20);
+        assertTrue(repainted.isEmpty());
+        assertEquals(0, canvas.getPixels()[0]);
+    }
+}
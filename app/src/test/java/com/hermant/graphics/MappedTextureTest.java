@@ -0,0 +1,95 @@
+package com.hermant.graphics;
+
+import com.hermant.Allocations;
+import com.hermant.colors.Profiles;
+import com.hermant.colors.Separation;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MappedTextureTest {
+
+    // three rows per chunk, the last chunk holds the two rows left
+    private static final int WIDTH = 10, HEIGHT = 11, ROWS_PER_CHUNK = 3;
+    private static final int CHUNK_BYTES = ROWS_PER_CHUNK * MappedTexture.BYTES_PER_PIXEL * WIDTH;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rowsSpanChunks() throws IOException {
+        int[] pixels = Allocations.image(WIDTH, HEIGHT);
+        // a chunk size not a multiple of rows still holds whole rows only
+        for (int chunkBytes : new int[]{CHUNK_BYTES, CHUNK_BYTES + 7}) {
+            assertRows(pixels, fill(new MappedTexture(WIDTH, HEIGHT, null, FileChannel.MapMode.READ_WRITE, chunkBytes), pixels));
+        }
+    }
+
+    @Test
+    public void mappedFileHoldsRowsInOrder() throws IOException {
+        int[] pixels = Allocations.image(WIDTH, HEIGHT);
+        Path path = folder.newFile().toPath();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedTexture texture = new MappedTexture(WIDTH, HEIGHT, channel, FileChannel.MapMode.READ_WRITE, CHUNK_BYTES);
+            fill(texture, pixels);
+            texture.force();
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        assertEquals(MappedTexture.BYTES_PER_PIXEL * pixels.length, bytes.length);
+        for (int i = 0; i < pixels.length; i++) {
+            int rgb = (bytes[3 * i] & 0xff) << 16 | (bytes[3 * i + 1] & 0xff) << 8 | (bytes[3 * i + 2] & 0xff);
+            assertEquals("pixel " + i, pixels[i], rgb);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            assertRows(pixels, new MappedTexture(WIDTH, HEIGHT, channel, FileChannel.MapMode.READ_ONLY, CHUNK_BYTES));
+        }
+    }
+
+    @Test
+    public void separationSpansChunks() throws IOException {
+        int[] pixels = Allocations.image(WIDTH, HEIGHT);
+        Separation separation = Profiles.getSeparation("Lab", "sRGB", null, true);
+        int[][] expected = new int[3][pixels.length];
+        separation.separate(pixels, 0, expected[0], 0, expected[1], 0, expected[2], 0, pixels.length);
+        MappedTexture source = fill(chunked(), pixels);
+        MappedTexture[] planes = {chunked(), chunked(), chunked()};
+        // tiles of a single row, so chunks are shared between threads
+        try (SeparationEngine engine = new SeparationEngine(2, WIDTH)) {
+            engine.separate(source, separation, planes[0], planes[1], planes[2]);
+        }
+        for (int c = 0; c < 3; c++) assertRows(expected[c], planes[c]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rowsLargerThanChunksAreRejected() throws IOException {
+        new MappedTexture(WIDTH, HEIGHT, null, FileChannel.MapMode.READ_WRITE, MappedTexture.BYTES_PER_PIXEL * WIDTH - 1);
+    }
+
+    private static MappedTexture chunked() throws IOException {
+        return new MappedTexture(WIDTH, HEIGHT, null, FileChannel.MapMode.READ_WRITE, CHUNK_BYTES);
+    }
+
+    private static MappedTexture fill(MappedTexture texture, int[] pixels) {
+        // bottom up, so chunks are not written in order
+        for (int y = HEIGHT - 1; y >= 0; y--) texture.setRow(y, pixels, y * WIDTH);
+        return texture;
+    }
+
+    private static void assertRows(int[] expected, MappedTexture texture) {
+        int[] actual = new int[expected.length];
+        for (int y = 0; y < HEIGHT; y++) {
+            texture.getRow(y, actual, y * WIDTH);
+            for (int x = 0; x < WIDTH; x++) assertEquals("pixel " + x + ", " + y, expected[y * WIDTH + x], texture.get(x, y));
+        }
+        assertArrayEquals(expected, actual);
+    }
+}
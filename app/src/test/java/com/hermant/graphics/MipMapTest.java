@@ -0,0 +1,49 @@
+package com.hermant.graphics;
+
+import com.hermant.Allocations;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class MipMapTest {
+
+    @Test
+    public void levelsHalveDownToAPixel() {
+        Texture texture = new Texture(37, 10, Allocations.image(37, 10));
+        MipMap mipMap = new MipMap(texture);
+        int[][] sizes = {{37, 10}, {19, 5}, {10, 3}, {5, 2}, {3, 1}, {2, 1}, {1, 1}};
+        assertEquals(sizes.length, mipMap.getLevels());
+        assertSame(texture, mipMap.getLevel(0));
+        for (int level = 0; level < sizes.length; level++) {
+            assertEquals(sizes[level][0], mipMap.getLevel(level).getWidth());
+            assertEquals(sizes[level][1], mipMap.getLevel(level).getHeight());
+        }
+    }
+
+    @Test
+    public void levelsAverageSquaresRepeatingOddEdges() {
+        // 3 x 3, the last row and column are averaged with themselves
+        int[] pixels = {
+                0x000000, 0x040404, 0x102030,
+                0x080808, 0x0c0c0d, 0x102030,
+                0xff0000, 0x00ff00, 0x0000ff};
+        Texture level = new MipMap(new Texture(3, 3, pixels)).getLevel(1);
+        assertEquals(0x060606, level.get(0, 0));
+        assertEquals(0x102030, level.get(1, 0));
+        assertEquals(0x808000, level.get(0, 1));
+        assertEquals(0x0000ff, level.get(1, 1));
+    }
+
+    @Test
+    public void smallestLevelCoveringTheSizeIsChosen() {
+        MipMap mipMap = new MipMap(new Texture(64, 32, Allocations.image(64, 32)));
+        assertEquals(64, mipMap.getLevel(64, 32).getWidth());
+        assertEquals(64, mipMap.getLevel(33, 10).getWidth());
+        assertEquals(32, mipMap.getLevel(32, 16).getWidth());
+        assertEquals(32, mipMap.getLevel(20, 9).getWidth());
+        assertEquals(64, mipMap.getLevel(20, 17).getWidth());
+        assertEquals(1, mipMap.getLevel(1, 1).getWidth());
+        assertEquals(64, mipMap.getLevel(100, 100).getWidth());
+    }
+}
@@ -0,0 +1,67 @@
+package com.hermant.graphics;
+
+import com.hermant.Allocations;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResamplerTest {
+
+    private static final int WIDTH = 96, HEIGHT = 54;
+    private static final int[] IMAGE = Allocations.image(WIDTH, HEIGHT);
+
+    @Test
+    public void sameSizeIsIdentity() {
+        for (Resampler.Filter filter : Resampler.Filter.values()) {
+            int[] dst = new int[IMAGE.length];
+            new Resampler(filter).resample(IMAGE, WIDTH, HEIGHT, dst, WIDTH, HEIGHT);
+            assertArrayEquals(filter.name(), IMAGE, dst);
+        }
+    }
+
+    @Test
+    public void boxHalvingAveragesSquares() {
+        Texture expected = new MipMap(new Texture(WIDTH, HEIGHT, IMAGE)).getLevel(1);
+        int[] dst = new int[WIDTH / 2 * HEIGHT / 2];
+        new Resampler(Resampler.Filter.BOX).resample(IMAGE, WIDTH, HEIGHT, dst, WIDTH / 2, HEIGHT / 2);
+        // rows are rounded to 8 bits between the passes, the pyramid rounds the sum of four pixels once
+        for (int y = 0; y < HEIGHT / 2; y++) {
+            for (int x = 0; x < WIDTH / 2; x++) {
+                int a = expected.get(x, y), b = dst[y * WIDTH / 2 + x];
+                for (int shift = 0; shift < 24; shift += 8)
+                    assertTrue("at " + x + ", " + y, Math.abs((a >> shift & 0xff) - (b >> shift & 0xff)) <= 1);
+            }
+        }
+    }
+
+    @Test
+    public void constantImagesStayConstant() {
+        int color = 0x4080c0;
+        int[] src = new int[IMAGE.length];
+        Arrays.fill(src, color);
+        Resampler resampler = new Resampler(Resampler.Filter.LANCZOS3);
+        for (int[] size : new int[][]{{3 * WIDTH + 1, 2 * HEIGHT + 3}, {WIDTH / 3 + 1, HEIGHT / 5}, {1, 1}}) {
+            int[] dst = new int[size[0] * size[1]], expected = new int[dst.length];
+            Arrays.fill(expected, color);
+            resampler.resample(src, WIDTH, HEIGHT, dst, size[0], size[1]);
+            assertArrayEquals(size[0] + "x" + size[1], expected, dst);
+        }
+    }
+
+    @Test
+    public void missingWeightsFallBackToNearestPixel() {
+        int in = 10;
+        for (int out : new int[]{4, 10, 25}) {
+            Resampler.Weights weights = new Resampler.Weights(x -> 0.0, 1.0, in, out);
+            for (int i = 0; i < out; i++) {
+                assertEquals(1, weights.count[i]);
+                assertEquals(Math.min((int) ((i + 0.5) * in / out), in - 1), weights.start[i]);
+                assertEquals(1.0f, weights.weights[i * weights.taps], 0.0f);
+            }
+        }
+    }
+}
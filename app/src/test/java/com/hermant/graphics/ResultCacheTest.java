@@ -0,0 +1,58 @@
+package com.hermant.graphics;
+
+import com.hermant.colors.Profiles;
+import com.hermant.colors.Separation;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ResultCacheTest {
+
+    private static final int WIDTH = 8, HEIGHT = 4;
+    private static final long PLANES = 3L * Integer.BYTES * WIDTH * HEIGHT;
+
+    private final Texture texture = new Texture(WIDTH, HEIGHT, new int[WIDTH * HEIGHT]);
+
+    @Test
+    public void planesAreKeyedByTextureSeparationAndSize() {
+        ResultCache cache = new ResultCache(10 * PLANES, false);
+        int[] plane = new int[WIDTH * HEIGHT];
+        cache.put(texture, "a", WIDTH, HEIGHT, plane, plane, plane);
+        assertSame(plane, cache.get(texture, "a", WIDTH, HEIGHT)[1]);
+        assertNull(cache.get(texture, "b", WIDTH, HEIGHT));
+        assertNull(cache.get(texture, "a", HEIGHT, WIDTH));
+        assertNull(cache.get(new Texture(WIDTH, HEIGHT, new int[WIDTH * HEIGHT]), "a", WIDTH, HEIGHT));
+        assertEquals(PLANES, cache.getWeight());
+    }
+
+    @Test
+    public void leastRecentlyUsedPlanesAreEvicted() {
+        ResultCache cache = new ResultCache(2 * PLANES, false);
+        int[] plane = new int[WIDTH * HEIGHT];
+        cache.put(texture, "a", WIDTH, HEIGHT, plane, plane, plane);
+        cache.put(texture, "b", WIDTH, HEIGHT, plane, plane, plane);
+        cache.get(texture, "a", WIDTH, HEIGHT);
+        cache.put(texture, "c", WIDTH, HEIGHT, plane, plane, plane);
+        assertEquals(2, cache.size());
+        assertNull(cache.get(texture, "b", WIDTH, HEIGHT));
+        assertSame(plane, cache.get(texture, "a", WIDTH, HEIGHT)[0]);
+        cache.setBudget(PLANES);
+        assertEquals(1, cache.size());
+        assertNull(cache.get(texture, "c", WIDTH, HEIGHT));
+        cache.clear();
+        assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    public void keysIncludeParameters() {
+        Separation srgb = Profiles.getSeparation("Lab", "sRGB", null, true);
+        assertEquals(ResultCache.key(srgb), ResultCache.key(Profiles.getSeparation("Lab", "sRGB", null, true)));
+        assertNotEquals(ResultCache.key(srgb), ResultCache.key(Profiles.getSeparation("Lab", "sRGB", "D50", true)));
+        assertNotEquals(ResultCache.key(srgb), ResultCache.key(Profiles.getSeparation("Lab", "sRGB", null, false)));
+        assertNotEquals(ResultCache.key(srgb), ResultCache.key(Profiles.getSeparation("YCbCr")));
+        assertNull(ResultCache.key(input -> null));
+    }
+}
@@ -0,0 +1,98 @@
+package com.hermant.graphics;
+
+import com.hermant.Allocations;
+import com.hermant.colors.Color3f;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Texture sampling and row access must not allocate and must match the {@link Color3f} arithmetic they replaced.
+ */
+public class SamplingTest {
+
+    private static final int WIDTH = 256, HEIGHT = 64;
+    private static final int BUFFER_VIEW = 64;
+    private static final Texture TEXTURE = new Texture(WIDTH, HEIGHT, Allocations.image(WIDTH, HEIGHT));
+
+    private final int[] sink = new int[WIDTH * HEIGHT];
+
+    @Test
+    public void bilinearSamplingDoesNotAllocate() {
+        Allocations.assertBudget("bilinear", 0, sink.length, () -> {
+            for (int y = 0, i = 0; y < HEIGHT; y++)
+                for (int x = 0; x < WIDTH; x++, i++)
+                    sink[i] = TEXTURE.getSampleBilinearInterpolation((x + 0.3f) / WIDTH, (y + 0.7f) / HEIGHT);
+        });
+    }
+
+    @Test
+    public void nearestSamplingDoesNotAllocate() {
+        Allocations.assertBudget("nearest", 0, sink.length, () -> {
+            for (int y = 0, i = 0; y < HEIGHT; y++)
+                for (int x = 0; x < WIDTH; x++, i++)
+                    sink[i] = TEXTURE.getSampleNearestNeighbor((x + 0.5f) / WIDTH, (y + 0.5f) / HEIGHT);
+        });
+    }
+
+    @Test
+    public void rowsDoNotAllocate() {
+        Allocations.assertBudget("texture rows", 0, sink.length, () -> {
+            for (int y = 0; y < HEIGHT; y++) TEXTURE.getRow(y, sink, y * WIDTH);
+        });
+    }
+
+    @Test
+    public void mappedRowsAllocateOnlyBufferViews() {
+        MappedTexture mapped = MappedTexture.allocate(WIDTH, HEIGHT);
+        // each row access may duplicate its buffer when escape analysis gives up, never more
+        Allocations.assertBudget("mapped rows", (double) BUFFER_VIEW / WIDTH, 2L * sink.length, () -> {
+            for (int y = 0; y < HEIGHT; y++) {
+                TEXTURE.getRow(y, sink, y * WIDTH);
+                mapped.setRow(y, sink, y * WIDTH);
+                mapped.getRow(y, sink, y * WIDTH);
+            }
+        });
+    }
+
+    @Test
+    public void bilinearSamplingMatchesColorArithmetic() {
+        for (int y = 0; y < 4 * HEIGHT; y++) {
+            for (int x = 0; x < 4 * WIDTH; x++) {
+                float u = (x + 0.5f) / (4 * WIDTH), v = (y + 0.5f) / (4 * HEIGHT);
+                assertEquals("at " + u + ", " + v, bilinear(TEXTURE, u, v), TEXTURE.getSampleBilinearInterpolation(u, v));
+            }
+        }
+    }
+
+    @Test
+    public void mappedRowsMatchTexture() {
+        MappedTexture mapped = MappedTexture.allocate(WIDTH, HEIGHT);
+        int[] expected = new int[WIDTH], actual = new int[WIDTH];
+        for (int y = 0; y < HEIGHT; y++) {
+            TEXTURE.getRow(y, expected, 0);
+            mapped.setRow(y, expected, 0);
+        }
+        for (int y = 0; y < HEIGHT; y++) {
+            TEXTURE.getRow(y, expected, 0);
+            mapped.getRow(y, actual, 0);
+            assertArrayEquals("row " + y, expected, actual);
+            for (int x = 0; x < WIDTH; x++) assertEquals(TEXTURE.get(x, y), mapped.get(x, y));
+        }
+    }
+
+    /**
+     * Bilinear sampling as it was first written, a Color3f per corner.
+     */
+    private static int bilinear(Texture texture, float x, float y) {
+        x *= texture.getWidth();
+        y *= texture.getHeight();
+        int x0 = (int) x, y0 = (int) y;
+        float dx = x - x0, dy = y - y0, omdx = 1.0f - dx, omdy = 1.0f - dy;
+        return Color3f.add(
+                Color3f.add(Color3f.mul(new Color3f(texture.get(x0, y0)), omdx * omdy), Color3f.mul(new Color3f(texture.get(x0, y0 + 1)), omdx * dy)),
+                Color3f.add(Color3f.mul(new Color3f(texture.get(x0 + 1, y0)), dx * omdy), Color3f.mul(new Color3f(texture.get(x0 + 1, y0 + 1)), dx * dy)))
+                .getRGB();
+    }
+}
@@ -0,0 +1,120 @@
+package com.hermant.graphics;
+
+import com.hermant.Allocations;
+import com.hermant.colors.Color3f;
+import com.hermant.colors.FusedSeparation;
+import com.hermant.colors.Profiles;
+import com.hermant.colors.Separation;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SeparationEngineTest {
+
+    private static final int WIDTH = 256, HEIGHT = 64;
+
+    @Test
+    public void tilesMatchSingleCall() {
+        Texture texture = new Texture(WIDTH, HEIGHT, Allocations.image(WIDTH, HEIGHT));
+        Separation separation = Profiles.getSeparation("Lab", "sRGB", null, true);
+        int[][] expected = new int[3][WIDTH * HEIGHT];
+        separation.separate(texture.getPixels(), 0, expected[0], 0, expected[1], 0, expected[2], 0, WIDTH * HEIGHT);
+        try (SeparationEngine engine = new SeparationEngine(2, 1000)) {
+            assertPlanes(expected, separate(engine, texture, separation));
+        }
+    }
+
+    @Test
+    public void uniqueColorsMatchDirectSeparation() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        int[] palette = {0x000000, 0xffffff, 0x336699, 0xff8000, 0x00ff00};
+        for (int i = 0; i < pixels.length; i++) pixels[i] = palette[i / 37 % palette.length];
+        Texture texture = new Texture(WIDTH, HEIGHT, pixels);
+        for (String name : new String[]{"RGB", "YCbCr", "HSV"}) {
+            Separation separation = Profiles.getSeparation(name);
+            SeparationEngine direct = new SeparationEngine(), unique = new SeparationEngine();
+            direct.setUniqueColors(0);
+            assertPlanes(separate(direct, texture, separation), separate(unique, texture, separation));
+            int[] expected = new int[4 * pixels.length], actual = new int[4 * pixels.length];
+            direct.composite(texture, separation, expected);
+            unique.composite(texture, separation, actual);
+            assertArrayEquals(name + " composite", expected, actual);
+        }
+    }
+
+    @Test
+    public void colorsOfAllTilesAreSeparatedOnce() {
+        // every few rows have colors of their own besides those shared by all rows
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) pixels[i] = i / WIDTH / 4 << 16 | i / 37 % 5 * 0x21;
+        Separation ycbcr = Profiles.getSeparation("YCbCr");
+        AtomicLong separated = new AtomicLong();
+        Separation counting = new Separation() {
+            @Override
+            public Color3f[] separate(Color3f input) {
+                return ycbcr.separate(input);
+            }
+
+            @Override
+            public void separate(int[] src, int srcOffset, int[] dst0, int offset0, int[] dst1, int offset1, int[] dst2, int offset2, int length) {
+                separated.addAndGet(length);
+                ycbcr.separate(src, srcOffset, dst0, offset0, dst1, offset1, dst2, offset2, length);
+            }
+        };
+        try (SeparationEngine engine = new SeparationEngine(2, 1000)) {
+            Texture texture = new Texture(WIDTH, HEIGHT, pixels);
+            int[][] planes = separate(engine, texture, counting);
+            assertEquals(HEIGHT / 4 * 5, separated.get());
+            engine.setUniqueColors(0);
+            assertPlanes(separate(engine, texture, ycbcr), planes);
+            // a photograph is separated pixel by pixel
+            engine.setUniqueColors(SeparationEngine.DEFAULT_UNIQUE_COLORS);
+            separated.set(0);
+            separate(engine, new Texture(WIDTH, HEIGHT, Allocations.image(WIDTH, HEIGHT)), counting);
+            assertEquals(WIDTH * HEIGHT, separated.get());
+        }
+    }
+
+    @Test
+    public void fusedMatchesSeparatePasses() {
+        Separation[] separations = {
+                Profiles.getSeparation("RGB"), Profiles.getSeparation("YCbCr"), Profiles.getSeparation("HSV"),
+                Profiles.getSeparation("Lab"), Profiles.getSeparation("Lab", "sRGB", null, false),
+                Profiles.getSeparation("Lab", "Adobe RGB", null, false), Profiles.getSeparation("Lab", "sRGB", "D50", false)
+        };
+        FusedSeparation fused = new FusedSeparation(separations);
+        int pixels = WIDTH * HEIGHT;
+        int[] few = new int[pixels];
+        for (int i = 0; i < pixels; i++) few[i] = i / 37 % 5 * 0x332211;
+        // the photo like image is separated pixel by pixel, the one of few colors once per color
+        try (SeparationEngine engine = new SeparationEngine(2, 1000)) {
+            for (int[] image : new int[][]{Allocations.image(WIDTH, HEIGHT), few}) {
+                Texture texture = new Texture(WIDTH, HEIGHT, image);
+                int[][] planes = new int[3 * separations.length][pixels];
+                engine.separate(texture, fused, planes);
+                int[] composites = new int[4 * pixels * separations.length];
+                engine.composite(texture, fused, composites);
+                for (int k = 0; k < separations.length; k++) {
+                    assertPlanes(separate(engine, texture, separations[k]), Arrays.copyOfRange(planes, 3 * k, 3 * k + 3));
+                    int[] expected = new int[4 * pixels];
+                    engine.composite(texture, separations[k], expected);
+                    assertArrayEquals("composite " + k, expected, Arrays.copyOfRange(composites, 4 * pixels * k, 4 * pixels * (k + 1)));
+                }
+            }
+        }
+    }
+
+    private static int[][] separate(SeparationEngine engine, Texture texture, Separation separation) {
+        int[][] planes = new int[3][texture.getWidth() * texture.getHeight()];
+        engine.separate(texture, separation, planes[0], planes[1], planes[2]);
+        return planes;
+    }
+
+    private static void assertPlanes(int[][] expected, int[][] actual) {
+        for (int c = 0; c < 3; c++) assertArrayEquals("channel " + c, expected[c], actual[c]);
+    }
+}
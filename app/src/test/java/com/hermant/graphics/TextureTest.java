@@ -0,0 +1,81 @@
+package com.hermant.graphics;
+
+import com.hermant.Allocations;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TextureTest {
+
+    private static final int WIDTH = 67, HEIGHT = 41;
+    private static final int[] IMAGE = Allocations.image(WIDTH, HEIGHT);
+
+    @Test
+    public void dataBuffersMatchGetRGB() {
+        // copied from the data buffer, then converted by getRGB
+        int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_INDEXED, BufferedImage.TYPE_USHORT_565_RGB};
+        for (int type : types) {
+            BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+            image.setRGB(0, 0, WIDTH, HEIGHT, IMAGE, 0, WIDTH);
+            assertArrayEquals("type " + type, rgb(image), Texture.read(image));
+            // a view into the raster of the whole image
+            BufferedImage view = image.getSubimage(5, 3, WIDTH - 9, HEIGHT - 7);
+            assertArrayEquals("view of type " + type, rgb(view), Texture.read(view));
+        }
+    }
+
+    @Test
+    public void greyIsReplicated() {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        WritableRaster raster = image.getRaster();
+        for (int i = 0; i < IMAGE.length; i++) raster.setSample(i % WIDTH, i / WIDTH, 0, IMAGE[i] & 0xff);
+        // by samples, getRGB would convert linear grey to sRGB
+        assertArrayEquals(grey(image), Texture.read(image));
+        BufferedImage view = image.getSubimage(5, 3, WIDTH - 9, HEIGHT - 7);
+        assertArrayEquals(grey(view), Texture.read(view));
+    }
+
+    @Test
+    public void streamsAreDecodedByFormat() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, WIDTH, HEIGHT, IMAGE, 0, WIDTH);
+        BufferedImage grey = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        grey.getRaster().setSamples(0, 0, WIDTH, HEIGHT, 0, IMAGE);
+        // png is recognized by its signature, the other formats go through ImageIO
+        Object[][] cases = {{image, "png"}, {image, "bmp"}, {image, "gif"}, {grey, "jpg"}};
+        for (Object[] c : cases) {
+            String format = (String) c[1];
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            assertTrue(format, ImageIO.write((BufferedImage) c[0], format, stream));
+            byte[] bytes = stream.toByteArray();
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(bytes));
+            int[] expected = decoded.getType() == BufferedImage.TYPE_BYTE_GRAY ? grey(decoded) : rgb(decoded);
+            Texture texture = new Texture(new ByteArrayInputStream(bytes));
+            assertEquals(WIDTH, texture.getWidth());
+            assertEquals(HEIGHT, texture.getHeight());
+            assertArrayEquals(format, expected, texture.getPixels());
+        }
+    }
+
+    private static int[] rgb(BufferedImage image) {
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        for (int i = 0; i < pixels.length; i++) pixels[i] &= 0xffffff;
+        return pixels;
+    }
+
+    private static int[] grey(BufferedImage image) {
+        int[] pixels = image.getRaster().getSamples(0, 0, image.getWidth(), image.getHeight(), 0, (int[]) null);
+        for (int i = 0; i < pixels.length; i++) pixels[i] *= 0x010101;
+        return pixels;
+    }
+}
@@ -0,0 +1,121 @@
+package com.hermant.graphics;
+
+import com.hermant.Allocations;
+import com.hermant.colors.Profiles;
+import com.hermant.colors.Separation;
+import org.junit.Test;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ViewportTest {
+
+    private static final double EPSILON = 1e-9;
+
+    // at the fitting scale of 4 the image is shorter than the canvas
+    private final Viewport fit = Viewport.fit(400, 200, 100, 100);
+    private final Viewport oneToOne = fit.zoom(4, 50, 50);
+
+    @Test
+    public void fitShowsTheWholeImage() {
+        assertTrue(fit.isFit());
+        assertEquals(4.0, fit.getScale(), EPSILON);
+        assertEquals(0.0, fit.toImageX(0), EPSILON);
+        assertEquals(400.0, fit.toImageX(100), EPSILON);
+        assertEquals(100.0, fit.toImageY(50), EPSILON);
+    }
+
+    @Test
+    public void zoomKeepsThePointUnderTheCursor() {
+        assertFalse(oneToOne.isFit());
+        assertEquals(1.0, oneToOne.getScale(), EPSILON);
+        Viewport zoomed = oneToOne.zoom(2, 30, 70);
+        assertEquals(0.5, zoomed.getScale(), EPSILON);
+        assertEquals(oneToOne.toImageX(30), zoomed.toImageX(30), EPSILON);
+        assertEquals(oneToOne.toImageY(70), zoomed.toImageY(70), EPSILON);
+    }
+
+    @Test
+    public void zoomIsClamped() {
+        assertEquals(1.0 / Viewport.MAX_ZOOM, oneToOne.zoom(1000, 50, 50).getScale(), EPSILON);
+        Viewport out = oneToOne.zoom(0.001, 10, 10);
+        assertTrue(out.isFit());
+        assertEquals(4.0, out.getScale(), EPSILON);
+        assertEquals(200.0, out.getCenterX(), EPSILON);
+        assertEquals(100.0, out.getCenterY(), EPSILON);
+    }
+
+    @Test
+    public void panningStaysWithinTheImage() {
+        Viewport panned = oneToOne.pan(30, -20);
+        assertEquals(170.0, panned.getCenterX(), EPSILON);
+        assertEquals(120.0, panned.getCenterY(), EPSILON);
+        panned = oneToOne.pan(1000, 1000);
+        assertEquals(50.0, panned.getCenterX(), EPSILON);
+        assertEquals(50.0, panned.getCenterY(), EPSILON);
+        panned = oneToOne.pan(-1000, -1000);
+        assertEquals(350.0, panned.getCenterX(), EPSILON);
+        assertEquals(150.0, panned.getCenterY(), EPSILON);
+        // an image smaller than the canvas stays centered
+        panned = fit.pan(10, 40);
+        assertEquals(200.0, panned.getCenterX(), EPSILON);
+        assertEquals(100.0, panned.getCenterY(), EPSILON);
+    }
+
+    @Test
+    public void tilesShowTheSeparatedView() throws InterruptedException {
+        int width = 300, height = 200, size = 100;
+        int[] image = Allocations.image(width, height);
+        Separation separation = Profiles.getSeparation("YCbCr");
+        int[][] planes = new int[3][image.length];
+        separation.separate(image, 0, planes[0], 0, planes[1], 0, planes[2], 0, image.length);
+        Texture texture = new Texture(width, height, image);
+        Viewport viewport = Viewport.fit(width, height, size, size).zoom(3, 30, 60).pan(-10, 5);
+        Canvas[] canvases = {new Canvas(size, size), new Canvas(size, size), new Canvas(size, size)};
+        TileCache tiles = new TileCache(TileCache.DEFAULT_BUDGET, 2);
+        Semaphore ready = new Semaphore(0);
+        boolean complete = tiles.draw(texture, separation, viewport, canvases[0], canvases[1], canvases[2], ready::release);
+        assertFalse(complete);
+        while (!complete) {
+            assertTrue("tiles not computed in time", ready.tryAcquire(10, TimeUnit.SECONDS));
+            complete = tiles.draw(texture, separation, viewport, canvases[0], canvases[1], canvases[2], ready::release);
+        }
+        for (int c = 0; c < 3; c++) {
+            int[] expected = new int[size * size];
+            for (int y = 0; y < size; y++) {
+                for (int x = 0; x < size; x++) {
+                    int ix = (int) Math.floor(viewport.toImageX(x + 0.5)), iy = (int) Math.floor(viewport.toImageY(y + 0.5));
+                    expected[y * size + x] = planes[c][iy * width + ix];
+                }
+            }
+            assertArrayEquals("channel " + c, expected, canvases[c].getPixels());
+        }
+    }
+
+    @Test
+    public void failedTilesAreReportedByDraw() throws InterruptedException {
+        int width = 300, height = 200, size = 100;
+        Texture texture = new Texture(width, height, Allocations.image(width, height));
+        Separation broken = input -> {
+            throw new ArithmeticException("broken");
+        };
+        Viewport viewport = Viewport.fit(width, height, size, size).zoom(3, 50, 50);
+        Canvas canvas0 = new Canvas(size, size), canvas1 = new Canvas(size, size), canvas2 = new Canvas(size, size);
+        TileCache tiles = new TileCache(TileCache.DEFAULT_BUDGET, 1);
+        Semaphore ready = new Semaphore(0);
+        assertFalse(tiles.draw(texture, broken, viewport, canvas0, canvas1, canvas2, ready::release));
+        assertTrue("failure not reported in time", ready.tryAcquire(10, TimeUnit.SECONDS));
+        try {
+            tiles.draw(texture, broken, viewport, canvas0, canvas1, canvas2, ready::release);
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof ArithmeticException);
+        }
+    }
+}
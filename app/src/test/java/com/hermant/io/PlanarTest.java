@@ -0,0 +1,119 @@
+package com.hermant.io;
+
+import com.hermant.Allocations;
+import com.hermant.colors.ChannelSeparation;
+import com.hermant.colors.Color3f;
+import com.hermant.colors.Profiles;
+import com.hermant.graphics.SeparationEngine;
+import com.hermant.graphics.Texture;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PlanarTest {
+
+    // strips do not divide the height
+    private static final int WIDTH = 96, HEIGHT = 37, STRIP_ROWS = 8;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void coefficientsRoundTrip() throws IOException {
+        int[] pixels = Allocations.image(WIDTH, HEIGHT);
+        Path input = folder.getRoot().toPath().resolve("image.png");
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, WIDTH, HEIGHT, pixels, 0, WIDTH);
+        ImageIO.write(image, "png", input.toFile());
+        ChannelSeparation[] separations = {(ChannelSeparation) Profiles.getSeparation("YCbCr"), (ChannelSeparation) Profiles.getSeparation("Lab")};
+        float[][] expected = new float[3 * separations.length][WIDTH * HEIGHT];
+        for (int k = 0; k < separations.length; k++)
+            separations[k].coefficients(pixels, 0, expected[3 * k], expected[3 * k + 1], expected[3 * k + 2], 0, pixels.length);
+        StripProcessor processor = new StripProcessor(new SeparationEngine(), STRIP_ROWS);
+        for (PlanarSample sample : PlanarSample.values()) {
+            for (boolean compress : new boolean[]{false, true}) {
+                Path[] outputs = {folder.newFile().toPath(), folder.newFile().toPath()};
+                assertEquals((long) WIDTH * HEIGHT, processor.planar(input, separations, outputs, sample, compress));
+                for (int k = 0; k < separations.length; k++) {
+                    try (PlanarReader reader = PlanarReader.open(outputs[k])) {
+                        assertEquals(separations[k].getKey(), reader.getKey());
+                        assertEquals(sample, reader.getSample());
+                        assertEquals(compress, reader.isCompressed());
+                        float[][] actual = new float[3][WIDTH * HEIGHT];
+                        int[] packed = new int[WIDTH * HEIGHT];
+                        // bottom up, so that compressed strips are not read in order
+                        for (int y = HEIGHT - 1; y >= 0; y--) {
+                            for (int c = 0; c < 3; c++) reader.getRow(c, y, actual[c], y * WIDTH);
+                            reader.getRow(y, packed, y * WIDTH);
+                        }
+                        float delta = sample == PlanarSample.FLOAT32 ? 0.0f : 0.5f / 65535.0f + 1e-7f;
+                        for (int c = 0; c < 3; c++) {
+                            float[] coefficients = expected[3 * k + c];
+                            for (int i = 0; i < coefficients.length; i++) {
+                                float value = sample == PlanarSample.FLOAT32 ? coefficients[i] : Math.max(0.0f, Math.min(1.0f, coefficients[i]));
+                                assertEquals(sample + " " + compress + " channel " + c + " pixel " + i, value, actual[c][i], delta);
+                            }
+                        }
+                        for (int i = 0; i < packed.length; i++)
+                            assertEquals(Color3f.getRGB(actual[0][i], actual[1][i], actual[2][i]), packed[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void incompleteFilesAreDeleted() throws IOException {
+        for (boolean compress : new boolean[]{false, true}) {
+            Path output = folder.newFile().toPath();
+            PlanarWriter writer = new PlanarWriter(output, WIDTH, HEIGHT, "key", PlanarSample.FLOAT32, compress, STRIP_ROWS);
+            float[] strip = new float[WIDTH * STRIP_ROWS];
+            writer.write(strip, strip, strip, STRIP_ROWS);
+            try {
+                writer.close();
+                fail();
+            } catch (IOException expected) {
+                assertFalse(Files.exists(output));
+            }
+        }
+    }
+
+    @Test
+    public void lz4RoundTrip() throws IOException {
+        Random random = new Random(1);
+        byte[] noise = new byte[70000], runs = new byte[70000], zeros = new byte[70000];
+        random.nextBytes(noise);
+        for (int i = 0; i < runs.length; i++) runs[i] = (byte) (i / 300 % 7 == 0 ? random.nextInt() : i / 1000);
+        for (byte[] data : new byte[][]{noise, runs, zeros}) {
+            for (int length : new int[]{0, 1, 12, 13, 20, 4096, data.length}) {
+                byte[] compressed = new byte[Lz4.maxCompressedLength(length)], decompressed = new byte[length];
+                int size = Lz4.compress(data, length, compressed);
+                Lz4.decompress(compressed, size, decompressed, length);
+                assertArrayEquals(Arrays.copyOf(data, length), decompressed);
+            }
+        }
+        byte[] compressed = new byte[Lz4.maxCompressedLength(zeros.length)];
+        assertTrue(Lz4.compress(zeros, zeros.length, compressed) < zeros.length / 100);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedBlocksAreRejected() throws IOException {
+        byte[] data = new byte[1000], compressed = new byte[Lz4.maxCompressedLength(data.length)];
+        int size = Lz4.compress(data, data.length, compressed);
+        Lz4.decompress(compressed, size - 1, new byte[data.length], data.length);
+    }
+}
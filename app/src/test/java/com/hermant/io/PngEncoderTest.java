@@ -0,0 +1,86 @@
+package com.hermant.io;
+
+import com.hermant.Allocations;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Blocks deflated in parallel must concatenate into a single valid png stream, whatever the block size.
+ */
+public class PngEncoderTest {
+
+    // rows repeat every few kilobytes, so blocks match data primed from the window before them
+    private static final int WIDTH = 200, HEIGHT = 150, PERIOD = 37;
+    private static final int ROW_BYTES = 3 * WIDTH + 1;
+    private static final int[] BLOCK_BYTES = {1, ROW_BYTES, 3 * ROW_BYTES + 5, 40000, PngEncoder.DEFAULT_BLOCK_BYTES};
+
+    private static final int[] IMAGE = image();
+
+    private static int[] image() {
+        int[] period = Allocations.image(WIDTH, PERIOD), pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) System.arraycopy(period, y % PERIOD * WIDTH, pixels, y * WIDTH, WIDTH);
+        return pixels;
+    }
+
+    @Test
+    public void encodedImagesAreReadByImageIO() throws IOException {
+        for (PngFilter filter : PngFilter.values()) {
+            for (int level = Deflater.DEFAULT_COMPRESSION; level <= Deflater.BEST_COMPRESSION; level++) {
+                for (int blockBytes : BLOCK_BYTES) {
+                    String name = filter + " level " + level + " blocks of " + blockBytes;
+                    BufferedImage image = ImageIO.read(new ByteArrayInputStream(encode(level, filter, blockBytes)));
+                    assertEquals(name, WIDTH, image.getWidth());
+                    assertEquals(name, HEIGHT, image.getHeight());
+                    int[] actual = image.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH);
+                    for (int i = 0; i < actual.length; i++) actual[i] &= 0xffffff;
+                    assertArrayEquals(name, IMAGE, actual);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void encodedImagesAreReadByPngReader() throws IOException {
+        for (int blockBytes : BLOCK_BYTES) {
+            try (PngReader reader = new PngReader(new ByteArrayInputStream(encode(Deflater.DEFAULT_COMPRESSION, PngFilter.ADAPTIVE, blockBytes)))) {
+                int[] actual = new int[WIDTH * HEIGHT];
+                reader.read(actual, 0, HEIGHT);
+                assertArrayEquals("blocks of " + blockBytes, IMAGE, actual);
+            }
+        }
+    }
+
+    @Test
+    public void checksumsCombine() {
+        Random random = new Random(7);
+        for (int length : new int[]{0, 1, 100, 65521, 65522, 200000}) {
+            byte[] first = new byte[1000], second = new byte[length];
+            random.nextBytes(first);
+            random.nextBytes(second);
+            Adler32 whole = new Adler32(), left = new Adler32(), right = new Adler32();
+            whole.update(first);
+            whole.update(second);
+            left.update(first);
+            right.update(second);
+            assertEquals("length " + length, whole.getValue(), PngEncoder.combine(left.getValue(), right.getValue(), length));
+        }
+    }
+
+    private static byte[] encode(int level, PngFilter filter, int blockBytes) throws IOException {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        new PngEncoder(level, filter, ForkJoinPool.commonPool(), blockBytes).encode(IMAGE, WIDTH, HEIGHT, stream);
+        return stream.toByteArray();
+    }
+}
@@ -0,0 +1,140 @@
+package com.hermant.io;
+
+import com.hermant.Allocations;
+import com.hermant.colors.Profiles;
+import com.hermant.colors.Separation;
+import com.hermant.graphics.SeparationEngine;
+import com.hermant.graphics.Texture;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+public class StripTest {
+
+    // strips do not divide the height
+    private static final int WIDTH = 83, HEIGHT = 45, STRIP_ROWS = 8;
+    private static final int[] IMAGE = Allocations.image(WIDTH, HEIGHT);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writtenImagesAreReadByImageIO() throws IOException {
+        for (PngFilter filter : PngFilter.values()) {
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            try (PngWriter writer = new PngWriter(stream, WIDTH, HEIGHT, Deflater.BEST_SPEED, filter)) {
+                writer.write(IMAGE, 0, 1);
+                writer.write(IMAGE, WIDTH, STRIP_ROWS);
+                // the rest from a buffer with a wider stride
+                int rows = HEIGHT - 1 - STRIP_ROWS, stride = WIDTH + 5;
+                int[] wide = new int[stride * rows];
+                for (int r = 0; r < rows; r++) System.arraycopy(IMAGE, (1 + STRIP_ROWS + r) * WIDTH, wide, r * stride, WIDTH);
+                writer.write(wide, 0, stride, rows);
+            }
+            assertArrayEquals(filter.name(), IMAGE, rgb(ImageIO.read(new ByteArrayInputStream(stream.toByteArray()))));
+        }
+    }
+
+    @Test
+    public void incompleteImagesAreRejected() throws IOException {
+        PngWriter writer = new PngWriter(new ByteArrayOutputStream(), WIDTH, HEIGHT);
+        writer.write(IMAGE, 0, HEIGHT - 1);
+        try {
+            writer.close();
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void readerDecodesImageIOOutput() throws IOException {
+        int[] types = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_BYTE_INDEXED,
+                BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_BYTE_GRAY, BufferedImage.TYPE_USHORT_GRAY};
+        for (int type : types) {
+            BufferedImage image = new BufferedImage(WIDTH, HEIGHT, type);
+            WritableRaster raster = image.getRaster();
+            int[] expected;
+            if (type == BufferedImage.TYPE_BYTE_GRAY || type == BufferedImage.TYPE_USHORT_GRAY) {
+                // compared by samples, getRGB would convert linear grey to sRGB
+                int shift = type == BufferedImage.TYPE_USHORT_GRAY ? 8 : 0;
+                expected = new int[WIDTH * HEIGHT];
+                for (int i = 0; i < expected.length; i++) {
+                    int sample = IMAGE[i] & (0xffff >> (8 - shift));
+                    raster.setSample(i % WIDTH, i / WIDTH, 0, sample);
+                    expected[i] = (sample >> shift) * 0x010101;
+                }
+            } else {
+                image.setRGB(0, 0, WIDTH, HEIGHT, IMAGE, 0, WIDTH);
+                expected = rgb(image);
+            }
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", stream);
+            try (PngReader reader = new PngReader(new ByteArrayInputStream(stream.toByteArray()))) {
+                assertEquals(WIDTH, reader.getWidth());
+                assertEquals(HEIGHT, reader.getHeight());
+                int[] actual = new int[WIDTH * HEIGHT];
+                for (int y = 0; y < HEIGHT; y += STRIP_ROWS) reader.read(actual, y * WIDTH, Math.min(STRIP_ROWS, HEIGHT - y));
+                assertEquals(HEIGHT, reader.getRow());
+                assertArrayEquals("type " + type, expected, actual);
+            }
+        }
+    }
+
+    @Test
+    public void stripsMatchWholeImageSeparation() throws IOException {
+        Separation separation = Profiles.getSeparation("Lab");
+        int[] composite = new int[4 * IMAGE.length];
+        int[][] planes = new int[3][IMAGE.length];
+        try (SeparationEngine engine = new SeparationEngine(2)) {
+            Texture texture = new Texture(WIDTH, HEIGHT, IMAGE);
+            engine.composite(texture, separation, composite);
+            engine.separate(texture, separation, planes[0], planes[1], planes[2]);
+            StripProcessor processor = new StripProcessor(engine, STRIP_ROWS);
+            // png inputs are decoded in strips, other formats whole
+            for (String format : new String[]{"png", "bmp"}) {
+                Path input = folder.getRoot().toPath().resolve("input." + format);
+                BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+                image.setRGB(0, 0, WIDTH, HEIGHT, IMAGE, 0, WIDTH);
+                ImageIO.write(image, format, input.toFile());
+                Path output = folder.getRoot().toPath().resolve("composite " + format + ".png");
+                assertEquals((long) WIDTH * HEIGHT, processor.composite(input, separation, output));
+                assertArrayEquals(format, composite, rgb(ImageIO.read(output.toFile())));
+                // the spool next to the output is gone
+                assertFalse(Arrays.stream(folder.getRoot().list()).anyMatch(name -> name.startsWith("strips")));
+                Path[] outputs = new Path[3];
+                for (int c = 0; c < 3; c++) outputs[c] = folder.getRoot().toPath().resolve("channel " + c + " " + format + ".png");
+                assertEquals((long) WIDTH * HEIGHT, processor.channels(input, separation, outputs[0], outputs[1], outputs[2]));
+                for (int c = 0; c < 3; c++) assertArrayEquals(format + " channel " + c, planes[c], rgb(ImageIO.read(outputs[c].toFile())));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void streamedOutputMustBePng() throws IOException {
+        Path input = folder.newFile("input.png").toPath();
+        try (SeparationEngine engine = new SeparationEngine(1)) {
+            new StripProcessor(engine).composite(input, Profiles.getSeparation("RGB"), folder.getRoot().toPath().resolve("output.jpg"));
+        }
+    }
+
+    private static int[] rgb(BufferedImage image) {
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        for (int i = 0; i < pixels.length; i++) pixels[i] &= 0xffffff;
+        return pixels;
+    }
+}
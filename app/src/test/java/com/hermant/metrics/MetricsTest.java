@@ -0,0 +1,65 @@
+package com.hermant.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    private static final int MB = 1 << 20;
+
+    private static volatile Object sink;
+
+    @Before
+    public void reset() {
+        Metrics.reset();
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void concurrentThreadsAreNotCounted() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1), done = new CountDownLatch(1);
+        Thread other = new Thread(() -> {
+            started.countDown();
+            // far more than the sample allocates, until it is closed
+            while (done.getCount() > 0) sink = new byte[MB];
+        });
+        try (Metrics.Sample ignored = Metrics.start(Stage.DECODE)) {
+            other.start();
+            started.await();
+            allocate(4);
+            Thread.sleep(50);
+        } finally {
+            done.countDown();
+            other.join();
+        }
+        long bytes = Metrics.get(Stage.DECODE).getAllocatedBytes();
+        assertTrue(bytes + " bytes", bytes >= 4 * MB && bytes < 6 * MB);
+    }
+
+    @Test
+    public void workRunOnOtherThreadsIsCounted() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (Metrics.Sample sample = Metrics.start(Stage.ENCODE)) {
+            executor.submit(() -> sample.run(() -> allocate(3))).get();
+            executor.submit(() -> sample.run(() -> allocate(2))).get();
+            // unrelated work of the pool is not
+            executor.submit(() -> allocate(16)).get();
+        } finally {
+            executor.shutdown();
+        }
+        long bytes = Metrics.get(Stage.ENCODE).getAllocatedBytes();
+        assertTrue(bytes + " bytes", bytes >= 5 * MB && bytes < 7 * MB);
+        assertEquals(1, Metrics.get(Stage.ENCODE).getCount());
+    }
+
+    private static void allocate(int megabytes) {
+        for (int i = 0; i < megabytes; i++) sink = new byte[MB];
+    }
+}
@@ -0,0 +1,77 @@
+package com.hermant.server;
+
+import com.hermant.Allocations;
+import com.hermant.graphics.SeparationEngine;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SeparationServerTest {
+
+    private static final int WIDTH = 64, HEIGHT = 48, MAX_BODY = 1 << 16;
+
+    private SeparationEngine engine;
+    private SeparationServer server;
+    private HttpClient client;
+
+    @Before
+    public void start() throws IOException {
+        engine = new SeparationEngine(2);
+        server = new SeparationServer(new InetSocketAddress("127.0.0.1", 0), 1, 1, engine, MAX_BODY);
+        server.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @After
+    public void stop() {
+        server.stop(0);
+        engine.close();
+    }
+
+    @Test
+    public void imagesWithinTheLimitAreSeparated() throws Exception {
+        byte[] png = png();
+        assertTrue(png.length <= MAX_BODY);
+        assertEquals(200, post(HttpRequest.BodyPublishers.ofByteArray(png)));
+    }
+
+    @Test
+    public void bodiesDeclaredTooLargeAreRefused() throws Exception {
+        assertEquals(413, post(HttpRequest.BodyPublishers.ofByteArray(new byte[MAX_BODY + 1])));
+    }
+
+    @Test
+    public void bodiesGrowingTooLargeAreRefused() throws Exception {
+        // no Content-Length, the body is sent chunked
+        byte[] body = new byte[4 * MAX_BODY];
+        assertEquals(413, post(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(body))));
+    }
+
+    private int post(HttpRequest.BodyPublisher body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/separate"))
+                .POST(body).build();
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static byte[] png() throws IOException {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, WIDTH, HEIGHT, Allocations.image(WIDTH, HEIGHT), 0, WIDTH);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", png);
+        return png.toByteArray();
+    }
+}
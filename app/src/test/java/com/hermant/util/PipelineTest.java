@@ -0,0 +1,73 @@
+package com.hermant.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PipelineTest {
+
+    private static final int ITEMS = 200, CAPACITY = 2, THREADS = 4;
+
+    @Test
+    public void itemsAheadOfASlowOneAreBounded() throws Exception {
+        AtomicInteger started = new AtomicInteger(), sunk = new AtomicInteger(), ahead = new AtomicInteger();
+        List<Integer> order = new ArrayList<>();
+        Pipeline<Integer> pipeline = new Pipeline<Integer>(CAPACITY)
+                .stage("first", THREADS, item -> {
+                    ahead.accumulateAndGet(started.incrementAndGet() - sunk.get(), Math::max);
+                    // every tenth item holds the ones behind it back
+                    if (item % 10 == 0) Thread.sleep(20);
+                })
+                .stage("second", 1, item -> {
+                });
+        pipeline.run(items(), "sink", (item, error) -> {
+            assertEquals(null, error);
+            order.add(item);
+            sunk.incrementAndGet();
+        });
+        assertEquals(items(), order);
+        // two queues and five threads
+        assertTrue(ahead.get() + " items ahead", ahead.get() <= 2 * CAPACITY + THREADS + 1);
+    }
+
+    @Test
+    public void errorsStopThePipeline() throws Exception {
+        Pipeline<Integer> pipeline = new Pipeline<Integer>(CAPACITY)
+                .stage("fail", THREADS, item -> {
+                    if (item == 50) throw new OutOfMemoryError("item " + item);
+                });
+        try {
+            pipeline.run(items(), "sink", (item, error) -> assertTrue(item < 50));
+            fail();
+        } catch (OutOfMemoryError e) {
+            assertEquals("item 50", e.getMessage());
+        }
+        assertTrue(!Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    public void exceptionsFailTheirItemOnly() throws Exception {
+        List<Integer> failed = new ArrayList<>();
+        Pipeline<Integer> pipeline = new Pipeline<Integer>(CAPACITY)
+                .stage("fail", THREADS, item -> {
+                    if (item % 7 == 0) throw new IllegalStateException();
+                })
+                .stage("skipped", 1, item -> assertTrue(item % 7 != 0));
+        pipeline.run(items(), "sink", (item, error) -> {
+            if (error != null) failed.add(item);
+        });
+        assertEquals((ITEMS + 6) / 7, failed.size());
+    }
+
+    private static List<Integer> items() {
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) items.add(i);
+        return items;
+    }
+}
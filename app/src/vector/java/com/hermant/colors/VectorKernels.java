@@ -0,0 +1,274 @@
+package com.hermant.colors;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API kernels, see {@link Kernels}. Pixels are unpacked from int lanes to float lanes of the same count,
+ * the last partial vector of a call is processed in padded scratch arrays. Once compiled the kernels allocate nothing,
+ * operations that are not intrinsic on every JDK, masked loads, stores and lanewise operations, are avoided.
+ */
+final class VectorKernels implements Kernels.Factory {
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final int LANES = INTS.length();
+    private static final float MAGIC = 8388608.0f;
+    private static final ThreadLocal<Tail> TAIL = ThreadLocal.withInitial(Tail::new);
+
+    VectorKernels() {
+        if (FLOATS.length() != LANES) throw new LinkageError("Mismatched vector species " + INTS + ", " + FLOATS);
+    }
+
+    @Override
+    public Kernels.Packed rgb() {
+        return packed((src, srcOffset, c0, c1, c2, offset) -> {
+            IntVector rgb = IntVector.fromArray(INTS, src, srcOffset);
+            channel(rgb, 16).intoArray(c0, offset);
+            channel(rgb, 8).intoArray(c1, offset);
+            channel(rgb, 0).intoArray(c2, offset);
+        });
+    }
+
+    @Override
+    public Kernels.Packed ycbcr() {
+        return packed((src, srcOffset, c0, c1, c2, offset) -> {
+            IntVector rgb = IntVector.fromArray(INTS, src, srcOffset);
+            FloatVector red = channel(rgb, 16), green = channel(rgb, 8), blue = channel(rgb, 0);
+            red.mul(0.25678906f).add(0.0625f).add(green.mul(0.50412893f)).add(blue.mul(0.09790625f)).intoArray(c0, offset);
+            FloatVector.broadcast(FLOATS, 0.5f).sub(red.mul(0.14822266f)).sub(green.mul(0.2909922f)).add(blue.mul(0.43921486f)).intoArray(c1, offset);
+            red.mul(0.43921486f).add(0.5f).sub(green.mul(0.36778906f)).sub(blue.mul(0.07142578f)).intoArray(c2, offset);
+        });
+    }
+
+    /**
+     * Branchless hsv, every hue candidate is computed and the one of the scalar kernel's branch is selected.
+     */
+    @Override
+    public Kernels.Packed hsv() {
+        return packed((src, srcOffset, c0, c1, c2, offset) -> {
+            IntVector rgb = IntVector.fromArray(INTS, src, srcOffset);
+            FloatVector red = channel(rgb, 16), green = channel(rgb, 8), blue = channel(rgb, 0);
+            FloatVector min = blue.min(red.min(green)), max = blue.max(red.max(green)), delta = max.sub(min);
+            VectorMask<Float> grey = delta.lt(0.0000001f);
+            FloatVector h = red.sub(green).div(delta).add(4.0f)
+                    .blend(blue.sub(red).div(delta).add(2.0f), green.eq(max))
+                    .blend(green.sub(blue).div(delta).add(6.0f), red.eq(max))
+                    .div(6.0f);
+            // masked lanewise operations are not intrinsic on every JDK, adding or subtracting 0 leaves the other lanes exact
+            h = h.add(FloatVector.zero(FLOATS).blend(1.0f, h.lt(0.0f)));
+            h = h.sub(FloatVector.zero(FLOATS).blend(1.0f, h.compare(VectorOperators.GT, 1.0f)));
+            h.blend(0.0f, grey).intoArray(c0, offset);
+            delta.div(max).blend(0.0f, grey).intoArray(c1, offset);
+            max.intoArray(c2, offset);
+        });
+    }
+
+    /**
+     * Gradient colors are clamped, scaled and truncated like {@link Color3f#getRGB(float, float, float)},
+     * truncation takes the floor as in {@link #lookup} and NaN lanes become 0 like a float to int cast.
+     */
+    @Override
+    public Kernels.Gradient gradient() {
+        return (coefficients, from, to, dst, offset, length) -> {
+            int full = length - length % LANES;
+            for (int i = 0; i < full; i += LANES) gradient(coefficients, i, from, to, dst, offset + i);
+            if (full == length) return;
+            Tail tail = TAIL.get();
+            System.arraycopy(coefficients, full, tail.coefficients, 0, length - full);
+            gradient(tail.coefficients, 0, from, to, tail.dst, 0);
+            System.arraycopy(tail.dst, 0, dst, offset + full, length - full);
+        };
+    }
+
+    /**
+     * Channels are written one at a time, each call loading and storing arrays, so no vector outlives a call
+     * C2 may decline to inline into a kernel grown too large, which would box it.
+     */
+    private static void gradient(float[] coefficients, int index, Color3f from, Color3f to, int[] dst, int offset) {
+        channel(coefficients, index, from.red, to.red, 1 << 16, dst, offset, false);
+        channel(coefficients, index, from.green, to.green, 1 << 8, dst, offset, true);
+        channel(coefficients, index, from.blue, to.blue, 1, dst, offset, true);
+    }
+
+    /**
+     * Clamps, scales and truncates one channel, shifting it in place by multiplying, as left shifts by a constant
+     * are not intrinsic on every JDK. Truncation takes the floor as in {@link #lookup}, NaN lanes become 0.
+     */
+    private static void channel(float[] coefficients, int index, float from, float to, int scale, int[] dst, int offset, boolean or) {
+        FloatVector factor = FloatVector.fromArray(FLOATS, coefficients, index);
+        FloatVector v = FloatVector.broadcast(FLOATS, 1.0f).sub(factor).mul(from).add(factor.mul(to));
+        v = v.min(1.0f).max(0.0f).mul(255.0f).add(0.5f);
+        v = v.blend(0.0f, v.compare(VectorOperators.NE, v));
+        FloatVector rounded = v.add(MAGIC).sub(MAGIC);
+        FloatVector floor = rounded.sub(FloatVector.zero(FLOATS).blend(1.0f, rounded.compare(VectorOperators.GT, v)));
+        IntVector channel = floor.add(MAGIC).reinterpretAsInts().and(0xff).mul(scale);
+        if (or) channel = channel.or(IntVector.fromArray(INTS, dst, offset));
+        channel.intoArray(dst, offset);
+    }
+
+    /**
+     * Lab with gamma and cube root gathered from tables, vectors with any xyz outside the cube root table
+     * are handed to the scalar fallback.
+     */
+    @Override
+    public Kernels.Packed lab(float[] linear, float[] matrix, float[] white, float[] cbrt, Kernels.Packed fallback) {
+        float m00 = matrix[0], m01 = matrix[1], m02 = matrix[2];
+        float m10 = matrix[3], m11 = matrix[4], m12 = matrix[5];
+        float m20 = matrix[6], m21 = matrix[7], m22 = matrix[8];
+        float X_w = white[0], Y_w = white[1], Z_w = white[2];
+        float[] xyz = {m00, m01, m02, m10, m11, m12, m20, m21, m22, X_w, Y_w, Z_w};
+        ThreadLocal<LabScratch> scratches = ThreadLocal.withInitial(LabScratch::new);
+        return packed((src, srcOffset, c0, c1, c2, offset) -> {
+            LabScratch scratch = scratches.get();
+            if (!xyz(src, srcOffset, linear, xyz, scratch)) {
+                fallback.separate(src, srcOffset, c0, c1, c2, offset, LANES);
+                return;
+            }
+            lookup(cbrt, scratch.x, scratch.index);
+            lookup(cbrt, scratch.y, scratch.index);
+            lookup(cbrt, scratch.z, scratch.index);
+            lab(scratch, c0, c1, c2, offset);
+        });
+    }
+
+    /**
+     * Lab of xyz planes relative to the white, vectors with any of them outside the cube root table and the last
+     * partial vector are handed to the scalar fallback.
+     */
+    @Override
+    public Kernels.Planar lab(float[] cbrt, Kernels.Planar fallback) {
+        ThreadLocal<LabScratch> scratches = ThreadLocal.withInitial(LabScratch::new);
+        return (x, y, z, srcOffset, c0, c1, c2, offset, length) -> {
+            LabScratch scratch = scratches.get();
+            int full = length - length % LANES;
+            for (int i = 0; i < full; i += LANES) {
+                if (!relative(x, y, z, srcOffset + i, scratch)) {
+                    fallback.separate(x, y, z, srcOffset + i, c0, c1, c2, offset + i, LANES);
+                    continue;
+                }
+                lookup(cbrt, scratch.x, scratch.index);
+                lookup(cbrt, scratch.y, scratch.index);
+                lookup(cbrt, scratch.z, scratch.index);
+                lab(scratch, c0, c1, c2, offset + i);
+            }
+            if (full < length) fallback.separate(x, y, z, srcOffset + full, c0, c1, c2, offset + full, length - full);
+        };
+    }
+
+    /**
+     * Copies a vector of relative x, y, z to scratch.
+     *
+     * @return whether all of them lie within the cube root table
+     */
+    private static boolean relative(float[] xs, float[] ys, float[] zs, int offset, LabScratch scratch) {
+        FloatVector x = FloatVector.fromArray(FLOATS, xs, offset);
+        FloatVector y = FloatVector.fromArray(FLOATS, ys, offset);
+        FloatVector z = FloatVector.fromArray(FLOATS, zs, offset);
+        x.intoArray(scratch.x, 0);
+        y.intoArray(scratch.y, 0);
+        z.intoArray(scratch.z, 0);
+        FloatVector low = x.min(y).min(z), high = x.max(y).max(z);
+        return low.compare(VectorOperators.GE, 0.0f).and(high.compare(VectorOperators.LE, 1.0f)).allTrue();
+    }
+
+    /**
+     * Computes x, y, z relative to the white of a vector of pixels into scratch.
+     *
+     * @return whether all of them lie within the cube root table
+     */
+    private static boolean xyz(int[] src, int srcOffset, float[] linear, float[] m, LabScratch scratch) {
+        int[] index = scratch.index;
+        IntVector rgb = IntVector.fromArray(INTS, src, srcOffset);
+        rgb.lanewise(VectorOperators.LSHR, 16).and(0xff).intoArray(index, 0);
+        FloatVector red = FloatVector.fromArray(FLOATS, linear, 0, index, 0);
+        rgb.lanewise(VectorOperators.LSHR, 8).and(0xff).intoArray(index, 0);
+        FloatVector green = FloatVector.fromArray(FLOATS, linear, 0, index, 0);
+        rgb.and(0xff).intoArray(index, 0);
+        FloatVector blue = FloatVector.fromArray(FLOATS, linear, 0, index, 0);
+        FloatVector x = red.mul(m[0]).add(green.mul(m[1]).add(blue.mul(m[2]))).div(m[9]);
+        FloatVector y = red.mul(m[3]).add(green.mul(m[4]).add(blue.mul(m[5]))).div(m[10]);
+        FloatVector z = red.mul(m[6]).add(green.mul(m[7]).add(blue.mul(m[8]))).div(m[11]);
+        x.intoArray(scratch.x, 0);
+        y.intoArray(scratch.y, 0);
+        z.intoArray(scratch.z, 0);
+        FloatVector low = x.min(y).min(z), high = x.max(y).max(z);
+        return low.compare(VectorOperators.GE, 0.0f).and(high.compare(VectorOperators.LE, 1.0f)).allTrue();
+    }
+
+    private static void lab(LabScratch scratch, float[] c0, float[] c1, float[] c2, int offset) {
+        FloatVector f_x = FloatVector.fromArray(FLOATS, scratch.x, 0);
+        FloatVector f_y = FloatVector.fromArray(FLOATS, scratch.y, 0);
+        FloatVector f_z = FloatVector.fromArray(FLOATS, scratch.z, 0);
+        f_y.mul(116f).sub(16f).div(256f).intoArray(c0, offset);
+        f_x.sub(f_y).mul(500f).add(128f).div(256f).intoArray(c1, offset);
+        f_y.sub(f_z).mul(200f).add(128f).div(256f).intoArray(c2, offset);
+    }
+
+    /**
+     * Floor is taken by adding and subtracting 2^23 instead of float to int conversion, which is not intrinsic on every platform.
+     * Integers added to 2^23 are exact and sit in the mantissa bits, so the table index is read straight from them.
+     */
+    private static void lookup(float[] cbrt, float[] values, int[] index) {
+        FloatVector x = FloatVector.fromArray(FLOATS, values, 0).mul((float) LabSeparation.CBRT_TABLE_SIZE);
+        FloatVector rounded = x.add(MAGIC).sub(MAGIC);
+        FloatVector floor = rounded.sub(FloatVector.zero(FLOATS).blend(1.0f, rounded.compare(VectorOperators.GT, x)));
+        IntVector i = floor.add(MAGIC).reinterpretAsInts().sub(Float.floatToIntBits(MAGIC));
+        FloatVector t = x.sub(floor);
+        i.intoArray(index, 0);
+        FloatVector low = FloatVector.fromArray(FLOATS, cbrt, 0, index, 0);
+        i.add(1).intoArray(index, 0);
+        FloatVector high = FloatVector.fromArray(FLOATS, cbrt, 0, index, 0);
+        low.add(high.sub(low).mul(t)).intoArray(values, 0);
+    }
+
+    /**
+     * Runs block over every full vector of pixels, the pixels of the last partial one are copied to padded scratch.
+     * Masked loads and stores are not intrinsic on every platform and box their vectors, so they are never used.
+     */
+    private static Kernels.Packed packed(Block block) {
+        return (src, srcOffset, c0, c1, c2, offset, length) -> {
+            int full = length - length % LANES;
+            for (int i = 0; i < full; i += LANES) block.separate(src, srcOffset + i, c0, c1, c2, offset + i);
+            if (full == length) return;
+            Tail tail = TAIL.get();
+            int rest = length - full;
+            System.arraycopy(src, srcOffset + full, tail.src, 0, rest);
+            block.separate(tail.src, 0, tail.c0, tail.c1, tail.c2, 0);
+            System.arraycopy(tail.c0, 0, c0, offset + full, rest);
+            System.arraycopy(tail.c1, 0, c1, offset + full, rest);
+            System.arraycopy(tail.c2, 0, c2, offset + full, rest);
+        };
+    }
+
+    private static FloatVector channel(IntVector rgb, int shift) {
+        return ((FloatVector) rgb.lanewise(VectorOperators.LSHR, shift).and(0xff).convert(VectorOperators.I2F, 0)).div(255.0f);
+    }
+
+    /**
+     * Computes coefficients of {@link #LANES} pixels.
+     */
+    @FunctionalInterface
+    private interface Block {
+        void separate(int[] src, int srcOffset, float[] c0, float[] c1, float[] c2, int offset);
+    }
+
+    /**
+     * Per thread scratch of a single vector of the lab kernel: gather indices and x, y, z, replaced by their cube roots.
+     */
+    private static final class LabScratch {
+        private final int[] index = new int[LANES];
+        private final float[] x = new float[LANES], y = new float[LANES], z = new float[LANES];
+    }
+
+    /**
+     * Per thread scratch of a single vector.
+     */
+    private static final class Tail {
+        private final int[] src = new int[LANES], dst = new int[LANES];
+        private final float[] c0 = new float[LANES], c1 = new float[LANES], c2 = new float[LANES], coefficients = new float[LANES];
+    }
+}